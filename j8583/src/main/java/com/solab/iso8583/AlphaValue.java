@@ -0,0 +1,88 @@
+/*
+j8583 A Java implementation of the ISO8583 protocol
+Copyright (C) 2011 Enrique Zamudio Lopez
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+*/
+package com.solab.iso8583;
+
+import com.solab.iso8583.util.CharCodec;
+
+/** An ALPHA value that is stored as the bytes it was received as, in a single-byte encoding.
+ * The bytes are written as they are when the message uses the same encoding; {@link #getValue()}
+ * decodes them into a String only when it's requested.
+ *
+ * @author Enrique Zamudio
+ */
+public class AlphaValue extends IsoValue<String> {
+
+	private final byte[] bytes;
+	private final CharCodec bytesCodec;
+	private String decoded;
+
+	/** Creates a new ALPHA value with a copy of the specified bytes.
+	 * @param buf The buffer with the value.
+	 * @param pos The position of the value in the buffer.
+	 * @param length The length of the field.
+	 * @param codec The encoding of the bytes, which must be single-byte.
+	 * @throws IllegalArgumentException if the encoding is not single-byte. */
+	public AlphaValue(byte[] buf, int pos, int length, CharCodec codec) {
+		super(IsoType.ALPHA, null, length, null);
+		if (!codec.isSingleByte()) {
+			throw new IllegalArgumentException("AlphaValue needs a single-byte encoding");
+		}
+		bytes = new byte[length];
+		System.arraycopy(buf, pos, bytes, 0, length);
+		bytesCodec = codec;
+	}
+
+	/** Returns the encoded bytes of the value. The array must not be modified. */
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	@Override
+	public String getValue() {
+		if (decoded == null) {
+			decoded = bytesCodec.decode(bytes, 0, bytes.length);
+		}
+		return decoded;
+	}
+
+	@Override
+	public String toString() {
+		return getValue();
+	}
+
+	@Override
+	boolean isImmutable() {
+		return true;
+	}
+
+	@Override
+	int encodedLength(boolean binary, CharCodec cc) {
+		return cc == bytesCodec ? bytes.length : cc.encodedLength(toString());
+	}
+
+	@Override
+	int encode(byte[] buf, int pos, boolean binary, CharCodec cc) {
+		if (cc == bytesCodec) {
+			System.arraycopy(bytes, 0, buf, pos, bytes.length);
+			return pos + bytes.length;
+		}
+		return cc.encode(toString(), buf, pos);
+	}
+
+}
@@ -0,0 +1,90 @@
+/*
+j8583 A Java implementation of the ISO8583 protocol
+Copyright (C) 2011 Enrique Zamudio Lopez
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+*/
+package com.solab.iso8583;
+
+import java.math.BigDecimal;
+
+import com.solab.iso8583.util.Bcd;
+import com.solab.iso8583.util.CharCodec;
+
+/** An AMOUNT value that is stored as a number of cents in a long, so that it can be read and written
+ * without creating any objects. {@link #getValue()} returns a BigDecimal with 2 decimals, which is
+ * only created when it's requested.
+ *
+ * @author Enrique Zamudio
+ */
+public class AmountValue extends IsoValue<BigDecimal> {
+
+	private final long cents;
+	private BigDecimal boxed;
+
+	/** Creates a new AMOUNT value.
+	 * @param cents The amount in cents, from -99999999999 to 999999999999, so that it fits in
+	 * 12 characters with the sign. Negative amounts can only be written in ASCII messages.
+	 * @throws IllegalArgumentException if the amount doesn't fit in 12 characters. */
+	public AmountValue(long cents) {
+		super(IsoType.AMOUNT, null, 12, null);
+		if (cents < -99999999999L || cents > 999999999999L) {
+			throw new IllegalArgumentException("AMOUNT must be from -99999999999 to 999999999999 cents, not " + cents);
+		}
+		this.cents = cents;
+	}
+
+	/** Returns the amount in cents. */
+	public long getLong() {
+		return cents;
+	}
+
+	@Override
+	public BigDecimal getValue() {
+		if (boxed == null) {
+			boxed = BigDecimal.valueOf(cents, 2);
+		}
+		return boxed;
+	}
+
+	@Override
+	public String toString() {
+		return IsoType.NUMERIC.format(cents, 12);
+	}
+
+	@Override
+	boolean isImmutable() {
+		return true;
+	}
+
+	@Override
+	int encodedLength(boolean binary, CharCodec cc) {
+		if (binary) {
+			return 6;
+		}
+		return cc.isAsciiCompatible() ? 12 : cc.encodedLength(toString());
+	}
+
+	@Override
+	int encode(byte[] buf, int pos, boolean binary, CharCodec cc) {
+		if (binary) {
+			return Bcd.encode(cents, 12, buf, pos);
+		} else if (cc.isAsciiCompatible()) {
+			return IsoType.NUMERIC.format(cents, 12, buf, pos);
+		}
+		return cc.encode(toString(), buf, pos);
+	}
+
+}
@@ -18,13 +18,23 @@ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
 */
 package com.solab.iso8583;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
-import java.util.BitSet;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.SelectableChannel;
+import java.text.ParseException;
+import java.util.Arrays;
 import java.util.Map;
 
+import com.solab.iso8583.parse.FieldParseInfo;
+import com.solab.iso8583.parse.ParsePlan;
+import com.solab.iso8583.util.Bitmap;
+import com.solab.iso8583.util.CharCodec;
+
 /** Represents an ISO8583 message. This is the core class of the framework.
  * Contains the bitmap which is modified as fields are added/removed.
  * This class makes no assumptions as to what types belong in each field,
@@ -36,7 +46,11 @@ import java.util.Map;
  */
 public class IsoMessage {
 
-	static final byte[] HEX = new byte[]{ '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    /** The default encoding, read once instead of for every message. */
+    private static final String DEFAULT_ENCODING = System.getProperty("file.encoding");
+    /** Used to encode messages that are written to direct buffers. */
+    private static final ThreadLocal<byte[]> SCRATCH = new ThreadLocal<byte[]>();
 
 	/** The message type. */
     private int type;
@@ -45,12 +59,28 @@ public class IsoMessage {
     /** This is where the values are stored. */
     @SuppressWarnings("rawtypes")
 	private IsoValue[] fields = new IsoValue[129];
+    /** The fields that have a value, or that were parsed lazily and haven't been decoded yet. */
+    private final Bitmap present = new Bitmap();
     /** Stores the optional ISO header. */
     private String isoHeader;
+    /** The ISO header, encoded when the message is written. */
+    private byte[] isoHeaderData;
     private int etx = -1;
     /** Flag to enforce secondary bitmap even if empty. */
     private boolean forceb2;
-    private String encoding = System.getProperty("file.encoding");
+    private String encoding = DEFAULT_ENCODING;
+    private CharCodec codec = CharCodec.forName(encoding);
+    /** For lazily parsed messages, the buffer that the message was parsed from. */
+    private byte[] rawBuf;
+    /** For lazily parsed messages, the start and end positions in the buffer of each field
+     * that hasn't been decoded yet (two ints per field; the end is 0 if there's nothing to decode). */
+    private int[] rawIndex;
+    private boolean rawBinary;
+    private ParsePlan rawGuide;
+    private MessageFactory rawFactory;
+    /** For responses created as overlays, the messages whose fields show through when they're not
+     * set in this one, in order of preference. */
+    private IsoMessage[] bases;
 
     /** Creates a new empty message with no values set. */
     public IsoMessage() {
@@ -61,6 +91,32 @@ public class IsoMessage {
     	isoHeader = header;
     }
 
+    /** Clears the message so that it can be used again, as if it had just been created: the fields,
+     * ISO header, type and settings are cleared, but the arrays that hold the fields are kept.
+     * Nothing else must be referencing the message or its fields when it's reset. */
+    public void reset() {
+    	for (int i = present.nextField(1); i > 0; i = present.nextField(i)) {
+    		fields[i] = null;
+    	}
+    	present.clear();
+    	type = 0;
+    	binary = false;
+    	isoHeader = null;
+    	isoHeaderData = null;
+    	etx = -1;
+    	forceb2 = false;
+    	if (encoding != DEFAULT_ENCODING) {
+    		setCharacterEncoding(DEFAULT_ENCODING);
+    	}
+    	rawBuf = null;
+    	rawGuide = null;
+    	rawFactory = null;
+    	bases = null;
+    	if (rawIndex != null) {
+    		Arrays.fill(rawIndex, 0);
+    	}
+    }
+
     /** If set, this flag will cause the secondary bitmap to be written even if it's not needed. */
     public void setForceSecondaryBitmap(boolean flag) {
     	forceb2 = flag;
@@ -69,7 +125,15 @@ public class IsoMessage {
     	return forceb2;
     }
 
+    /** Sets the character encoding used to write the fields of the message.
+     * @throws IllegalArgumentException if the encoding is not supported. */
     public void setCharacterEncoding(String value) {
+    	codec = value == null ? null : CharCodec.forName(value);
+    	encoding = value;
+    }
+    /** Sets the encoding when it has already been resolved, by the factory that creates the message. */
+    void setCharacterEncoding(String value, CharCodec resolved) {
+    	codec = resolved;
     	encoding = value;
     }
     public String getCharacterEncoding() {
@@ -80,6 +144,7 @@ public class IsoMessage {
      * This is useful in case an application needs some custom data in the ISO header of each message (very rare). */
     public void setIsoHeader(String value) {
     	isoHeader = value;
+    	isoHeaderData = null;
     }
     /** Returns the ISO header that this message was created with. */
     public String getIsoHeader() {
@@ -114,17 +179,117 @@ public class IsoMessage {
      * @param field The field number. 1 is the secondary bitmap and is not returned as such;
      * real fields go from 2 to 128. */
     public <T> T getObjectValue(int field) {
-    	@SuppressWarnings("unchecked")
-    	IsoValue<T> v = fields[field];
+    	IsoValue<T> v = getField(field);
     	return v == null ? null : v.getValue();
     }
 
-    /** Returns the IsoValue for the specified field. First real field is 2. */
+    /** Returns the IsoValue for the specified field. First real field is 2.
+     * If the message was parsed lazily, the field is decoded the first time it's requested.
+     * @throws IllegalStateException if the field was parsed lazily and its value cannot be decoded. */
 	@SuppressWarnings("unchecked")
     public <T> IsoValue<T> getField(int field) {
+    	if (fields[field] == null) {
+    		if (rawIndex != null && rawIndex[field * 2 + 1] > 0) {
+    			decodeRawField(field);
+    		} else if (bases != null && hasField(field)) {
+    			return getBaseField(field);
+    		}
+    	}
     	return fields[field];
     }
 
+    /** Makes the fields of the specified messages show through this one, without copying them.
+     * Fields that are set or removed in this message hide the ones in the base messages.
+     * @param messages The base messages, in order of preference; any of them can be null. */
+    void setBases(IsoMessage... messages) {
+    	bases = messages;
+    	long primary = present.getPrimary();
+    	long secondary = present.getSecondary();
+    	for (IsoMessage b : messages) {
+    		if (b != null) {
+    			primary |= b.present.getPrimary();
+    			secondary |= b.present.getSecondary();
+    		}
+    	}
+    	present.set(primary, secondary);
+    }
+
+    /** Returns the field from the first base message that has it. */
+    @SuppressWarnings("unchecked")
+    private <T> IsoValue<T> getBaseField(int field) {
+    	for (IsoMessage b : bases) {
+    		if (b != null && b.hasField(field)) {
+    			return b.getField(field);
+    		}
+    	}
+    	return null;
+    }
+
+    /** Sets up the message to decode its fields lazily from the specified buffer, which must not
+     * be modified until all the fields that will be read from the message have been decoded.
+     * @param buf The buffer containing the message.
+     * @param binary Indicates if the fields are binary-coded.
+     * @param guide The compiled parse guide for the message's type.
+     * @param factory The factory that provides custom field decoders. */
+    void setRawData(byte[] buf, boolean binary, ParsePlan guide, MessageFactory factory) {
+    	rawBuf = buf;
+    	rawBinary = binary;
+    	rawGuide = guide;
+    	rawFactory = factory;
+    	if (rawIndex == null) {
+    		rawIndex = new int[258];
+    	} else {
+    		Arrays.fill(rawIndex, 0);
+    	}
+    }
+
+    /** Records the location of a field that will be decoded from the raw buffer when it's first requested. */
+    void setRawField(int field, int start, int end) {
+    	fields[field] = null;
+    	rawIndex[field * 2] = start;
+    	rawIndex[field * 2 + 1] = end;
+    	present.set(field);
+    }
+
+    /** Decodes a field from the raw buffer and stores its value. */
+    private void decodeRawField(int field) {
+    	final int start = rawIndex[field * 2];
+    	final int end = rawIndex[field * 2 + 1];
+    	final FieldParseInfo fpi = rawGuide.get(field);
+    	IsoValue<?> val = null;
+    	try {
+    		if (rawBinary) {
+    			val = fpi.parseBinary(rawBuf, start, end, rawFactory.getCustomField(field));
+    		} else {
+    			val = fpi.parse(rawBuf, start, end, rawFactory.getCustomField(field));
+    		}
+    	} catch (ParseException ex) {
+    		throw new IllegalStateException(String.format("Cannot decode field %d", field), ex);
+    	} catch (UnsupportedEncodingException ex) {
+    		throw new IllegalStateException(String.format("Cannot decode field %d", field), ex);
+    	}
+    	rawIndex[field * 2 + 1] = 0;
+    	fields[field] = val;
+    	if (val == null) {
+    		present.clear(field);
+    	} else {
+    		val.setCharacterEncoding(encoding, codec);
+    		rawFactory.keepWireData(this, field, rawBuf, start, end);
+    	}
+    }
+
+    /** Decodes all the fields that are still pending from a lazy parse. */
+    private void decodeRawFields() {
+    	if (rawIndex == null) {
+    		return;
+    	}
+    	for (int i = present.nextField(1); i > 0; i = present.nextField(i)) {
+    		if (fields[i] == null && rawIndex[i * 2 + 1] > 0) {
+    			decodeRawField(i);
+    		}
+    	}
+    }
+
     /** Stored the field in the specified index. The first field is the secondary bitmap and has index 1,
      * so the first valid value for index must be 2.
      * @return The receiver (useful for setting several fields in sequence). */
@@ -133,9 +298,17 @@ public class IsoMessage {
     		throw new IndexOutOfBoundsException("Field index must be between 2 and 128");
     	}
     	if (field != null) {
-        	field.setCharacterEncoding(encoding);
+        	field.setCharacterEncoding(encoding, codec);
+    	}
+    	if (rawIndex != null) {
+    		rawIndex[index * 2 + 1] = 0;
     	}
     	fields[index] = field;
+    	if (field == null) {
+    		present.clear(index);
+    	} else {
+    		present.set(index);
+    	}
     	return this;
     }
 
@@ -170,8 +343,12 @@ public class IsoMessage {
     	if (index < 2 || index > 128) {
     		throw new IndexOutOfBoundsException("Field index must be between 2 and 128");
     	}
+    	if (rawIndex != null) {
+    		rawIndex[index * 2 + 1] = 0;
+    	}
     	if (value == null) {
     		fields[index] = null;
+    		present.clear(index);
     	} else {
     		IsoValue<T> v = null;
     		if (t.needsLength()) {
@@ -179,8 +356,9 @@ public class IsoMessage {
     		} else {
     			v = new IsoValue<T>(t, value, encoder);
     		}
-    		v.setCharacterEncoding(encoding);
+    		v.setCharacterEncoding(encoding, codec);
     		fields[index] = v;
+    		present.set(index);
     	}
     	return this;
     }
@@ -188,177 +366,230 @@ public class IsoMessage {
     /** Returns true is the message has a value in the specified field.
      * @param idx The field number. */
     public boolean hasField(int idx) {
-    	return fields[idx] != null;
+    	return idx > 1 && idx <= 128 && present.get(idx);
+    }
+
+    /** Returns the lowest field number greater than the specified one that has a value in the message,
+     * or -1 if there are no more. Iterate over the fields of the message with
+     * <code>for (int f = m.nextField(1); f > 0; f = m.nextField(f))</code>. */
+    public int nextField(int after) {
+    	return present.nextField(after);
+    }
+
+    /** Returns the number of fields that have a value in the message. */
+    public int getFieldCount() {
+    	return present.size();
     }
 
     /** Writes a message to a stream, after writing the specified number of bytes indicating
-     * the message's length. The message will first be written to an internal memory stream
-     * which will then be dumped into the specified stream. This method flushes the stream
-     * after the write. There are at most three write operations to the stream: one for the
-     * length header, one for the message, and the last one with for the ETX.
+     * the message's length. The length header, the message and the ETX are encoded into a single
+     * array of the exact size, which is written to the stream with a single write operation.
+     * This method flushes the stream after the write.
      * @param outs The stream to write the message to.
      * @param lengthBytes The size of the message length header. Valid ranges are 0 to 4.
      * @throws IllegalArgumentException if the specified length header is more than 4 bytes.
      * @throws IOException if there is a problem writing to the stream. */
     public void write(OutputStream outs, int lengthBytes) throws IOException {
-    	if (lengthBytes > 4) {
-    		throw new IllegalArgumentException("The length header can have at most 4 bytes");
-    	}
-    	byte[] data = writeData();
-
-    	if (lengthBytes > 0) {
-    		int l = data.length;
-    		if (etx > -1) {
-    			l++;
-    		}
-    		byte[] buf = new byte[lengthBytes];
-    		int pos = 0;
-    		if (lengthBytes == 4) {
-    			buf[0] = (byte)((l & 0xff000000) >> 24);
-    			pos++;
-    		}
-    		if (lengthBytes > 2) {
-    			buf[pos] = (byte)((l & 0xff0000) >> 16);
-    			pos++;
-    		}
-    		if (lengthBytes > 1) {
-    			buf[pos] = (byte)((l & 0xff00) >> 8);
-    			pos++;
-    		}
-    		buf[pos] = (byte)(l & 0xff);
-    		outs.write(buf);
-    	}
-    	outs.write(data);
-    	//ETX
-    	if (etx > -1) {
-    		outs.write(etx);
-    	}
+    	outs.write(encode(lengthBytes));
     	outs.flush();
     }
 
     /** Creates and returns a ByteBuffer with the data of the message, including the length header.
      * The returned buffer is already flipped, so it is ready to be written to a Channel. */
     public ByteBuffer writeToBuffer(int lengthBytes) {
-    	if (lengthBytes > 4) {
-    		throw new IllegalArgumentException("The length header can have at most 4 bytes");
-    	}
+    	return ByteBuffer.wrap(encode(lengthBytes));
+    }
 
-    	byte[] data = writeData();
-    	ByteBuffer buf = ByteBuffer.allocate(lengthBytes + data.length + (etx > -1 ? 1 : 0));
-    	if (lengthBytes > 0) {
-    		int l = data.length;
-    		if (etx > -1) {
-    			l++;
-    		}
-    		byte[] bbuf = new byte[lengthBytes];
-    		int pos = 0;
-    		if (lengthBytes == 4) {
-    			bbuf[0] = (byte)((l & 0xff000000) >> 24);
-    			pos++;
-    		}
-    		if (lengthBytes > 2) {
-    			bbuf[pos] = (byte)((l & 0xff0000) >> 16);
-    			pos++;
+    /** This calls writeInternal(), allowing applications to get the byte buffer containing the
+     * message data, without the length header. */
+    public byte[] writeData() {
+    	final Bitmap bs = createBitmap();
+    	final byte[] buf = new byte[getDataLength(bs)];
+    	writeData(bs, buf, 0);
+    	return buf;
+    }
+
+    /** Returns the exact number of bytes that {@link #write(OutputStream, int)} writes, including
+     * the length header and the ETX. */
+    public int getEncodedLength(int lengthBytes) {
+    	return lengthBytes + getDataLength(createBitmap()) + (etx > -1 ? 1 : 0);
+    }
+
+    /** Writes the message, with the length header and the ETX, into the buffer, starting at its
+     * current position, which is advanced past the message. Heap buffers are written to directly;
+     * direct buffers get a single bulk copy from a scratch array that is reused by each thread.
+     * If the message doesn't fit in the remaining space, nothing is written.
+     * @param dst The buffer to write to.
+     * @param lengthBytes The size of the message length header. Valid ranges are 0 to 4.
+     * @return The number of bytes written.
+     * @throws BufferOverflowException if there isn't enough space left in the buffer. */
+    public int writeTo(ByteBuffer dst, int lengthBytes) {
+    	checkLengthBytes(lengthBytes);
+    	final Bitmap bs = createBitmap();
+    	final int len = getDataLength(bs) + (etx > -1 ? 1 : 0);
+    	final int total = lengthBytes + len;
+    	if (dst.remaining() < total) {
+    		throw new BufferOverflowException();
+    	}
+    	if (dst.hasArray()) {
+    		encode(bs, lengthBytes, len, dst.array(), dst.arrayOffset() + dst.position());
+    		dst.position(dst.position() + total);
+    	} else {
+    		byte[] buf = SCRATCH.get();
+    		if (buf == null || buf.length < total) {
+    			buf = new byte[Math.max(total, 512)];
+    			SCRATCH.set(buf);
     		}
-    		if (lengthBytes > 1) {
-    			bbuf[pos] = (byte)((l & 0xff00) >> 8);
-    			pos++;
+    		encode(bs, lengthBytes, len, buf, 0);
+    		dst.put(buf, 0, total);
+    	}
+    	return total;
+    }
+
+    /** Writes the message to the channel with a single gathering write (repeated only if the
+     * channel doesn't take all the data at once): one buffer holds the length header, another one
+     * the ISO header, which is not copied, and the last one the rest of the message and the ETX.
+     * The channel must be in blocking mode; to write to a non-blocking channel, use
+     * {@link #writeTo(ByteBuffer, int)} and keep the buffer until the channel takes all of it.
+     * @param ch The channel to write to.
+     * @param lengthBytes The size of the message length header. Valid ranges are 0 to 4.
+     * @return The number of bytes written.
+     * @throws IllegalBlockingModeException if the channel is in non-blocking mode.
+     * @throws IOException if there is a problem writing to the channel, or it doesn't take
+     * any data. */
+    public long writeTo(GatheringByteChannel ch, int lengthBytes) throws IOException {
+    	checkLengthBytes(lengthBytes);
+    	if (ch instanceof SelectableChannel && !((SelectableChannel)ch).isBlocking()) {
+    		throw new IllegalBlockingModeException();
+    	}
+    	final Bitmap bs = createBitmap();
+    	final byte[] hdr = getIsoHeaderData();
+    	final byte[] body = new byte[getBodyLength(bs) + (etx > -1 ? 1 : 0)];
+    	final int pos = writeBody(bs, body, 0);
+    	if (etx > -1) {
+    		body[pos] = (byte)etx;
+    	}
+    	final byte[] lenHeader = new byte[lengthBytes];
+    	writeLengthHeader(lenHeader, 0, lengthBytes, (hdr == null ? 0 : hdr.length) + body.length);
+    	final ByteBuffer[] bufs = new ByteBuffer[]{ ByteBuffer.wrap(lenHeader),
+    		hdr == null ? ByteBuffer.allocate(0) : ByteBuffer.wrap(hdr), ByteBuffer.wrap(body) };
+    	final long total = lengthBytes + bufs[1].remaining() + body.length;
+    	long written = 0;
+    	while (written < total) {
+    		final long n = ch.write(bufs);
+    		if (n <= 0) {
+    			//Trying again would just spin
+    			throw new IOException(String.format("The channel took no data after %d of %d bytes", written, total));
     		}
-    		bbuf[pos] = (byte)(l & 0xff);
-    		buf.put(bbuf);
+    		written += n;
+    	}
+    	return written;
+    }
+
+    private static void checkLengthBytes(int lengthBytes) {
+    	if (lengthBytes < 0 || lengthBytes > 4) {
+    		throw new IllegalArgumentException("The length header can have at most 4 bytes");
     	}
-    	buf.put(data);
+    }
+
+    /** Encodes the whole message, with the length header and the ETX, into an array of the exact size. */
+    private byte[] encode(int lengthBytes) {
+    	checkLengthBytes(lengthBytes);
+    	final Bitmap bs = createBitmap();
+    	final int len = getDataLength(bs) + (etx > -1 ? 1 : 0);
+    	final byte[] buf = new byte[lengthBytes + len];
+    	encode(bs, lengthBytes, len, buf, 0);
+    	return buf;
+    }
+
+    /** Writes the length header, data and ETX into the buffer.
+     * @param len The length of the data plus the ETX. */
+    private void encode(Bitmap bs, int lengthBytes, int len, byte[] buf, int pos) {
+    	pos = writeLengthHeader(buf, pos, lengthBytes, len);
+    	pos = writeData(bs, buf, pos);
     	//ETX
     	if (etx > -1) {
-    		buf.put((byte)etx);
+    		buf[pos] = (byte)etx;
     	}
-    	buf.flip();
-    	return buf;
     }
 
-    /** This calls writeInternal(), allowing applications to get the byte buffer containing the
-     * message data, without the length header. */
-    public byte[] writeData() {
-    	ByteArrayOutputStream bout = new ByteArrayOutputStream();
-    	if (isoHeader != null) {
-    		try {
-    			bout.write(isoHeader.getBytes());
-    		} catch (IOException ex) {
-    			//should never happen, writing to a ByteArrayOutputStream
-    		}
+    /** Writes the message length as a big-endian binary number of the specified size. */
+    private static int writeLengthHeader(byte[] buf, int pos, int lengthBytes, int len) {
+    	for (int shift = (lengthBytes - 1) * 8; shift >= 0; shift -= 8) {
+    		buf[pos++] = (byte)((len >> shift) & 0xff);
     	}
-    	//Message Type
-    	if (binary) {
-        	bout.write((type & 0xff00) >> 8);
-        	bout.write(type & 0xff);
-    	} else {
-    		try {
-    			bout.write(String.format("%04x", type).getBytes());
-    		} catch (IOException ex) {
-    			//should never happen, writing to a ByteArrayOutputStream
-    		}
+    	return pos;
+    }
+
+    /** Returns a bitmap with the fields of the message, and the secondary bitmap flag if needed.
+     * Fields that are still pending from a lazy parse are decoded first, since a field
+     * that decodes to null is removed from the message. */
+    private Bitmap createBitmap() {
+    	decodeRawFields();
+    	final Bitmap bs = new Bitmap();
+    	bs.set(present.getPrimary(), present.getSecondary());
+    	if (forceb2 || bs.getSecondary() != 0) {
+    		bs.set(1);
     	}
+    	return bs;
+    }
 
-    	//Bitmap
-    	BitSet bs = new BitSet(forceb2 ? 128 : 64);
-    	for (int i = 2 ; i < 129; i++) {
-    		if (fields[i] != null) {
-        		bs.set(i - 1);
+    private byte[] getIsoHeaderData() {
+    	if (isoHeaderData == null && isoHeader != null) {
+    		isoHeaderData = isoHeader.getBytes();
+    	}
+    	return isoHeaderData;
+    }
+
+    /** First pass of the encoding: the exact length of the message data, without length header and ETX. */
+    private int getDataLength(Bitmap bs) {
+    	final byte[] hdr = getIsoHeaderData();
+    	return (hdr == null ? 0 : hdr.length) + getBodyLength(bs);
+    }
+
+    /** The length of the message type, bitmap and fields. */
+    private int getBodyLength(Bitmap bs) {
+    	int len = (binary ? 2 : 4) + bs.getEncodedLength(binary);
+    	for (int i = bs.nextField(1); i > 0; i = bs.nextField(i)) {
+    		IsoValue<?> v = getField(i);
+    		if (v != null) {
+    			len += v.getEncodedLength(binary);
     		}
     	}
-    	if (forceb2) {
-    		bs.set(0);
-    	} else if (bs.length() > 64) {
-        	//Extend to 128 if needed
-    		BitSet b2 = new BitSet(128);
-    		b2.or(bs);
-    		bs = b2;
-    		bs.set(0);
+    	return len;
+    }
+
+    /** Second pass of the encoding: writes the ISO header, type, bitmap and fields. */
+    private int writeData(Bitmap bs, byte[] buf, int pos) {
+    	final byte[] hdr = getIsoHeaderData();
+    	if (hdr != null) {
+    		System.arraycopy(hdr, 0, buf, pos, hdr.length);
+    		pos += hdr.length;
     	}
-    	//Write bitmap to stream
+    	return writeBody(bs, buf, pos);
+    }
+
+    /** Writes the message type, bitmap and fields. */
+    private int writeBody(Bitmap bs, byte[] buf, int pos) {
+    	//Message Type
     	if (binary) {
-    		int pos = 128;
-    		int b = 0;
-    		for (int i = 0; i < bs.size(); i++) {
-    			if (bs.get(i)) {
-    				b |= pos;
-    			}
-    			pos >>= 1;
-    			if (pos == 0) {
-    				bout.write(b);
-    				pos = 128;
-    				b = 0;
-    			}
-    		}
+    		buf[pos++] = (byte)((type & 0xff00) >> 8);
+    		buf[pos++] = (byte)(type & 0xff);
     	} else {
-            int pos = 0;
-            int lim = bs.size() / 4;
-            for (int i = 0; i < lim; i++) {
-                int nibble = 0;
-                if (bs.get(pos++))
-                    nibble |= 8;
-                if (bs.get(pos++))
-                    nibble |= 4;
-                if (bs.get(pos++))
-                    nibble |= 2;
-                if (bs.get(pos++))
-                    nibble |= 1;
-                bout.write(HEX[nibble]);
-            }
+    		for (int shift = 12; shift >= 0; shift -= 4) {
+    			buf[pos++] = (byte)HEX_DIGITS[(type >> shift) & 0xf];
+    		}
     	}
-
+    	//Bitmap
+    	pos = bs.write(buf, pos, binary);
     	//Fields
-    	for (int i = 2; i < 129; i++) {
-    		IsoValue<?> v = fields[i];
+    	for (int i = bs.nextField(1); i > 0; i = bs.nextField(i)) {
+    		IsoValue<?> v = getField(i);
     		if (v != null) {
-        		try {
-        			v.write(bout, binary);
-        		} catch (IOException ex) {
-        			//should never happen, writing to a ByteArrayOutputStream
-        		}
+    			pos = v.write(buf, pos, binary);
     		}
     	}
-    	return bout.toByteArray();
+    	return pos;
     }
 
     //These are for Groovy compat
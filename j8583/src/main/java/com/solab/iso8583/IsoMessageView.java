@@ -0,0 +1,204 @@
+/*
+j8583 A Java implementation of the ISO8583 protocol
+Copyright (C) 2011 Enrique Zamudio Lopez
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+*/
+package com.solab.iso8583;
+
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+
+import com.solab.iso8583.parse.FieldParseInfo;
+import com.solab.iso8583.parse.ParsePlan;
+import com.solab.iso8583.util.Bcd;
+import com.solab.iso8583.util.Bitmap;
+
+/** A read-only view of an encoded message, that reads the values of its fields straight from the
+ * buffer without creating an IsoMessage, IsoValues or Strings. The fields are located using the
+ * parsing guides of a MessageFactory, like {@link MessagePeek} does.
+ * <P>
+ * A single instance is meant to be wrapped around each message in turn; wrapping a message doesn't
+ * allocate any objects (except when reading from a direct ByteBuffer larger than any previous one,
+ * which has to be copied). The buffer must not be modified while the view is wrapped around it.
+ * Instances are not thread-safe, each thread should have its own.
+ *
+ * @author Enrique Zamudio
+ */
+public final class IsoMessageView {
+
+	private final MessageFactory factory;
+	private final int isoHeaderLength;
+	private final MessagePeek peek;
+	private byte[] buf;
+	private int offset;
+	private byte[] scratch;
+
+	/** Creates a new view for messages of the specified factory.
+	 * @param mf The factory whose parsing guides are used to locate the fields.
+	 * @param isoHeaderLength The length of the ISO header of the messages. */
+	public IsoMessageView(MessageFactory mf, int isoHeaderLength) {
+		factory = mf;
+		this.isoHeaderLength = isoHeaderLength;
+		final Bitmap all = new Bitmap();
+		all.set(-1L, -1L);
+		peek = new MessagePeek(all);
+	}
+
+	/** Wraps the view around the message contained in the specified region of the buffer.
+	 * @param buf The buffer containing the message, without the length header.
+	 * @param offset The position in the buffer where the message (or its ISO header) begins.
+	 * @param length The length of the message, including the ISO header.
+	 * @return true if all the fields of the message could be located, false if the factory has no
+	 * parsing guide for the message type or a field in the message is not in the guide; in that
+	 * case only the message type and the bitmap are available, and no field has an offset or value.
+	 * @throws ParseException if the message is shorter than its bitmap says. */
+	public boolean wrap(byte[] buf, int offset, int length) throws ParseException {
+		this.buf = buf;
+		this.offset = offset;
+		return peek.peek(factory, buf, offset, length, isoHeaderLength);
+	}
+
+	/** Wraps the view around the message contained in the specified region of the buffer; the
+	 * offset is absolute and the position of the buffer is not used or modified, but the region must
+	 * end before its limit. A direct buffer is
+	 * copied into an internal array that is reused for subsequent messages.
+	 * See {@link #wrap(byte[], int, int)}. */
+	public boolean wrap(ByteBuffer buf, int offset, int length) throws ParseException {
+		if (offset < 0 || length < 0 || offset + length > buf.limit()) {
+			throw new IndexOutOfBoundsException(String.format("Invalid region offset %d length %d for buffer of limit %d",
+				offset, length, buf.limit()));
+		}
+		if (buf.hasArray()) {
+			return wrap(buf.array(), buf.arrayOffset() + offset, length);
+		}
+		if (scratch == null || scratch.length < length) {
+			scratch = new byte[length];
+		}
+		final ByteBuffer src = buf.duplicate();
+		src.position(offset);
+		src.get(scratch, 0, length);
+		return wrap(scratch, 0, length);
+	}
+
+	/** Returns the type of the message, or -1 if it couldn't be read. */
+	public int getType() {
+		return peek.getType();
+	}
+
+	/** Returns true if the message contains the specified field, according to its bitmap. */
+	public boolean hasField(int field) {
+		return field > 1 && field <= 128 && peek.hasField(field);
+	}
+
+	/** Returns the position where the data of the specified field begins, after its length header
+	 * if it has one, relative to the start of the message. Returns -1 if the field was not located. */
+	public int fieldOffset(int field) {
+		return located(field) ? peek.getOffset(field) : -1;
+	}
+
+	/** Returns the length in bytes of the data of the specified field, without its length header,
+	 * or -1 if the field was not located. */
+	public int fieldLength(int field) {
+		return located(field) ? peek.getLength(field) : -1;
+	}
+
+	/** Returns the value of a field that contains only digits: ASCII digits, or BCD for binary NUMERIC,
+	 * AMOUNT and date fields. The value of an AMOUNT is in cents.
+	 * @return The value, or -1 if the field was not located, has more than 18 digits, is binary
+	 * or has something other than digits. */
+	public long getLong(int field) {
+		final FieldParseInfo fpi = getFieldInfo(field);
+		if (fpi == null) {
+			return -1;
+		}
+		final IsoType t = fpi.getType();
+		final int pos = offset + peek.getOffset(field);
+		final int len = peek.getLength(field);
+		if (t == IsoType.BINARY || t == IsoType.LLBIN || t == IsoType.LLLBIN) {
+			return -1;
+		} else if (factory.getUseBinaryMessages() && (t == IsoType.NUMERIC || t == IsoType.AMOUNT || t == IsoType.DATE10
+				|| t == IsoType.DATE4 || t == IsoType.DATE_EXP || t == IsoType.TIME)) {
+			return len > 9 ? -1 : Bcd.decode(buf, pos, len);
+		}
+		return len > 18 ? -1 : digits(buf, pos, len);
+	}
+
+	/** Returns the value of an AMOUNT field in cents.
+	 * @return The amount, or -1 if the field is not an AMOUNT, was not located or has something
+	 * other than digits. */
+	public long getAmountCents(int field) {
+		final FieldParseInfo fpi = getFieldInfo(field);
+		return fpi == null || fpi.getType() != IsoType.AMOUNT ? -1 : getLong(field);
+	}
+
+	/** Copies the bytes of the field into the array as characters, each byte being taken as an
+	 * ISO-8859-1 character, which covers ASCII.
+	 * @return The number of characters copied, or -1 if the field was not located.
+	 * @throws IndexOutOfBoundsException if the field doesn't fit in the array. */
+	public int getAsciiInto(int field, char[] dst, int dstPos) {
+		final int len = fieldLength(field);
+		if (len < 0) {
+			return -1;
+		} else if (dstPos < 0 || dstPos + len > dst.length) {
+			throw new IndexOutOfBoundsException(String.format("Field %d has %d bytes, does not fit at %d in array of length %d",
+				field, len, dstPos, dst.length));
+		}
+		final int pos = offset + peek.getOffset(field);
+		for (int i = 0; i < len; i++) {
+			dst[dstPos + i] = (char)(buf[pos + i] & 0xff);
+		}
+		return len;
+	}
+
+	/** Appends the bytes of the field to the StringBuilder as characters, each byte being taken
+	 * as an ISO-8859-1 character, which covers ASCII.
+	 * @return The number of characters appended, or -1 if the field was not located. */
+	public int getAsciiInto(int field, StringBuilder dst) {
+		final int len = fieldLength(field);
+		if (len < 0) {
+			return -1;
+		}
+		final int pos = offset + peek.getOffset(field);
+		for (int i = 0; i < len; i++) {
+			dst.append((char)(buf[pos + i] & 0xff));
+		}
+		return len;
+	}
+
+	/** Returns the parse guide of the field if it was located in the message, null otherwise. */
+	private FieldParseInfo getFieldInfo(int field) {
+		final ParsePlan plan = peek.getParsePlan();
+		return plan == null || !located(field) ? null : plan.get(field);
+	}
+
+	private boolean located(int field) {
+		return field > 1 && field <= 128 && peek.isLocated(field);
+	}
+
+	/** Reads ASCII digits as a long, or returns -1 if there's something other than a digit. */
+	private static long digits(byte[] buf, int pos, int len) {
+		long l = 0;
+		for (int i = pos; i < pos + len; i++) {
+			final int d = buf[i] - 48;
+			if (d < 0 || d > 9) {
+				return -1;
+			}
+			l = l * 10 + d;
+		}
+		return l;
+	}
+
+}
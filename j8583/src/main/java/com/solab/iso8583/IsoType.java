@@ -21,6 +21,10 @@ package com.solab.iso8583;
 import java.math.BigDecimal;
 import java.util.Date;
 
+import com.solab.iso8583.util.CharCodec;
+import com.solab.iso8583.util.DateCodec;
+import com.solab.iso8583.util.HexCodec;
+
 /** Defines the possible values types that can be used in the fields.
  * Some types required the length of the value to be specified (NUMERIC
  * and ALPHA). Other types have a fixed length, like dates and times.
@@ -56,6 +60,9 @@ public enum IsoType {
 	/** Similar to LLLVAR but holds byte arrays instead of strings. */
 	LLLBIN(false, 0);
 
+	/** AMOUNT values are formatted to 12 digits. */
+	private static final long MAX_AMOUNT = 1000000000000L;
+
 	private boolean needsLen;
 	private int length;
 
@@ -77,16 +84,7 @@ public enum IsoType {
 	/** Formats a Date if the receiver is DATE10, DATE4, DATE_EXP or TIME; throws an exception
 	 * otherwise. */
 	public String format(Date value) {
-		if (this == DATE10) {
-			return String.format("%Tm%<Td%<TH%<TM%<TS", value);
-		} else if (this == DATE4) {
-			return String.format("%Tm%<Td", value);
-		} else if (this == DATE_EXP) {
-			return String.format("%Ty%<Tm", value);
-		} else if (this == TIME) {
-			return String.format("%TH%<TM%<TS", value);
-		}
-		throw new IllegalArgumentException("Cannot format date as " + this);
+		return DateCodec.format(this, value.getTime());
 	}
 
 	/** Formats the string to the given length (length is only useful if type is ALPHA, NUMERIC or BINARY). */
@@ -99,22 +97,25 @@ public enum IsoType {
 	            return value.substring(0, length);
 	        } else if (value.length() == length) {
 	        	return value;
-	        } else {
-	        	return String.format(String.format("%%-%ds", length), value);
 	        }
+	        char[] c = new char[length];
+	        value.getChars(0, value.length(), c, 0);
+	        for (int i = value.length(); i < length; i++) {
+	        	c[i] = ' ';
+	        }
+	        return new String(c);
 		} else if (this == LLVAR || this == LLLVAR) {
 			return value;
 		} else if (this == NUMERIC) {
-	        char[] c = new char[length];
-	        char[] x = value.toCharArray();
-	        if (x.length > length) {
+	        if (value.length() > length) {
 	        	throw new IllegalArgumentException("Numeric value is larger than intended length: " + value + " LEN " + length);
 	        }
-	        int lim = c.length - x.length;
+	        char[] c = new char[length];
+	        int lim = length - value.length();
 	        for (int i = 0; i < lim; i++) {
 	            c[i] = '0';
 	        }
-	        System.arraycopy(x, 0, c, lim, x.length);
+	        value.getChars(0, value.length(), c, lim);
 	        return new String(c);
 		} else if (this == AMOUNT) {
 			return IsoType.NUMERIC.format(new BigDecimal(value).movePointRight(2).longValue(), 12);
@@ -130,10 +131,10 @@ public enum IsoType {
 	        int end = value.length();
 	        if (value.length() % 2 == 1) {
 	        	c[0] = '0';
-		        System.arraycopy(value.toCharArray(), 0, c, 1, value.length());
+	        	value.getChars(0, value.length(), c, 1);
 		        end++;
 	        } else {
-		        System.arraycopy(value.toCharArray(), 0, c, 0, value.length());
+	        	value.getChars(0, value.length(), c, 0);
 	        }
 	        for (int i = end; i < c.length; i++) {
 	            c[i] = '0';
@@ -149,6 +150,13 @@ public enum IsoType {
 	/** Formats the integer value as a NUMERIC, an AMOUNT, or a String. */
 	public String format(long value, int length) {
 		if (this == NUMERIC) {
+			if (value >= 0) {
+				char[] c = new char[length];
+				if (digits(value, c, length) != 0) {
+		        	throw new IllegalArgumentException("Numeric value is larger than intended length: " + value + " LEN " + length);
+				}
+				return new String(c);
+			}
 			String x = String.format(String.format("%%0%dd", length), value);
 	        if (x.length() > length) {
 	        	throw new IllegalArgumentException("Numeric value is larger than intended length: " + value + " LEN " + length);
@@ -157,6 +165,11 @@ public enum IsoType {
 		} else if (this == ALPHA || this == LLVAR || this == LLLVAR) {
 			return format(Long.toString(value), length);
 		} else if (this == AMOUNT) {
+			if (value >= 0 && value < MAX_AMOUNT / 100) {
+				char[] c = new char[12];
+				digits(value * 100, c, 12);
+				return new String(c);
+			}
 			return String.format("%010d00", value);
 		} else if (this == BINARY || this == LLBIN || this == LLLBIN) {
 			//TODO
@@ -167,7 +180,13 @@ public enum IsoType {
 	/** Formats the BigDecimal as an AMOUNT, NUMERIC, or a String. */
 	public String format(BigDecimal value, int length) {
 		if (this == AMOUNT) {
-			return String.format("%012d", value.movePointRight(2).longValue());
+			final long cents = value.movePointRight(2).longValue();
+			if (cents >= 0 && cents < MAX_AMOUNT) {
+				char[] c = new char[12];
+				digits(cents, c, 12);
+				return new String(c);
+			}
+			return String.format("%012d", cents);
 		} else if (this == NUMERIC) {
 			return format(value.longValue(), length);
 		} else if (this == ALPHA || this == LLVAR || this == LLLVAR) {
@@ -178,6 +197,101 @@ public enum IsoType {
 		throw new IllegalArgumentException("Cannot format BigDecimal as " + this);
 	}
 
+	/** Writes the integer value as a NUMERIC or an AMOUNT directly into the buffer, as ASCII
+	 * characters. The result is the same as encoding {@link #format(long, int)}.
+	 * @return The position after the last character. */
+	public int format(long value, int length, byte[] buf, int pos) {
+		if (this == NUMERIC && value >= 0) {
+			if (digits(value, buf, pos, length) != 0) {
+	        	throw new IllegalArgumentException("Numeric value is larger than intended length: " + value + " LEN " + length);
+			}
+			return pos + length;
+		} else if (this == AMOUNT && value >= 0 && value < MAX_AMOUNT / 100) {
+			digits(value * 100, buf, pos, 12);
+			return pos + 12;
+		} else if (this == NUMERIC || this == AMOUNT) {
+			return ascii(format(value, length), buf, pos);
+		}
+		throw new IllegalArgumentException("Cannot write number as " + this);
+	}
+
+	/** Writes the BigDecimal as an AMOUNT or a NUMERIC directly into the buffer, as ASCII
+	 * characters. The result is the same as encoding {@link #format(BigDecimal, int)}.
+	 * @return The position after the last character. */
+	public int format(BigDecimal value, int length, byte[] buf, int pos) {
+		if (this == AMOUNT) {
+			final long cents = value.movePointRight(2).longValue();
+			if (cents >= 0 && cents < MAX_AMOUNT) {
+				digits(cents, buf, pos, 12);
+				return pos + 12;
+			}
+			return ascii(format(value, length), buf, pos);
+		} else if (this == NUMERIC) {
+			return format(value.longValue(), length, buf, pos);
+		}
+		throw new IllegalArgumentException("Cannot write BigDecimal as " + this);
+	}
+
+	/** Writes an ALPHA value directly into the buffer, truncated or filled with spaces to the
+	 * right to the given length. The result is the same as encoding {@link #format(String, int)}.
+	 * @return The position after the last byte. */
+	public int format(String value, int length, byte[] buf, int pos, CharCodec codec) {
+		if (this != ALPHA) {
+			throw new IllegalArgumentException("Cannot write String as " + this);
+		}
+		final int len = value == null ? 0 : Math.min(value.length(), length);
+		if (len > 0) {
+			pos = codec.encode(value, 0, len, buf, pos);
+		}
+		return codec.fill(' ', length - len, buf, pos);
+	}
+
+	/** Writes the bytes of a BINARY, LLBIN or LLLBIN value directly into the buffer as hex digits,
+	 * in ASCII. BINARY values are truncated or filled with zeroes to the given length, which is the
+	 * number of bytes. The result is the same as encoding the hex string that the value is formatted to.
+	 * @return The position after the last digit. */
+	public int format(byte[] value, int length, byte[] buf, int pos) {
+		if (this == BINARY) {
+			final int len = Math.min(value.length, length);
+			pos = HexCodec.hexEncode(value, 0, len, buf, pos);
+			for (int i = len * 2; i < length * 2; i++) {
+				buf[pos++] = '0';
+			}
+			return pos;
+		} else if (this == LLBIN || this == LLLBIN) {
+			return HexCodec.hexEncode(value, 0, value.length, buf, pos);
+		}
+		throw new IllegalArgumentException("Cannot write bytes as " + this);
+	}
+
+	/** Writes the digits of a non-negative value right-aligned in the array, zero-filled to the left.
+	 * @return What is left of the value if it doesn't fit, 0 otherwise. */
+	private static long digits(long value, char[] c, int length) {
+		for (int i = length - 1; i >= 0; i--) {
+			c[i] = (char)('0' + (value % 10));
+			value /= 10;
+		}
+		return value;
+	}
+
+	/** Writes the digits of a non-negative value right-aligned in the buffer, zero-filled to the left.
+	 * @return What is left of the value if it doesn't fit, 0 otherwise. */
+	private static long digits(long value, byte[] buf, int pos, int length) {
+		for (int i = pos + length - 1; i >= pos; i--) {
+			buf[i] = (byte)('0' + (value % 10));
+			value /= 10;
+		}
+		return value;
+	}
+
+	/** Copies the ASCII characters of the string to the buffer. */
+	private static int ascii(String s, byte[] buf, int pos) {
+		for (int i = 0; i < s.length(); i++) {
+			buf[pos++] = (byte)s.charAt(i);
+		}
+		return pos;
+	}
+
 	public IsoValue<Object> value(Object val, int len) {
 		return new IsoValue<Object>(this, val, len);
 	}
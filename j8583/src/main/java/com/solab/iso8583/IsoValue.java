@@ -21,8 +21,12 @@ package com.solab.iso8583;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.Date;
 
+import com.solab.iso8583.util.Bcd;
+import com.solab.iso8583.util.CharCodec;
+import com.solab.iso8583.util.DateCodec;
 import com.solab.iso8583.util.HexCodec;
 
 /** Represents a value that is stored in a field inside an ISO8583 message.
@@ -41,6 +45,13 @@ public class IsoValue<T> implements Cloneable {
 	private CustomField<T> encoder;
 	private int length;
 	private String encoding;
+	private CharCodec codec;
+	/** The buffer the value was parsed from, if it must be written as it was received. */
+	private byte[] wire;
+	private int wireStart;
+	private int wireEnd;
+	private boolean wireBinary;
+	private CharCodec wireCodec;
 
 	public IsoValue(IsoType t, T value) {
 		this(t, value, null);
@@ -157,13 +168,46 @@ public class IsoValue<T> implements Cloneable {
 		return value;
 	}
 
+	/** Sets the character encoding used to write the value.
+	 * @throws IllegalArgumentException if the encoding is not supported. */
 	public void setCharacterEncoding(String value) {
+		codec = value == null ? null : CharCodec.forName(value);
+		encoding = value;
+	}
+	/** Sets the encoding when it has already been resolved, by the message that contains the value. */
+	void setCharacterEncoding(String value, CharCodec resolved) {
+		codec = resolved;
 		encoding = value;
 	}
 	public String getCharacterEncoding() {
 		return encoding;
 	}
 
+	/** Makes the value reference the bytes it was parsed or pre-encoded to, so that they can be copied
+	 * as they are when the value is written with the same coding and encoding. This is only done for
+	 * immutable values, since other values could be modified afterwards. */
+	void setWireData(byte[] buf, int start, int end, boolean binary, CharCodec cc) {
+		if (isImmutable()) {
+			wire = buf;
+			wireStart = start;
+			wireEnd = end;
+			wireBinary = binary;
+			wireCodec = cc;
+		}
+	}
+
+	/** Returns true if the value is a string or a number without a CustomField. */
+	boolean isImmutable() {
+		return encoder == null && (value instanceof String || value instanceof Long || value instanceof Integer
+				|| value instanceof BigDecimal || value instanceof BigInteger);
+	}
+
+	/** Returns true if the value kept a reference to the bytes it was parsed or pre-encoded to,
+	 * with the same coding and encoding it's going to be written with. */
+	private boolean hasWireData(boolean binary, CharCodec cc) {
+		return wire != null && wireBinary == binary && wireCodec == cc;
+	}
+
 	/** Returns the formatted value as a String. The formatting depends on the type of the
 	 * receiver. */
 	public String toString() {
@@ -227,7 +271,7 @@ public class IsoValue<T> implements Cloneable {
 
 	@Override
 	public int hashCode() {
-		return value == null ? 0 : toString().hashCode();
+		return getValue() == null ? 0 : toString().hashCode();
 	}
 
 	/** Returns the CustomField encoder for this value. */
@@ -238,100 +282,173 @@ public class IsoValue<T> implements Cloneable {
 	/** Writes the formatted value to a stream, with the length header
 	 * if it's a variable length type. */
 	public void write(OutputStream outs, boolean binary) throws IOException {
-		if (type == IsoType.LLLVAR || type == IsoType.LLVAR) {
+		final byte[] buf = new byte[getEncodedLength(binary)];
+		write(buf, 0, binary);
+		outs.write(buf);
+	}
+
+	/** Returns the exact number of bytes that the value takes when written, including the length
+	 * header if it's a variable length type. */
+	public int getEncodedLength(boolean binary) {
+		final CharCodec cc = codec == null ? CharCodec.getDefault() : codec;
+		if (hasWireData(binary, cc)) {
+			return wireEnd - wireStart;
+		}
+		return encodedLength(binary, cc);
+	}
+
+	/** Returns the number of bytes that the formatted value takes, with the specified coding and encoding. */
+	int encodedLength(boolean binary, CharCodec cc) {
+		if (type == IsoType.LLVAR || type == IsoType.LLLVAR) {
+			return getHeaderLength(binary) + cc.encodedLength(toString());
+		} else if (type == IsoType.LLBIN || type == IsoType.LLLBIN) {
 			if (binary) {
-				if (type == IsoType.LLLVAR) {
-					outs.write(length / 100); //00 to 09 automatically in BCD
-				}
-				//BCD encode the rest of the length
-				outs.write((((length % 100) / 10) << 4) | (length % 10));
-			} else {
-				//write the length in ASCII
-				if (type == IsoType.LLLVAR) {
-					outs.write((length / 100) + 48);
-				}
-				if (length >= 10) {
-					outs.write(((length % 100) / 10) + 48);
-				} else {
-					outs.write(48);
+				return getHeaderLength(binary) + getBinaryLength();
+			} else if (isRawBytes() && cc.isAsciiCompatible()) {
+				return getHeaderLength(binary) + ((byte[])value).length * 2;
+			}
+			return getHeaderLength(binary) + cc.encodedLength(toString());
+		} else if (binary) {
+			if (type == IsoType.NUMERIC) {
+				return Bcd.length(length);
+			} else if (type == IsoType.AMOUNT) {
+				return 6;
+			} else if (isDate()) {
+				return value instanceof Date ? type.getLength() / 2 : length / 2;
+			} else if (type == IsoType.BINARY) {
+				return Math.max(length, getBinaryLength());
+			}
+		} else if (cc.isSingleByte() || cc.isAsciiCompatible()) {
+			//These are always formatted to the same number of digits
+			if (isDate() && value instanceof Date) {
+				return type.getLength();
+			} else if (type == IsoType.BINARY) {
+				return length * 2;
+			} else if (type == IsoType.NUMERIC && (cc.isSingleByte() || value instanceof Number)) {
+				return length;
+			} else if (type == IsoType.ALPHA && cc.isSingleByte()) {
+				return length;
+			} else if (type == IsoType.AMOUNT && value instanceof BigDecimal && cc.isAsciiCompatible()) {
+				final long cents = ((BigDecimal)value).movePointRight(2).longValue();
+				if (cents >= 0 && cents < 1000000000000L) {
+					return 12;
 				}
-				outs.write((length % 10) + 48);
 			}
+		}
+		return cc.encodedLength(toString());
+	}
+
+	/** Writes the formatted value to the buffer, with the length header if it's a variable
+	 * length type. The buffer must have room for {@link #getEncodedLength(boolean)} bytes.
+	 * @return The position after the last byte written. */
+	public int write(byte[] buf, int pos, boolean binary) {
+		final CharCodec cc = codec == null ? CharCodec.getDefault() : codec;
+		if (hasWireData(binary, cc)) {
+			System.arraycopy(wire, wireStart, buf, pos, wireEnd - wireStart);
+			return pos + wireEnd - wireStart;
+		}
+		return encode(buf, pos, binary, cc);
+	}
+
+	/** Formats the value into the buffer, with the specified coding and encoding. */
+	int encode(byte[] buf, int pos, boolean binary, CharCodec cc) {
+		if (type == IsoType.LLLVAR || type == IsoType.LLVAR) {
+			pos = writeHeader(buf, pos, length, binary);
 		} else if (type == IsoType.LLBIN || type == IsoType.LLLBIN) {
+			pos = writeHeader(buf, pos, binary ? length : length * 2, binary);
+			if (!binary && isRawBytes() && cc.isAsciiCompatible()) {
+				return type.format((byte[])value, length, buf, pos);
+			}
+		} else if (value instanceof Date && isDate()) {
 			if (binary) {
-				if (type == IsoType.LLLBIN ) {
-					outs.write(length / 100); //00 to 09 automatically in BCD
-				}
-				//BCD encode the rest of the length
-				outs.write((((length % 100) / 10) << 4) | (length % 10));
-			} else {
-				int _l = length*2;
-				//write the length in ASCII
-				if (type == IsoType.LLLBIN) {
-					outs.write((_l / 100) + 48);
-				}
-				if (_l >= 10) {
-					outs.write(((_l % 100) / 10) + 48);
-				} else {
-					outs.write(48);
-				}
-				outs.write((_l % 10) + 48);
+				return DateCodec.formatBcd(type, ((Date)value).getTime(), buf, pos);
+			} else if (cc.isAsciiCompatible()) {
+				//The digits go straight into the buffer
+				return DateCodec.format(type, ((Date)value).getTime(), buf, pos);
 			}
 		} else if (binary) {
 			//numeric types in binary are coded like this
-			byte[] buf = null;
-			if (type == IsoType.NUMERIC) {
-				buf = new byte[(length / 2) + (length % 2)];
-			} else if (type == IsoType.AMOUNT) {
-				buf = new byte[6];
-			} else if (type == IsoType.DATE10 || type == IsoType.DATE4 || type == IsoType.DATE_EXP || type == IsoType.TIME) {
-				buf = new byte[length / 2];
+			if (type == IsoType.NUMERIC && value instanceof Number && ((Number)value).longValue() >= 0) {
+				return Bcd.encode(((Number)value).longValue(), length, buf, pos);
+			} else if (type == IsoType.AMOUNT && value instanceof BigDecimal) {
+				final long cents = ((BigDecimal)value).movePointRight(2).longValue();
+				if (cents >= 0 && cents < 1000000000000L) {
+					return Bcd.encode(cents, 12, buf, pos);
+				}
 			}
-			//Encode in BCD if it's one of these types
-			if (buf != null) {
-				toBcd(toString(), buf);
-				outs.write(buf);
-				return;
+			if (type == IsoType.NUMERIC || type == IsoType.AMOUNT || isDate()) {
+				return Bcd.encode(toString(), buf, pos, encodedLength(true, cc));
 			}
+		} else if (cc.isAsciiCompatible()) {
+			//These are formatted straight into the buffer
+			if (type == IsoType.NUMERIC && value instanceof Number) {
+				return type.format(((Number)value).longValue(), length, buf, pos);
+			} else if (type == IsoType.AMOUNT && value instanceof BigDecimal) {
+				return type.format((BigDecimal)value, 12, buf, pos);
+			} else if (type == IsoType.BINARY && isRawBytes()) {
+				return type.format((byte[])value, length, buf, pos);
+			}
+		}
+		if (type == IsoType.ALPHA) {
+			return type.format(encoder == null ? value.toString() : encoder.encodeField(value), length, buf, pos, cc);
 		}
 		if (binary && (type == IsoType.BINARY || type == IsoType.LLBIN || type == IsoType.LLLBIN)) {
-			int missing = 0;
-			if (value instanceof byte[]) {
-				outs.write((byte[])value);
-				missing = length - ((byte[])value).length;
-			} else {
-				byte[] binval = HexCodec.hexDecode(value.toString());
-				outs.write(binval);
-				missing = length - binval.length;
-			}
-			if (type == IsoType.BINARY && missing > 0) {
-				for (int i = 0; i < missing; i++) {
-					outs.write(0);
+			final byte[] binval = value instanceof byte[] ? (byte[])value : HexCodec.hexDecode(value.toString());
+			System.arraycopy(binval, 0, buf, pos, binval.length);
+			pos += binval.length;
+			if (type == IsoType.BINARY) {
+				for (int i = binval.length; i < length; i++) {
+					buf[pos++] = 0;
 				}
 			}
-		} else {
-			outs.write(encoding == null ? toString().getBytes() : toString().getBytes(encoding));
+			return pos;
 		}
+		return cc.encode(toString(), buf, pos);
+	}
+
+	/** Returns true if the value is a byte array that is written as it is. */
+	private boolean isRawBytes() {
+		return value instanceof byte[] && encoder == null;
+	}
+
+	private boolean isDate() {
+		return type == IsoType.DATE10 || type == IsoType.DATE4 || type == IsoType.DATE_EXP || type == IsoType.TIME;
 	}
 
-	/** Encode the value as BCD and put it in the buffer. The buffer must be big enough
-	 * to store the digits in the original value (half the length of the string). */
-	private void toBcd(String value, byte[] buf) {
-		int charpos = 0; //char where we start
-		int bufpos = 0;
-		if (value.length() % 2 == 1) {
-			//for odd lengths we encode just the first digit in the first byte
-			buf[0] = (byte)(value.charAt(0) - 48);
-			charpos = 1;
-			bufpos = 1;
+	private int getHeaderLength(boolean binary) {
+		final boolean lll = type == IsoType.LLLVAR || type == IsoType.LLLBIN;
+		if (binary) {
+			return lll ? 2 : 1;
 		}
-		//encode the rest of the string
-		while (charpos < value.length()) {
-			buf[bufpos] = (byte)(((value.charAt(charpos) - 48) << 4)
-					| (value.charAt(charpos + 1) - 48));
-			charpos += 2;
-			bufpos++;
+		return lll ? 3 : 2;
+	}
+
+	/** Returns the number of bytes of a binary value. */
+	private int getBinaryLength() {
+		if (value instanceof byte[]) {
+			return ((byte[])value).length;
+		}
+		return (value.toString().length() + 1) / 2;
+	}
+
+	/** Writes the length header of a variable length type. */
+	private int writeHeader(byte[] buf, int pos, int len, boolean binary) {
+		final boolean lll = type == IsoType.LLLVAR || type == IsoType.LLLBIN;
+		if (binary) {
+			if (lll) {
+				buf[pos++] = (byte)(len / 100); //00 to 09 automatically in BCD
+			}
+			//BCD encode the rest of the length
+			buf[pos++] = (byte)((((len % 100) / 10) << 4) | (len % 10));
+		} else {
+			//write the length in ASCII
+			if (lll) {
+				buf[pos++] = (byte)((len / 100) + 48);
+			}
+			buf[pos++] = (byte)(((len % 100) / 10) + 48);
+			buf[pos++] = (byte)((len % 10) + 48);
 		}
+		return pos;
 	}
 
 }
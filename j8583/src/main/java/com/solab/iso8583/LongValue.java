@@ -0,0 +1,97 @@
+/*
+j8583 A Java implementation of the ISO8583 protocol
+Copyright (C) 2011 Enrique Zamudio Lopez
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+*/
+package com.solab.iso8583;
+
+import com.solab.iso8583.util.Bcd;
+import com.solab.iso8583.util.CharCodec;
+
+/** A NUMERIC value of up to 18 digits that is stored as a long, so that it can be read and written
+ * without creating any objects. {@link #getValue()} returns a Long, which is only created when
+ * it's requested.
+ *
+ * @author Enrique Zamudio
+ */
+public class LongValue extends IsoValue<Number> {
+
+	private final long number;
+	private Long boxed;
+
+	/** Creates a new NUMERIC value.
+	 * @param value The value, which must not be negative.
+	 * @param length The number of digits of the field, up to 18.
+	 * @throws IllegalArgumentException if the value is negative or doesn't fit in the length. */
+	public LongValue(long value, int length) {
+		super(IsoType.NUMERIC, null, length, null);
+		if (length > 18) {
+			throw new IllegalArgumentException("LongValue can only hold up to 18 digits, not " + length);
+		} else if (value < 0) {
+			throw new IllegalArgumentException("LongValue cannot hold negative value " + value);
+		}
+		long max = 1;
+		for (int i = 0; i < length; i++) {
+			max *= 10;
+		}
+		if (value >= max) {
+			throw new IllegalArgumentException("Numeric value is larger than intended length: " + value + " LEN " + length);
+		}
+		number = value;
+	}
+
+	/** Returns the value as a primitive long. */
+	public long getLong() {
+		return number;
+	}
+
+	@Override
+	public Number getValue() {
+		if (boxed == null) {
+			boxed = number;
+		}
+		return boxed;
+	}
+
+	@Override
+	public String toString() {
+		return IsoType.NUMERIC.format(number, getLength());
+	}
+
+	@Override
+	boolean isImmutable() {
+		return true;
+	}
+
+	@Override
+	int encodedLength(boolean binary, CharCodec cc) {
+		if (binary) {
+			return Bcd.length(getLength());
+		}
+		return cc.isAsciiCompatible() ? getLength() : cc.encodedLength(toString());
+	}
+
+	@Override
+	int encode(byte[] buf, int pos, boolean binary, CharCodec cc) {
+		if (binary) {
+			return Bcd.encode(number, getLength(), buf, pos);
+		} else if (cc.isAsciiCompatible()) {
+			return IsoType.NUMERIC.format(number, getLength(), buf, pos);
+		}
+		return cc.encode(toString(), buf, pos);
+	}
+
+}
@@ -21,19 +21,26 @@ package com.solab.iso8583;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.text.ParseException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.BitSet;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.solab.iso8583.parse.ConfigParser;
 import com.solab.iso8583.parse.FieldParseInfo;
+import com.solab.iso8583.parse.ParsePlan;
+import com.solab.iso8583.util.Bitmap;
+import com.solab.iso8583.util.CharCodec;
 
 /** This class is used to create messages, either from scratch or from an existing String or byte
  * buffer. It can be configured to put default values on newly created messages, and also to know
@@ -46,6 +53,12 @@ import com.solab.iso8583.parse.FieldParseInfo;
  * It can also be configured to know what fields to expect in incoming messages (all possible values
  * must be stated, indicating the date type for each). This way the messages can be parsed from
  * a byte buffer.
+ * <P>
+ * Once it has been configured and {@link #freeze()}d, a single factory can be used to create and
+ * parse messages from any number of threads at the same time; the parsing guides are immutable and
+ * all the state of a parse is kept in the message being parsed. The factory must be published safely
+ * to those threads (for example through a final field, or by submitting the tasks to an executor
+ * after freezing it), and a TraceNumberGenerator, if any, must be thread-safe as well.
  * 
  * @author Enrique Zamudio
  */
@@ -55,10 +68,12 @@ public class MessageFactory {
 
 	/** This map stores the message template for each message type. */
 	private Map<Integer, IsoMessage> typeTemplates = new HashMap<Integer, IsoMessage>();
+	/** Copies of the template values that were pre-encoded by {@link #freeze()}, for each type. */
+	private Map<Integer, EncodedTemplate> encodedTemplates = new HashMap<Integer, EncodedTemplate>();
 	/** Stores the information needed to parse messages sorted by type. */
 	private Map<Integer, Map<Integer, FieldParseInfo>> parseMap = new HashMap<Integer, Map<Integer, FieldParseInfo>>();
-	/** Stores the field numbers to be parsed, in order of appearance. */
-	private Map<Integer, List<Integer>> parseOrder = new HashMap<Integer, List<Integer>>();
+	/** Stores the compiled parse guides, sorted by type. */
+	private Map<Integer, ParsePlan> parsePlans = new HashMap<Integer, ParsePlan>();
 
 	private TraceNumberGenerator traceGen;
 	/** The ISO header to be included in each message type. */
@@ -74,10 +89,20 @@ public class MessageFactory {
 	/** Flag to specify if missing fields should be ignored as long as they're at the end of the message. */
 	private boolean ignoreLast;
 	private boolean forceb2;
+	/** Indicates if parsed messages should decode their fields only when they're requested. */
+	private boolean lazy;
+	/** Indicates if parsed values should keep a reference to their bytes in the parsed buffer. */
+	private boolean keepWire;
 	private String encoding = System.getProperty("file.encoding");
+	/** The codec for the encoding, resolved when the encoding is set. */
+	private CharCodec codec = resolveCodec(encoding);
+	/** The messages released by each thread, to be reused; null if messages are not pooled. */
+	private ThreadLocal<ArrayDeque<IsoMessage>> pool;
+	private int poolSize;
 
 	/** Sets the character encoding used for parsing ALPHA, LLVAR and LLLVAR fields. */
 	public void setCharacterEncoding(String value) {
+		codec = resolveCodec(value);
 		encoding = value;
 		if (parseMap.size() > 0) {
 			for (Map<Integer, FieldParseInfo> pt : parseMap.values()) {
@@ -116,6 +141,35 @@ public class MessageFactory {
 		return ignoreLast;
 	}
 
+	/** Setting this property to true makes the factory parse messages lazily: the message is scanned
+	 * once to find where each field is, but the values are only decoded when they're first requested
+	 * from the message (through getField, getObjectValue, etc). This is useful when only a few
+	 * fields are read from each message. The buffer passed to parseMessage is referenced by the
+	 * message, so it must not be modified or reused until all the needed fields have been read.
+	 * Default is false. */
+	public void setLazyParsing(boolean flag) {
+		lazy = flag;
+	}
+	/** Returns true if the factory parses messages lazily. Default is false. */
+	public boolean getLazyParsing() {
+		return lazy;
+	}
+
+	/** Setting this property to true makes parsed values remember where they are in the buffer they
+	 * were parsed from, so that when they're written again with the same encoding (for example, when
+	 * they're copied to a response with {@link #createResponse(IsoMessage)}) their original bytes are
+	 * copied instead of formatting the values again. Only values of immutable types (strings and
+	 * numbers) without a CustomField do this. The buffer passed to parseMessage is referenced by the
+	 * values, so it must not be modified or reused while they (or their copies) are still going to
+	 * be written. Default is false. */
+	public void setKeepWireData(boolean flag) {
+		keepWire = flag;
+	}
+	/** Returns true if parsed values keep a reference to their bytes in the parsed buffer. Default is false. */
+	public boolean getKeepWireData() {
+		return keepWire;
+	}
+
 	/** Specifies a map for custom field encoder/decoders. The keys are the field numbers. */
 	@SuppressWarnings("rawtypes")
 	public void setCustomFields(Map<Integer, CustomField> value) {
@@ -165,27 +219,83 @@ public class MessageFactory {
 		return etx;
 	}
 
+	/** Sets the number of messages that each thread keeps to be reused, after they're given back
+	 * with {@link #release(IsoMessage)}. New and parsed messages are taken from this pool when
+	 * it's not empty. The default is 0, which means that messages are not pooled.
+	 * This must be set before the factory is shared by several threads. */
+	public void setMessagePoolSize(int size) {
+		if (size < 0) {
+			throw new IllegalArgumentException("The pool size cannot be negative");
+		}
+		poolSize = size;
+		pool = size == 0 ? null : new ThreadLocal<ArrayDeque<IsoMessage>>() {
+			@Override
+			protected ArrayDeque<IsoMessage> initialValue() {
+				return new ArrayDeque<IsoMessage>();
+			}
+		};
+	}
+	/** Returns the number of messages that each thread keeps to be reused. Default is 0. */
+	public int getMessagePoolSize() {
+		return poolSize;
+	}
+
+	/** Gives a message back to the factory, to be reused by the current thread if it's keeping
+	 * fewer than {@link #getMessagePoolSize()} messages. The message is reset, so it must not be
+	 * used anymore, and nothing else must be referencing it or its fields. */
+	public void release(IsoMessage m) {
+		if (pool != null && m != null) {
+			final ArrayDeque<IsoMessage> free = pool.get();
+			if (free.size() < poolSize) {
+				m.reset();
+				free.push(m);
+			}
+		}
+	}
+
+	/** Returns a message from the pool of the current thread, or a new one if there isn't any. */
+	private IsoMessage obtain() {
+		if (pool != null) {
+			final IsoMessage m = pool.get().poll();
+			if (m != null) {
+				return m;
+			}
+		}
+		return new IsoMessage();
+	}
+
 	/** Creates a new message of the specified type, with optional trace and date values as well
 	 * as any other values specified in a message template. If the factory is set to use binary
 	 * messages, then the returned message will be written using binary coding.
 	 * @param type The message type, for example 0x200, 0x400, etc. */
 	public IsoMessage newMessage(int type) {
-		IsoMessage m = new IsoMessage(isoHeaders.get(type));
+		return newMessage(type, obtain());
+	}
+
+	/** Sets up the specified message like {@link #newMessage(int)} does, after resetting it, so that
+	 * an existing instance can be reused instead of creating a new one.
+	 * @param type The message type, for example 0x200, 0x400, etc.
+	 * @param m The message to reuse.
+	 * @return The same message. */
+	public IsoMessage newMessage(int type, IsoMessage m) {
+		m.reset();
+		m.setIsoHeader(isoHeaders.get(type));
 		m.setType(type);
 		m.setEtx(etx);
 		m.setBinary(useBinary);
 		m.setForceSecondaryBitmap(forceb2);
-		m.setCharacterEncoding(encoding);
+		m.setCharacterEncoding(encoding, codec);
 
 		//Copy the values from the template
 		IsoMessage templ = typeTemplates.get(type);
 		if (templ != null) {
-			for (int i = 2; i <= 128; i++) {
-				if (templ.hasField(i)) {
-					//We could detect here if there's a custom object with a CustomField,
-					//but we can't copy the value so there's no point.
-					m.setField(i, templ.getField(i).clone());
-				}
+			final EncodedTemplate et = encodedTemplates.get(type);
+			for (int i = templ.nextField(1); i > 0; i = templ.nextField(i)) {
+				//We could detect here if there's a custom object with a CustomField,
+				//but we can't copy the value so there's no point.
+				final IsoValue<?> v = templ.getField(i);
+				//A pre-encoded copy is only used while the template still has the value it was made from
+				m.setField(i, et != null && et.source[i] == v ? et.encoded[i].clone() : v.clone());
 			}
 		}
 		if (traceGen != null) {
@@ -202,7 +312,8 @@ public class MessageFactory {
 	 * overwriting fields from the template if they overlap.
 	 * @param request An ISO8583 message with a request type (ending in 00). */
 	public IsoMessage createResponse(IsoMessage request) {
-		IsoMessage resp = new IsoMessage(isoHeaders.get(request.getType() + 16));
+		IsoMessage resp = obtain();
+		resp.setIsoHeader(isoHeaders.get(request.getType() + 16));
 		resp.setCharacterEncoding(request.getCharacterEncoding());
 		resp.setBinary(request.isBinary());
 		resp.setType(request.getType() + 16);
@@ -210,17 +321,12 @@ public class MessageFactory {
 		resp.setForceSecondaryBitmap(forceb2);
 		//Copy the values from the template or the request (request has preference)
 		IsoMessage templ = typeTemplates.get(resp.getType());
-		if (templ == null) {
-			for (int i = 2; i < 128; i++) {
-				if (request.hasField(i)) {
-					resp.setField(i, request.getField(i).clone());
-				}
-			}
-		} else {
-			for (int i = 2; i < 128; i++) {
-				if (request.hasField(i)) {
-					resp.setField(i, request.getField(i).clone());
-				} else if (templ.hasField(i)) {
+		for (int i = request.nextField(1); i > 0; i = request.nextField(i)) {
+			resp.setField(i, request.getField(i).clone());
+		}
+		if (templ != null) {
+			for (int i = templ.nextField(1); i > 0; i = templ.nextField(i)) {
+				if (!request.hasField(i)) {
 					resp.setField(i, templ.getField(i).clone());
 				}
 			}
@@ -228,6 +334,25 @@ public class MessageFactory {
 		return resp;
 	}
 
+	/** Creates a message to respond to a request, like {@link #createResponse(IsoMessage)}, but
+	 * without copying any fields: the fields of the request, and of the template for the response
+	 * type, show through the response until they're set or removed in it. This makes echoing the
+	 * request fields practically free. The request and the template must not be modified while
+	 * the response is in use, and the values that show through are the same instances as in them
+	 * (they're written with their own character encoding), so they must not be modified either.
+	 * @param request An ISO8583 message with a request type (ending in 00). */
+	public IsoMessage createResponseOverlay(IsoMessage request) {
+		IsoMessage resp = obtain();
+		resp.setIsoHeader(isoHeaders.get(request.getType() + 16));
+		resp.setCharacterEncoding(request.getCharacterEncoding());
+		resp.setBinary(request.isBinary());
+		resp.setType(request.getType() + 16);
+		resp.setEtx(etx);
+		resp.setForceSecondaryBitmap(forceb2);
+		resp.setBases(request, typeTemplates.get(resp.getType()));
+		return resp;
+	}
+
 	/** Creates a new message instance from the buffer, which must contain a valid ISO8583
 	 * message. If the factory is set to use binary messages then it will try to parse
 	 * a binary message.
@@ -236,173 +361,361 @@ public class MessageFactory {
 	 * and the rest of the message must come. */
 	public IsoMessage parseMessage(byte[] buf, int isoHeaderLength)
 	throws ParseException, UnsupportedEncodingException {
+		return parseMessage(buf, 0, buf.length, isoHeaderLength);
+	}
+
+	/** Creates a new message instance from a region of the buffer, which must contain a valid ISO8583
+	 * message. The message is parsed in place, so that it's not necessary to copy a frame out of a larger
+	 * buffer (such as the receive buffer of a socket) before parsing it. No data outside of the specified
+	 * region is read.
+	 * @param buf The byte buffer containing the message. The region must not include the length header.
+	 * @param offset The position in the buffer where the message (or its ISO header) begins.
+	 * @param length The length of the message, including the ISO header.
+	 * @param isoHeaderLength The expected length of the ISO header, after which the message type
+	 * and the rest of the message must come. */
+	public IsoMessage parseMessage(byte[] buf, int offset, int length, int isoHeaderLength)
+	throws ParseException, UnsupportedEncodingException {
+		return parseMessage(buf, offset, length, isoHeaderLength, null);
+	}
+
+	/** Creates a new message instance from the buffer, containing only the specified fields.
+	 * The rest of the fields in the message are skipped over without being decoded, and the
+	 * parsing stops as soon as the last of the requested fields has been read. This is useful
+	 * when only a few fields are needed, for example to route or classify messages.
+	 * @param buf The byte buffer containing the message. Must not include the length header.
+	 * @param isoHeaderLength The expected length of the ISO header, after which the message type
+	 * and the rest of the message must come.
+	 * @param fields The fields to parse. Requested fields that are not in the message are ignored. */
+	public IsoMessage parseMessage(byte[] buf, int isoHeaderLength, Bitmap fields)
+	throws ParseException, UnsupportedEncodingException {
+		return parseMessage(buf, 0, buf.length, isoHeaderLength, fields);
+	}
+
+	/** Creates a new message instance from a region of the buffer, containing only the specified
+	 * fields (or all of them if the field set is null).
+	 * See {@link #parseMessage(byte[], int, Bitmap)} and {@link #parseMessage(byte[], int, int, int)}.
+	 * @param buf The byte buffer containing the message. The region must not include the length header.
+	 * @param offset The position in the buffer where the message (or its ISO header) begins.
+	 * @param length The length of the message, including the ISO header.
+	 * @param isoHeaderLength The expected length of the ISO header, after which the message type
+	 * and the rest of the message must come.
+	 * @param fields The fields to parse, or null to parse all of them. */
+	public IsoMessage parseMessage(byte[] buf, int offset, int length, int isoHeaderLength, Bitmap fields)
+	throws ParseException, UnsupportedEncodingException {
+		return parse(buf, offset, length, isoHeaderLength, fields, null, null);
+	}
+
+	/** Parses a message from a region of the buffer like {@link #parseMessage(byte[], int, int, int)},
+	 * but into an existing message, which is reset first, instead of a new one. If the message
+	 * cannot be parsed, it's left reset.
+	 * @param m The message to parse into.
+	 * @param buf The byte buffer containing the message. The region must not include the length header.
+	 * @param offset The position in the buffer where the message (or its ISO header) begins.
+	 * @param length The length of the message, including the ISO header.
+	 * @param isoHeaderLength The expected length of the ISO header, after which the message type
+	 * and the rest of the message must come.
+	 * @return The same message, or null if there's no parsing guide for its type. */
+	public IsoMessage parseMessageInto(IsoMessage m, byte[] buf, int offset, int length, int isoHeaderLength)
+	throws ParseException, UnsupportedEncodingException {
+		m.reset();
+		return parse(buf, offset, length, isoHeaderLength, null, null, m);
+	}
+
+	/** Parses a message like {@link #parseMessage(byte[], int)}, but without throwing exceptions
+	 * when the data is malformed. See {@link #tryParseMessage(byte[], int, int, int)}. */
+	public ParseResult tryParseMessage(byte[] buf, int isoHeaderLength) {
+		return tryParseMessage(buf, 0, buf.length, isoHeaderLength);
+	}
+
+	/** Parses a message from a region of the buffer like {@link #parseMessage(byte[], int, int, int)},
+	 * but without throwing exceptions when the data is malformed; the problems are returned as
+	 * ParseErrors in the result, along with the fields that could be parsed. This is cheaper than
+	 * catching a ParseException when a lot of garbage is received, since no stack traces are
+	 * captured and no error messages are formatted unless they're requested.
+	 * <P>
+	 * Parsing stops at the first field whose length can't be determined, since the rest of the
+	 * fields can't be found after it; a field with an invalid value is left out of the message
+	 * and parsing continues with the next one.
+	 * @param buf The byte buffer containing the message. The region must not include the length header.
+	 * @param offset The position in the buffer where the message (or its ISO header) begins.
+	 * @param length The length of the message, including the ISO header.
+	 * @param isoHeaderLength The expected length of the ISO header, after which the message type
+	 * and the rest of the message must come. */
+	public ParseResult tryParseMessage(byte[] buf, int offset, int length, int isoHeaderLength) {
+		final ParseResult result = new ParseResult();
+		try {
+			result.setMessage(parse(buf, offset, length, isoHeaderLength, null, result, null));
+		} catch (ParseException ex) {
+			//The checks are done before parsing, so this can only come from a custom parser
+			result.addError(0, ex.getErrorOffset(), ParseError.Reason.INVALID_VALUE, ex);
+		} catch (UnsupportedEncodingException ex) {
+			result.addError(0, offset, ParseError.Reason.INVALID_VALUE, ex);
+		}
+		return result;
+	}
+
+	/** Parses the message, throwing exceptions if the result is null, or reporting the
+	 * errors in the result otherwise. The message is parsed into the specified one, if any. */
+	private IsoMessage parse(byte[] buf, int offset, int length, int isoHeaderLength, Bitmap fields,
+			ParseResult result, IsoMessage into) throws ParseException, UnsupportedEncodingException {
+		if (offset < 0 || length < 0 || offset + length > buf.length) {
+			throw new IndexOutOfBoundsException(String.format("Invalid region offset %d length %d for buffer of length %d",
+				offset, length, buf.length));
+		}
+		final int limit = offset + length;
 		final int minlength = isoHeaderLength+(useBinary ? 10 : 20);
-		if (buf.length < minlength) {
+		if (length < minlength) {
+			if (result != null) {
+				result.addError(0, offset, ParseError.Reason.INSUFFICIENT_DATA, null);
+				return null;
+			}
 			throw new ParseException("Insufficient buffer length, needs to be at least " + minlength, 0);
 		}
-		final IsoMessage m = new IsoMessage(isoHeaderLength > 0 ? new String(buf, 0, isoHeaderLength) : null);
-		m.setCharacterEncoding(encoding);
+		final int start = offset + isoHeaderLength;
 		int type = 0;
 		if (useBinary) {
-			type = ((buf[isoHeaderLength] & 0xff) << 8) | (buf[isoHeaderLength + 1] & 0xff);
+			type = ((buf[start] & 0xff) << 8) | (buf[start + 1] & 0xff);
 		} else {
-			type = ((buf[isoHeaderLength] - 48) << 12)
-			| ((buf[isoHeaderLength + 1] - 48) << 8)
-			| ((buf[isoHeaderLength + 2] - 48) << 4)
-			| (buf[isoHeaderLength + 3] - 48);
+			type = ((buf[start] - 48) << 12)
+			| ((buf[start + 1] - 48) << 8)
+			| ((buf[start + 2] - 48) << 4)
+			| (buf[start + 3] - 48);
+		}
+		final ParsePlan plan = parsePlans.get(type);
+		if (plan == null) {
+			if (result != null) {
+				result.addError(0, offset, ParseError.Reason.UNKNOWN_TYPE, null);
+				return null;
+			}
+			log.error(String.format("ISO8583 MessageFactory has no parsing guide for message type %04x [%s]",
+				type, new String(buf, offset, length)));
+			return null;
 		}
-		m.setType(type);
 		//Parse the bitmap (primary first)
-		final BitSet bs = new BitSet(64);
-		int pos = 0;
-		if (useBinary) {
-			for (int i = isoHeaderLength + 2; i < isoHeaderLength + 10; i++) {
-				int bit = 128;
-				for (int b = 0; b < 8; b++) {
-					bs.set(pos++, (buf[i] & bit) != 0);
-					bit >>= 1;
-				}
+		final Bitmap bs = new Bitmap();
+		int pos;
+		if (result == null) {
+			pos = useBinary ? bs.readBinary(buf, start + 2, limit) : bs.readAscii(buf, start + 4, limit);
+		} else {
+			pos = bs.tryRead(buf, start + (useBinary ? 2 : 4), limit, useBinary);
+			if (pos < 0) {
+				result.addError(0, start + (useBinary ? 2 : 4), pos == -1 ? ParseError.Reason.INSUFFICIENT_DATA
+					: ParseError.Reason.INVALID_BITMAP, null);
+				return null;
 			}
-			//Check for secondary bitmap and parse if necessary
-			if (bs.get(0)) {
-				if (buf.length < minlength + 8) {
-					throw new ParseException("Insufficient length for secondary bitmap", minlength);
-				}
-				for (int i = isoHeaderLength + 10; i < isoHeaderLength + 18; i++) {
-					int bit = 128;
-					for (int b = 0; b < 8; b++) {
-						bs.set(pos++, (buf[i] & bit) != 0);
-						bit >>= 1;
-					}
-				}
-				pos = minlength + 8;
-			} else {
-				pos = minlength;
+		}
+		//The message is only taken (or overwritten) once it's known that there's something to parse
+		final IsoMessage m = into == null ? obtain() : into;
+		boolean ok = false;
+		try {
+			if (isoHeaderLength > 0) {
+				m.setIsoHeader(new String(buf, offset, isoHeaderLength));
 			}
-		} else {
-			//ASCII parsing
-			try {
-				for (int i = isoHeaderLength + 4; i < isoHeaderLength + 20; i++) {
-					if (buf[i] >= '0' && buf[i] <= '9') {
-						bs.set(pos++, ((buf[i] - 48) & 8) > 0);
-						bs.set(pos++, ((buf[i] - 48) & 4) > 0);
-						bs.set(pos++, ((buf[i] - 48) & 2) > 0);
-						bs.set(pos++, ((buf[i] - 48) & 1) > 0);
-					} else if (buf[i] >= 'A' && buf[i] <= 'F') {
-						bs.set(pos++, ((buf[i] - 55) & 8) > 0);
-						bs.set(pos++, ((buf[i] - 55) & 4) > 0);
-						bs.set(pos++, ((buf[i] - 55) & 2) > 0);
-						bs.set(pos++, ((buf[i] - 5) & 1) > 0);
-					} else if (buf[i] >= 'a' && buf[i] <= 'f') {
-						bs.set(pos++, ((buf[i] - 87) & 8) > 0);
-						bs.set(pos++, ((buf[i] - 87) & 4) > 0);
-						bs.set(pos++, ((buf[i] - 87) & 2) > 0);
-						bs.set(pos++, ((buf[i] - 87) & 1) > 0);
+			m.setCharacterEncoding(encoding, codec);
+			m.setType(type);
+			if (fields != null) {
+				//Nothing after the last requested field will be read
+				bs.clearAfter(fields.lastField());
+			}
+			//First we check if the message contains fields not specified in the parsing template
+			if (!plan.allows(bs.getPrimary(), bs.getSecondary())) {
+				for (int i = bs.nextField(1); i > 0; i = bs.nextField(i)) {
+					if (plan.get(i) == null) {
+						if (result != null) {
+							result.addError(i, pos, ParseError.Reason.UNKNOWN_FIELD, null);
+						} else {
+							log.warn("ISO8583 MessageFactory cannot parse field {}: unspecified in parsing guide", i);
+						}
 					}
 				}
-				//Check for secondary bitmap and parse it if necessary
-				if (bs.get(0)) {
-					if (buf.length < minlength + 16) {
-						throw new ParseException("Insufficient length for secondary bitmap", minlength);
+				ok = true;
+				return m;
+			}
+			//Now we parse each field
+			final int last = plan.getLastField();
+			if (lazy) {
+				//Only record where each field is; values are decoded when they're requested
+				m.setRawData(buf, useBinary, plan, this);
+			}
+			for (int i = bs.nextField(1); i > 0; i = bs.nextField(i)) {
+				final FieldParseInfo fpi = plan.get(i);
+				if (ignoreLast && pos >= limit && i == last) {
+					log.warn("Field {} is not really in the message even though it's in the bitmap", i);
+				} else if (fields != null && !fields.get(i)) {
+					//Only the length header (if any) is read to get to the next field
+					pos = useBinary ? fpi.skipBinary(buf, pos, limit) : fpi.skip(buf, pos, limit);
+				} else if (result != null) {
+					final int end = fpi.findEnd(buf, pos, limit, useBinary);
+					if (end < 0) {
+						//Without the length of this field, the next ones can't be found
+						result.addError(i, pos, end == FieldParseInfo.INSUFFICIENT_DATA ? ParseError.Reason.INSUFFICIENT_DATA
+							: ParseError.Reason.INVALID_LENGTH, null);
+						break;
 					}
-					for (int i = isoHeaderLength + 20; i < isoHeaderLength + 36; i++) {
-						if (buf[i] >= '0' && buf[i] <= '9') {
-							bs.set(pos++, ((buf[i] - 48) & 8) > 0);
-							bs.set(pos++, ((buf[i] - 48) & 4) > 0);
-							bs.set(pos++, ((buf[i] - 48) & 2) > 0);
-							bs.set(pos++, ((buf[i] - 48) & 1) > 0);
-						} else if (buf[i] >= 'A' && buf[i] <= 'F') {
-							bs.set(pos++, ((buf[i] - 55) & 8) > 0);
-							bs.set(pos++, ((buf[i] - 55) & 4) > 0);
-							bs.set(pos++, ((buf[i] - 55) & 2) > 0);
-							bs.set(pos++, ((buf[i] - 5) & 1) > 0);
-						} else if (buf[i] >= 'a' && buf[i] <= 'f') {
-							bs.set(pos++, ((buf[i] - 87) & 8) > 0);
-							bs.set(pos++, ((buf[i] - 87) & 4) > 0);
-							bs.set(pos++, ((buf[i] - 87) & 2) > 0);
-							bs.set(pos++, ((buf[i] - 87) & 1) > 0);
+					if (!fpi.checkValue(buf, pos, end, useBinary)) {
+						result.addError(i, pos, ParseError.Reason.INVALID_VALUE, null);
+					} else if (lazy) {
+						m.setRawField(i, pos, end);
+					} else {
+						//The value was already checked, so only a custom field decoder can fail here
+						try {
+							m.setField(i, useBinary ? fpi.parseBinary(buf, pos, end, getCustomField(i))
+								: fpi.parse(buf, pos, end, getCustomField(i)));
+							keepWireData(m, i, buf, pos, end);
+						} catch (ParseException ex) {
+							result.addError(i, pos, ParseError.Reason.INVALID_VALUE, ex);
+						} catch (UnsupportedEncodingException ex) {
+							result.addError(i, pos, ParseError.Reason.INVALID_VALUE, ex);
+						} catch (RuntimeException ex) {
+							result.addError(i, pos, ParseError.Reason.INVALID_VALUE, ex);
 						}
 					}
-					pos = 16 + minlength;
+					pos = end;
 				} else {
-					pos = minlength;
+					//The parser for each field knows exactly how many bytes it takes, so there's
+					//no need to re-encode the value to find where the next field begins
+					final int end = useBinary ? fpi.skipBinary(buf, pos, limit) : fpi.skip(buf, pos, limit);
+					if (lazy) {
+						m.setRawField(i, pos, end);
+					} else if (useBinary) {
+						m.setField(i, fpi.parseBinary(buf, pos, end, getCustomField(i)));
+						keepWireData(m, i, buf, pos, end);
+					} else {
+						m.setField(i, fpi.parse(buf, pos, end, getCustomField(i)));
+						keepWireData(m, i, buf, pos, end);
+					}
+					pos = end;
+				}
+			}
+			m.setBinary(useBinary);
+			ok = true;
+			return m;
+		} finally {
+			if (!ok) {
+				//Don't leave a half-parsed message around
+				if (into == null) {
+					release(m);
+				} else {
+					m.reset();
 				}
-			} catch (NumberFormatException ex) {
-				ParseException _e = new ParseException("Invalid ISO8583 bitmap", pos);
-				_e.initCause(ex);
-				throw _e;
 			}
 		}
-		//Parse each field
-		Map<Integer, FieldParseInfo> parseGuide = parseMap.get(type);
-		List<Integer> index = parseOrder.get(type);
-		if (index == null) {
-			log.error(String.format("ISO8583 MessageFactory has no parsing guide for message type %04x [%s]",
-				type, new String(buf)));
-			return null;
+	}
+
+	private static CharCodec resolveCodec(String encoding) {
+		return encoding == null ? CharCodec.getDefault() : CharCodec.forName(encoding);
+	}
+
+	/** Encodes the values of the template that can't change (strings and numbers) into a single
+	 * array, and makes a copy of each value that references its bytes in it, so that they're copied
+	 * instead of formatted when a message created from the template is written. The values of
+	 * the template itself are not modified. */
+	private EncodedTemplate precompile(IsoMessage templ) {
+		final EncodedTemplate et = new EncodedTemplate();
+		final IsoValue<?>[] vals = new IsoValue<?>[129];
+		int len = 0;
+		for (int i = templ.nextField(1); i > 0; i = templ.nextField(i)) {
+			final IsoValue<?> v = templ.getField(i);
+			if (v.isImmutable()) {
+				//Formatted like it will be in the messages created from the template
+				vals[i] = v.clone();
+				vals[i].setCharacterEncoding(encoding);
+				len += vals[i].getEncodedLength(useBinary);
+			}
 		}
-		//First we check if the message contains fields not specified in the parsing template
-		boolean abandon = false;
-		for (int i = 1; i < bs.length(); i++) {
-			if (bs.get(i) && !index.contains(i+1)) {
-				log.warn("ISO8583 MessageFactory cannot parse field {}: unspecified in parsing guide", i+1);
-				abandon = true;
+		final byte[] buf = new byte[len];
+		int pos = 0;
+		for (int i = templ.nextField(1); i > 0; i = templ.nextField(i)) {
+			if (vals[i] != null) {
+				final int end = vals[i].write(buf, pos, useBinary);
+				et.source[i] = templ.getField(i);
+				et.encoded[i] = et.source[i].clone();
+				et.encoded[i].setWireData(buf, pos, end, useBinary, codec);
+				pos = end;
 			}
 		}
-		if (abandon) {
-			return m;
+		return et;
+	}
+
+	/** The values of a template that were pre-encoded, along with the template values they
+	 * were copied from. */
+	private static final class EncodedTemplate {
+		final IsoValue<?>[] source = new IsoValue<?>[129];
+		final IsoValue<?>[] encoded = new IsoValue<?>[129];
+	}
+
+	/** Makes the value of the field reference its bytes in the buffer, if the factory is set to do so. */
+	void keepWireData(IsoMessage m, int field, byte[] buf, int start, int end) {
+		if (keepWire) {
+			final IsoValue<?> v = m.getField(field);
+			if (v != null) {
+				v.setWireData(buf, start, end, useBinary, codec);
+			}
 		}
-		//Now we parse each field
-		if (useBinary) {
-			for (Integer i : index) {
-				FieldParseInfo fpi = parseGuide.get(i);
-				if (bs.get(i - 1)) {
-					if (ignoreLast && pos >= buf.length && i == index.get(index.size() -1)) {
-						log.warn("Field {} is not really in the message even though it's in the bitmap", i);
-						bs.clear(i - 1);
-					} else {
-						IsoValue<?> val = fpi.parseBinary(buf, pos, getCustomField(i));
-						m.setField(i, val);
-						if (val != null) {
-							if (val.getType() == IsoType.NUMERIC || val.getType() == IsoType.DATE10
-									|| val.getType() == IsoType.DATE4 || val.getType() == IsoType.DATE_EXP
-									|| val.getType() == IsoType.AMOUNT || val.getType() == IsoType.TIME) {
-								pos += (val.getLength() / 2) + (val.getLength() % 2);
-							} else {
-								pos += val.getLength();
-							}
-							if (val.getType() == IsoType.LLVAR || val.getType() == IsoType.LLBIN) {
-								pos++;
-							} else if (val.getType() == IsoType.LLLVAR || val.getType() == IsoType.LLLBIN) {
-								pos += 2;
-							}
+	}
+
+	/** Parses a batch of messages using all the available processors. A thread pool is created
+	 * for the batch and shut down afterwards; to parse several batches, use
+	 * {@link #parseAll(List, int, ExecutorService)} with a pool that is kept around.
+	 * @param frames The messages to parse, each one without its length header.
+	 * @param isoHeaderLength The length of the ISO header of the messages. */
+	public ParseBatch parseAll(List<byte[]> frames, int isoHeaderLength) throws InterruptedException {
+		final int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), frames.size()));
+		final ExecutorService exec = Executors.newFixedThreadPool(threads);
+		try {
+			return parseAll(frames, isoHeaderLength, exec);
+		} finally {
+			exec.shutdown();
+		}
+	}
+
+	/** Parses a batch of messages, splitting the work among the threads of the specified executor.
+	 * A frame that can't be parsed does not stop the rest of the batch; its exception is kept in the
+	 * result instead. The messages in the result are in the same order as the frames.
+	 * The factory should be frozen before parsing from several threads.
+	 * @param frames The messages to parse, each one without its length header.
+	 * @param isoHeaderLength The length of the ISO header of the messages.
+	 * @param exec The executor that will run the parsing tasks. */
+	public ParseBatch parseAll(final List<byte[]> frames, final int isoHeaderLength, ExecutorService exec)
+	throws InterruptedException {
+		final int size = frames.size();
+		final ParseBatch batch = new ParseBatch(size);
+		//A few contiguous slices per processor, so that uneven slices balance out
+		final int slices = Math.max(1, Math.min(size, Runtime.getRuntime().availableProcessors() * 4));
+		final List<Future<?>> tasks = new ArrayList<Future<?>>(slices);
+		for (int k = 0; k < slices; k++) {
+			final int from = (int)((long)size * k / slices);
+			final int to = (int)((long)size * (k + 1) / slices);
+			tasks.add(exec.submit(new Runnable() {
+				public void run() {
+					for (int i = from; i < to; i++) {
+						try {
+							batch.set(i, parseMessage(frames.get(i), isoHeaderLength));
+						} catch (ParseException ex) {
+							batch.fail(i, ex);
+						} catch (UnsupportedEncodingException ex) {
+							batch.fail(i, ex);
+						} catch (RuntimeException ex) {
+							batch.fail(i, ex);
 						}
 					}
 				}
+			}));
+		}
+		try {
+			for (Future<?> f : tasks) {
+				f.get();
 			}
-		} else {
-			for (Integer i : index) {
-				FieldParseInfo fpi = parseGuide.get(i);
-				if (bs.get(i - 1)) {
-					if (ignoreLast && pos >= buf.length && i == index.get(index.size() -1)) {
-						log.warn("Field {} is not really in the message even though it's in the bitmap", i);
-						bs.clear(i - 1);
-					} else {
-						IsoValue<?> val = fpi.parse(buf, pos, getCustomField(i));
-						m.setField(i, val);
-						//To get the correct next position, we need to get the number of bytes, not chars
-						pos += val.toString().getBytes(fpi.getCharacterEncoding()).length;
-						if (val.getType() == IsoType.LLVAR || val.getType() == IsoType.LLBIN) {
-							pos += 2;
-						} else if (val.getType() == IsoType.LLLVAR || val.getType() == IsoType.LLLBIN) {
-							pos += 3;
-						}
-					}
-				}
+		} catch (ExecutionException ex) {
+			//Only an Error can get here
+			throw new IllegalStateException("Parsing task failed", ex.getCause());
+		} catch (InterruptedException ex) {
+			for (Future<?> f : tasks) {
+				f.cancel(true);
 			}
+			throw ex;
 		}
-		m.setBinary(useBinary);
-		return m;
+		return batch;
 	}
 
 	/** Sets whether the factory should set the current date on newly created messages,
@@ -469,12 +782,34 @@ public class MessageFactory {
 		return typeTemplates.get(type);
 	}
 
+	/** Returns the compiled parsing guide for the specified message type, or null if there's no
+	 * parsing guide for it. */
+	public ParsePlan getParsePlan(int type) {
+		return parsePlans.get(type);
+	}
+
 	/** Invoke this method in case you want to freeze the configuration, making message and parsing
-	 * templates, as well as iso headers and custom fields, immutable. */
+	 * templates, as well as iso headers and custom fields, immutable. The parsing guides are
+	 * compiled again, to pick up any changes made to their maps after they were set.
+	 * A frozen factory can be shared by several threads, as long as the settings (encoding,
+	 * binary mode, etc.) are no longer changed.
+	 * <P>
+	 * The values of the templates that can't change (strings and numbers without a CustomField)
+	 * are encoded here, so that messages created from the templates copy their bytes instead of
+	 * formatting them each time they're written; fields that are set on the messages afterwards
+	 * are encoded as usual, and so are fields that are set on the templates afterwards. */
 	public void freeze() {
+		for (IsoMessage templ : typeTemplates.values()) {
+			encodedTemplates.put(templ.getType(), precompile(templ));
+		}
 		typeTemplates = Collections.unmodifiableMap(typeTemplates);
+		encodedTemplates = Collections.unmodifiableMap(encodedTemplates);
+		//Recompile the guides in case any of them was modified after being set
+		for (Map.Entry<Integer, Map<Integer, FieldParseInfo>> e : parseMap.entrySet()) {
+			parsePlans.put(e.getKey(), new ParsePlan(e.getValue()));
+		}
 		parseMap = Collections.unmodifiableMap(parseMap);
-		parseOrder = Collections.unmodifiableMap(parseOrder);
+		parsePlans = Collections.unmodifiableMap(parsePlans);
 		isoHeaders = Collections.unmodifiableMap(isoHeaders);
 		customFields = Collections.unmodifiableMap(customFields);
 	}
@@ -483,14 +818,17 @@ public class MessageFactory {
 	 * message.
 	 * @param type The message type.
 	 * @param map A map of FieldParseInfo instances, each of which define what type and length
-	 * of field to expect. The keys will be the field numbers. */
+	 * of field to expect. The keys will be the field numbers. The map is compiled into a
+	 * {@link ParsePlan} which is what's used to parse the messages. */
 	public void setParseMap(int type, Map<Integer, FieldParseInfo> map) {
+		ParsePlan plan = new ParsePlan(map);
 		parseMap.put(type, map);
-		ArrayList<Integer> index = new ArrayList<Integer>();
-		index.addAll(map.keySet());
-		Collections.sort(index);
-		log.trace(String.format("ISO8583 MessageFactory adding parse map for type %04x with fields %s", type, index));
-		parseOrder.put(type, index);
+		if (log.isTraceEnabled()) {
+			ArrayList<Integer> index = new ArrayList<Integer>(map.keySet());
+			Collections.sort(index);
+			log.trace(String.format("ISO8583 MessageFactory adding parse map for type %04x with fields %s", type, index));
+		}
+		parsePlans.put(type, plan);
 	}
 
 }
@@ -0,0 +1,217 @@
+/*
+j8583 A Java implementation of the ISO8583 protocol
+Copyright (C) 2011 Enrique Zamudio Lopez
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+*/
+package com.solab.iso8583;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+
+import com.solab.iso8583.parse.FieldParseInfo;
+import com.solab.iso8583.parse.ParsePlan;
+import com.solab.iso8583.util.Bitmap;
+
+/** Reads the message type, the bitmap and the location of a few fields of a message, without
+ * creating an IsoMessage or decoding any values. This is meant for dispatching messages as soon
+ * as they're read, leaving the full parse to whoever gets the message.
+ * <P>
+ * An instance can be reused for any number of messages; peeking at a message doesn't allocate
+ * any objects (except when reading from a direct ByteBuffer larger than any previous one,
+ * which has to be copied). Instances are not thread-safe, each thread should have its own.
+ * The positions of the fields are found using the parsing guides of a MessageFactory.
+ *
+ * @author Enrique Zamudio
+ */
+public final class MessagePeek {
+
+	private final Bitmap wanted;
+	private final int lastWanted;
+	private final Bitmap bitmap = new Bitmap();
+	/** Start and end of each field's data, relative to the start of the message. */
+	private final int[] positions = new int[258];
+	private byte[] scratch;
+	private int type = -1;
+	private ParsePlan plan;
+
+	/** Creates a new instance that will locate the specified fields.
+	 * @param fields The fields whose location will be recorded. They are copied, further changes
+	 * to the Bitmap won't have any effect. */
+	public MessagePeek(Bitmap fields) {
+		wanted = new Bitmap();
+		wanted.set(fields.getPrimary(), fields.getSecondary());
+		lastWanted = wanted.lastField();
+	}
+
+	/** Reads the message type and bitmap of the message contained in the specified region of
+	 * the buffer, and locates the requested fields.
+	 * @param mf The message factory whose parsing guides are used to locate the fields.
+	 * @param buf The buffer containing the message, without the length header.
+	 * @param offset The position in the buffer where the message (or its ISO header) begins.
+	 * @param length The length of the message, including the ISO header.
+	 * @param isoHeaderLength The length of the ISO header.
+	 * @return true if all the requested fields could be located (although some of them may not
+	 * be present in the message), false if the factory has no parsing guide for the message type
+	 * or a field in the message before the last requested one is not in the guide; in that case
+	 * only the message type and the bitmap are available, and no field is reported as located.
+	 * @throws ParseException if the message is shorter than its bitmap says (except for the
+	 * last field, if the factory is set to ignore it when it's missing); no field is reported
+	 * as located either. */
+	public boolean peek(MessageFactory mf, byte[] buf, int offset, int length, int isoHeaderLength)
+	throws ParseException {
+		if (offset < 0 || length < 0 || offset + length > buf.length) {
+			throw new IndexOutOfBoundsException(String.format("Invalid region offset %d length %d for buffer of length %d",
+				offset, length, buf.length));
+		}
+		final boolean binary = mf.getUseBinaryMessages();
+		final int limit = offset + length;
+		final int start = offset + isoHeaderLength;
+		clearPositions();
+		type = -1;
+		bitmap.clear();
+		if (length < isoHeaderLength + (binary ? 10 : 20)) {
+			throw new ParseException("Insufficient buffer length, needs to be at least "
+				+ (isoHeaderLength + (binary ? 10 : 20)), 0);
+		}
+		int t;
+		if (binary) {
+			t = ((buf[start] & 0xff) << 8) | (buf[start + 1] & 0xff);
+		} else {
+			t = ((buf[start] - 48) << 12)
+			| ((buf[start + 1] - 48) << 8)
+			| ((buf[start + 2] - 48) << 4)
+			| (buf[start + 3] - 48);
+		}
+		type = t;
+		int pos = binary ? bitmap.readBinary(buf, start + 2, limit) : bitmap.readAscii(buf, start + 4, limit);
+		plan = mf.getParsePlan(t);
+		if (plan == null) {
+			return false;
+		}
+		boolean ok = false;
+		try {
+			final boolean ignoreLast = mf.getIgnoreLastMissingField();
+			final int last = plan.getLastField();
+			for (int i = bitmap.nextField(1); i > 0 && i <= lastWanted; i = bitmap.nextField(i)) {
+				final FieldParseInfo fpi = plan.get(i);
+				if (fpi == null) {
+					return false;
+				}
+				if (ignoreLast && pos >= limit && i == last) {
+					//The field is in the bitmap but not in the message, the same as when parsing
+					break;
+				}
+				final int end;
+				try {
+					end = binary ? fpi.skipBinary(buf, pos, limit) : fpi.skip(buf, pos, limit);
+				} catch (UnsupportedEncodingException ex) {
+					ParseException _e = new ParseException(String.format("Cannot locate field %d", i), pos);
+					_e.initCause(ex);
+					throw _e;
+				}
+				if (wanted.get(i)) {
+					positions[i * 2] = pos + getHeaderLength(fpi.getType(), binary) - offset;
+					positions[i * 2 + 1] = end - offset;
+				}
+				pos = end;
+			}
+			ok = true;
+		} finally {
+			if (!ok) {
+				//The fields located before the error are not reported
+				clearPositions();
+			}
+		}
+		return true;
+	}
+
+	/** Marks all the requested fields as not located. */
+	private void clearPositions() {
+		for (int i = wanted.nextField(0); i > 0; i = wanted.nextField(i)) {
+			positions[i * 2 + 1] = 0;
+		}
+	}
+
+	/** Reads the message type and bitmap of the message contained in the buffer, from its
+	 * position up to its limit, and locates the requested fields. The position of the buffer
+	 * is not modified. A direct buffer is copied into an internal array that is reused for
+	 * subsequent calls. See {@link #peek(MessageFactory, byte[], int, int, int)}. */
+	public boolean peek(MessageFactory mf, ByteBuffer buf, int isoHeaderLength) throws ParseException {
+		if (buf.hasArray()) {
+			return peek(mf, buf.array(), buf.arrayOffset() + buf.position(), buf.remaining(), isoHeaderLength);
+		}
+		final int len = buf.remaining();
+		if (scratch == null || scratch.length < len) {
+			scratch = new byte[len];
+		}
+		buf.duplicate().get(scratch, 0, len);
+		return peek(mf, scratch, 0, len, isoHeaderLength);
+	}
+
+	private static int getHeaderLength(IsoType t, boolean binary) {
+		if (t == IsoType.LLVAR || t == IsoType.LLBIN) {
+			return binary ? 1 : 2;
+		} else if (t == IsoType.LLLVAR || t == IsoType.LLLBIN) {
+			return binary ? 2 : 3;
+		}
+		return 0;
+	}
+
+	/** Returns the parse guide used for the last message, or null if there isn't any. */
+	ParsePlan getParsePlan() {
+		return type == -1 ? null : plan;
+	}
+
+	/** Returns the message type of the last message, or -1 if it couldn't be read. */
+	public int getType() {
+		return type;
+	}
+
+	/** Returns fields 1 to 64 of the bitmap of the last message. */
+	public long getPrimaryBitmap() {
+		return bitmap.getPrimary();
+	}
+
+	/** Returns fields 65 to 128 of the bitmap of the last message. */
+	public long getSecondaryBitmap() {
+		return bitmap.getSecondary();
+	}
+
+	/** Returns true if the last message contains the specified field, according to its bitmap. */
+	public boolean hasField(int field) {
+		return bitmap.get(field);
+	}
+
+	/** Returns true if the specified field was requested and located in the last message. */
+	public boolean isLocated(int field) {
+		return positions[field * 2 + 1] > 0;
+	}
+
+	/** Returns the position where the data of the specified field begins, after its length header
+	 * if it has one, relative to the start of the message (that is, the offset passed to peek, or
+	 * the position of the ByteBuffer). Returns -1 if the field was not located. */
+	public int getOffset(int field) {
+		return isLocated(field) ? positions[field * 2] : -1;
+	}
+
+	/** Returns the length in bytes of the data of the specified field, without its length
+	 * header, or -1 if the field was not located. */
+	public int getLength(int field) {
+		return isLocated(field) ? positions[field * 2 + 1] - positions[field * 2] : -1;
+	}
+
+}
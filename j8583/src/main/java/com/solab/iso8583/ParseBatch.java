@@ -0,0 +1,87 @@
+/*
+j8583 A Java implementation of the ISO8583 protocol
+Copyright (C) 2011 Enrique Zamudio Lopez
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+*/
+package com.solab.iso8583;
+
+import java.util.AbstractList;
+import java.util.List;
+
+/** The result of parsing a batch of messages with {@link MessageFactory#parseAll(List, int)}.
+ * It holds the parsed messages in the same order as the frames they were parsed from, and the
+ * exception thrown by each frame that couldn't be parsed.
+ *
+ * @author Enrique Zamudio
+ */
+public class ParseBatch {
+
+	private final IsoMessage[] messages;
+	private final Exception[] errors;
+	private int failures;
+
+	ParseBatch(int size) {
+		messages = new IsoMessage[size];
+		errors = new Exception[size];
+	}
+
+	void set(int index, IsoMessage m) {
+		messages[index] = m;
+	}
+
+	synchronized void fail(int index, Exception ex) {
+		errors[index] = ex;
+		failures++;
+	}
+
+	/** Returns the number of frames in the batch. */
+	public int size() {
+		return messages.length;
+	}
+
+	/** Returns the message parsed from the frame at the specified index, or null if the frame
+	 * could not be parsed (or the factory has no parsing guide for its type). */
+	public IsoMessage getMessage(int index) {
+		return messages[index];
+	}
+
+	/** Returns the exception thrown while parsing the frame at the specified index, or null
+	 * if it was parsed. */
+	public Exception getError(int index) {
+		return errors[index];
+	}
+
+	/** Returns the number of frames that could not be parsed. */
+	public synchronized int getFailureCount() {
+		return failures;
+	}
+
+	/** Returns an unmodifiable view of the messages, in the same order as the frames; the
+	 * elements for frames that could not be parsed are null. */
+	public List<IsoMessage> getMessages() {
+		return new AbstractList<IsoMessage>() {
+			@Override
+			public IsoMessage get(int index) {
+				return messages[index];
+			}
+			@Override
+			public int size() {
+				return messages.length;
+			}
+		};
+	}
+
+}
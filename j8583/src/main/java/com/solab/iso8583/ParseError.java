@@ -0,0 +1,99 @@
+/*
+j8583 A Java implementation of the ISO8583 protocol
+Copyright (C) 2011 Enrique Zamudio Lopez
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+*/
+package com.solab.iso8583;
+
+/** Describes a problem found by {@link MessageFactory#tryParseMessage(byte[], int, int, int)}.
+ * The description is only formatted when it's requested.
+ *
+ * @author Enrique Zamudio
+ */
+public final class ParseError {
+
+	/** The kinds of errors found while parsing. */
+	public enum Reason {
+		/** The message or field is cut short. */
+		INSUFFICIENT_DATA("Insufficient data"),
+		/** The length header of a variable-length field is invalid. */
+		INVALID_LENGTH("Invalid length header"),
+		/** The value of a field can't be decoded. */
+		INVALID_VALUE("Invalid value"),
+		/** The bitmap has invalid hex digits. */
+		INVALID_BITMAP("Invalid bitmap"),
+		/** The factory has no parsing guide for the message type. */
+		UNKNOWN_TYPE("No parsing guide for message type"),
+		/** The field is in the bitmap but not in the parsing guide. */
+		UNKNOWN_FIELD("Field not in parsing guide");
+
+		private final String text;
+		Reason(String text) {
+			this.text = text;
+		}
+	}
+
+	private final int field;
+	private final int offset;
+	private final Reason reason;
+	private final Throwable cause;
+
+	ParseError(int field, int offset, Reason reason, Throwable cause) {
+		this.field = field;
+		this.offset = offset;
+		this.reason = reason;
+		this.cause = cause;
+	}
+
+	/** Returns the number of the field with the error, or 0 if the error is in the message
+	 * type or bitmap. */
+	public int getField() {
+		return field;
+	}
+
+	/** Returns the position in the buffer where the field (or message) with the error begins. */
+	public int getOffset() {
+		return offset;
+	}
+
+	public Reason getReason() {
+		return reason;
+	}
+
+	/** Returns the exception thrown by the field parser or custom field decoder, if any. */
+	public Throwable getCause() {
+		return cause;
+	}
+
+	/** Returns a description of the error. */
+	public String getDescription() {
+		final StringBuilder sb = new StringBuilder(reason.text);
+		if (field > 0) {
+			sb.append(" in field ").append(field);
+		}
+		sb.append(" at offset ").append(offset);
+		if (cause != null && cause.getMessage() != null) {
+			sb.append(": ").append(cause.getMessage());
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		return getDescription();
+	}
+
+}
@@ -0,0 +1,69 @@
+/*
+j8583 A Java implementation of the ISO8583 protocol
+Copyright (C) 2011 Enrique Zamudio Lopez
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+*/
+package com.solab.iso8583;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** The result of {@link MessageFactory#tryParseMessage(byte[], int, int, int)}: the message,
+ * with the fields that could be parsed, and the errors that were found.
+ *
+ * @author Enrique Zamudio
+ */
+public class ParseResult {
+
+	private IsoMessage message;
+	private List<ParseError> errors;
+
+	ParseResult() {
+	}
+
+	void setMessage(IsoMessage m) {
+		message = m;
+	}
+
+	void addError(int field, int offset, ParseError.Reason reason, Throwable cause) {
+		if (errors == null) {
+			errors = new ArrayList<ParseError>(2);
+		}
+		errors.add(new ParseError(field, offset, reason, cause));
+	}
+
+	/** Returns the parsed message, which can be missing some fields if there were errors; it is
+	 * null if the message type and bitmap could not be read, or if the factory has no parsing
+	 * guide for the message type. */
+	public IsoMessage getMessage() {
+		return message;
+	}
+
+	/** Returns true if the message was parsed without errors. */
+	public boolean isValid() {
+		return errors == null;
+	}
+
+	/** Returns the errors found while parsing, in the order they were found. */
+	public List<ParseError> getErrors() {
+		if (errors == null) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(errors);
+	}
+
+}
@@ -21,6 +21,7 @@ package com.solab.iso8583.parse;
 import java.io.UnsupportedEncodingException;
 import java.text.ParseException;
 
+import com.solab.iso8583.AlphaValue;
 import com.solab.iso8583.CustomField;
 import com.solab.iso8583.IsoType;
 import com.solab.iso8583.IsoValue;
@@ -35,16 +36,35 @@ public abstract class AlphaNumericFieldParseInfo extends FieldParseInfo {
 		super(t, len);
 	}
 
-	public IsoValue<?> parse(byte[] buf, int pos, CustomField<?> custom) throws ParseException, UnsupportedEncodingException {
+	public int skip(byte[] buf, int pos, int limit) throws ParseException, UnsupportedEncodingException {
 		if (pos < 0) {
 			throw new ParseException(String.format("Invalid ALPHA/NUM position %d", pos), pos);
-		} else if (pos+length > buf.length) {
+		} else if (pos+length > limit) {
 			throw new ParseException(String.format("Insufficient data for %s field of length %d, pos %d",
 				type, length, pos), pos);
 		}
-		String _v = new String(buf, pos, length, getCharacterEncoding());
+		return pos + getByteLength(buf, pos, limit, length);
+	}
+
+	public int findEnd(byte[] buf, int pos, int limit, boolean binary) {
+		return binary ? fixedEnd(pos, length, limit) : findTextEnd(buf, pos, limit, length);
+	}
+
+	public IsoValue<?> parse(byte[] buf, int pos, int limit, CustomField<?> custom) throws ParseException, UnsupportedEncodingException {
+		if (pos < 0) {
+			throw new ParseException(String.format("Invalid ALPHA/NUM position %d", pos), pos);
+		} else if (pos+length > limit) {
+			throw new ParseException(String.format("Insufficient data for %s field of length %d, pos %d",
+				type, length, pos), pos);
+		}
+		if (custom == null && type == IsoType.ALPHA && getCharCodec().isSingleByte()) {
+			//The bytes are only decoded if the value is requested
+			return new AlphaValue(buf, pos, length, getCharCodec());
+		}
+		String _v = decodeChars(buf, pos, limit, length);
 		if (_v.length() != length) {
-			_v = new String(buf, pos, buf.length-pos, getCharacterEncoding()).substring(0, length);
+			throw new ParseException(String.format("Insufficient data for %s field of length %d, pos %d",
+				type, length, pos), pos);
 		}
 		if (custom == null) {
 			return new IsoValue<String>(type, _v, length, null);
@@ -21,6 +21,7 @@ package com.solab.iso8583.parse;
 import java.io.UnsupportedEncodingException;
 import java.text.ParseException;
 
+import com.solab.iso8583.AlphaValue;
 import com.solab.iso8583.CustomField;
 import com.solab.iso8583.IsoType;
 import com.solab.iso8583.IsoValue;
@@ -35,21 +36,34 @@ public class AlphaParseInfo extends AlphaNumericFieldParseInfo {
 		super(IsoType.ALPHA, len);
 	}
 
-	public IsoValue<?> parseBinary(byte[] buf, int pos, CustomField<?> custom)
+	public int skipBinary(byte[] buf, int pos, int limit) throws ParseException {
+		if (pos < 0) {
+			throw new ParseException(String.format("Invalid bin ALPHA position %d", pos), pos);
+		} else if (pos+length > limit) {
+			throw new ParseException(String.format("Insufficient data for bin %s field of length %d, pos %d",
+				type, length, pos), pos);
+		}
+		return pos + length;
+	}
+
+	public IsoValue<?> parseBinary(byte[] buf, int pos, int limit, CustomField<?> custom)
 	throws ParseException, UnsupportedEncodingException {
 		if (pos < 0) {
 			throw new ParseException(String.format("Invalid bin ALPHA position %d", pos), pos);
-		} else if (pos+length > buf.length) {
+		} else if (pos+length > limit) {
 			throw new ParseException(String.format("Insufficient data for bin %s field of length %d, pos %d",
 				type, length, pos), pos);
 		}
 		if (custom == null) {
-			return new IsoValue<String>(type, new String(buf, pos, length, getCharacterEncoding()), length, null);
+			if (getCharCodec().isSingleByte()) {
+				return new AlphaValue(buf, pos, length, getCharCodec());
+			}
+			return new IsoValue<String>(type, getCharCodec().decode(buf, pos, length), length, null);
 		} else {
 			@SuppressWarnings({"unchecked", "rawtypes"})
-			IsoValue<?> v = new IsoValue(type, custom.decodeField(new String(buf, pos, length, getCharacterEncoding())), length, custom);
+			IsoValue<?> v = new IsoValue(type, custom.decodeField(getCharCodec().decode(buf, pos, length)), length, custom);
 			if (v.getValue() == null) {
-				return new IsoValue<String>(type, new String(buf, pos, length, getCharacterEncoding()), length, null);
+				return new IsoValue<String>(type, getCharCodec().decode(buf, pos, length), length, null);
 			}
 			return v;
 		}
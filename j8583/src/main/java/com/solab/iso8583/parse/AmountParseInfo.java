@@ -21,9 +21,12 @@ package com.solab.iso8583.parse;
 import java.math.BigDecimal;
 import java.text.ParseException;
 
+import com.solab.iso8583.AmountValue;
 import com.solab.iso8583.CustomField;
 import com.solab.iso8583.IsoType;
 import com.solab.iso8583.IsoValue;
+import com.solab.iso8583.util.Bcd;
+import com.solab.iso8583.util.HexCodec;
 
 /** This class is used to parse AMOUNT fields.
  * 
@@ -36,37 +39,103 @@ public class AmountParseInfo extends FieldParseInfo {
 		super(IsoType.AMOUNT, 12);
 	}
 
+	@Override
+	public int skip(byte[] buf, int pos, int limit) throws ParseException {
+		if (pos < 0) {
+			throw new ParseException(String.format("Invalid AMOUNT position %d", pos), pos);
+		} else if (pos+12 > limit) {
+			throw new ParseException(String.format("Insufficient data for AMOUNT field, pos %d", pos), pos);
+		}
+		return pos + 12;
+	}
+
+	@Override
+	public int skipBinary(byte[] buf, int pos, int limit) throws ParseException {
+		if (pos < 0) {
+			throw new ParseException(String.format("Invalid bin AMOUNT position %d", pos), pos);
+		} else if (pos+6 > limit) {
+			throw new ParseException(String.format("Insufficient data for bin AMOUNT field, pos %d", pos), pos);
+		}
+		return pos + 6;
+	}
+
+	@Override
+	public int findEnd(byte[] buf, int pos, int limit, boolean binary) {
+		return fixedEnd(pos, binary ? 6 : 12, limit);
+	}
+
+	@Override
+	public boolean checkValue(byte[] buf, int pos, int end, boolean binary) {
+		if (!binary && (buf[pos] == '-' || buf[pos] == '+')) {
+			return checkDigits(buf, pos + 1, end, false);
+		}
+		return checkDigits(buf, pos, end, binary);
+	}
+
+	@Override
 	public IsoValue<BigDecimal> parse(byte[] buf, int pos, CustomField<?> custom) throws ParseException {
+		return parse(buf, pos, buf.length, custom);
+	}
+
+	public IsoValue<BigDecimal> parse(byte[] buf, int pos, int limit, CustomField<?> custom) throws ParseException {
+		if (pos < 0) {
+			throw new ParseException(String.format("Invalid AMOUNT position %d", pos), pos);
+		}
+		if (pos+12 > limit) {
+			throw new ParseException(String.format("Insufficient data for AMOUNT field, pos %d", pos), pos);
+		}
+		return new AmountValue(parseMinorUnits(buf, pos, limit));
+	}
+
+	/** Reads the amount at the specified position as a number of minor units (cents),
+	 * without creating a BigDecimal. The amount can begin with a sign instead of its first digit,
+	 * which is how negative amounts are written.
+	 * @throws ParseException if there isn't enough data or the field has something other than
+	 * digits after the optional sign. */
+	public long parseMinorUnits(byte[] buf, int pos, int limit) throws ParseException {
 		if (pos < 0) {
 			throw new ParseException(String.format("Invalid AMOUNT position %d", pos), pos);
 		}
-		if (pos+12 > buf.length) {
+		if (pos+12 > limit) {
 			throw new ParseException(String.format("Insufficient data for AMOUNT field, pos %d", pos), pos);
 		}
-		String c = new String(buf, pos, 12);
-		try {
-			return new IsoValue<BigDecimal>(type, new BigDecimal(c).movePointLeft(2), null);
-		} catch (NumberFormatException ex) {
-			throw new ParseException(String.format("Cannot read amount '%s' pos %d", new String(c), pos), pos);
+		final byte sign = buf[pos];
+		final long cents = sign == '-' || sign == '+' ? decodeLong(buf, pos + 1, 11) : decodeLong(buf, pos, 12);
+		if (cents < 0) {
+			throw new ParseException(String.format("Cannot read amount '%s' pos %d", new String(buf, pos, 12), pos), pos);
 		}
+		return sign == '-' ? -cents : cents;
 	}
 
+	@Override
 	public IsoValue<BigDecimal> parseBinary(byte[] buf, int pos, CustomField<?> custom) throws ParseException {
-		char[] digits = new char[13];
-		digits[10] = '.';
-		int start = 0;
-		for (int i = pos; i < pos + 6; i++) {
-			digits[start++] = (char)(((buf[i] & 0xf0) >> 4) + 48);
-			digits[start++] = (char)((buf[i] & 0x0f) + 48);
-			if (start == 10) {
-				start++;
-			}
+		return parseBinary(buf, pos, buf.length, custom);
+	}
+
+	public IsoValue<BigDecimal> parseBinary(byte[] buf, int pos, int limit, CustomField<?> custom) throws ParseException {
+		if (pos < 0) {
+			throw new ParseException(String.format("Invalid bin AMOUNT position %d", pos), pos);
+		} else if (pos+6 > limit) {
+			throw new ParseException(String.format("Insufficient data for bin AMOUNT field, pos %d", pos), pos);
+		}
+		return new AmountValue(parseBinaryMinorUnits(buf, pos, limit));
+	}
+
+	/** Reads the BCD-encoded amount at the specified position as a number of minor units (cents),
+	 * without creating a BigDecimal.
+	 * @throws ParseException if there isn't enough data or the field has something other than digits. */
+	public long parseBinaryMinorUnits(byte[] buf, int pos, int limit) throws ParseException {
+		if (pos < 0) {
+			throw new ParseException(String.format("Invalid bin AMOUNT position %d", pos), pos);
+		} else if (pos+6 > limit) {
+			throw new ParseException(String.format("Insufficient data for bin AMOUNT field, pos %d", pos), pos);
 		}
-		try {
-			return new IsoValue<BigDecimal>(IsoType.AMOUNT, new BigDecimal(new String(digits)), null);
-		} catch (NumberFormatException ex) {
-			throw new ParseException(String.format("Cannot read amount '%s' pos %d", new String(digits), pos), pos);
+		final long cents = Bcd.decode(buf, pos, 6);
+		if (cents < 0) {
+			throw new ParseException(String.format("Cannot read amount '%s' pos %d",
+				HexCodec.hexEncode(buf, pos, 6), pos), pos);
 		}
+		return cents;
 	}
 
 }
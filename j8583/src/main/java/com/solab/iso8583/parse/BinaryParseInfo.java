@@ -38,12 +38,44 @@ public class BinaryParseInfo extends FieldParseInfo {
 	}
 
 	@Override
-	public IsoValue<?> parse(byte[] buf, int pos, CustomField<?> custom)
+	public int skip(byte[] buf, int pos, int limit) throws ParseException {
+		if (pos < 0) {
+			throw new ParseException(String.format("Invalid BINARY position %d", pos), pos);
+		} else if (pos+(length*2) > limit) {
+			throw new ParseException(String.format("Insufficient data for BINARY field of length %d, pos %d",
+				length, pos), pos);
+		}
+		return pos + (length*2);
+	}
+
+	@Override
+	public int skipBinary(byte[] buf, int pos, int limit) throws ParseException {
+		if (pos < 0) {
+			throw new ParseException(String.format("Invalid bin BINARY position %d", pos), pos);
+		} else if (pos+length > limit) {
+			throw new ParseException(String.format("Insufficient data for bin BINARY field of length %d, pos %d",
+				length, pos), pos);
+		}
+		return pos + length;
+	}
+
+	@Override
+	public int findEnd(byte[] buf, int pos, int limit, boolean binary) {
+		return fixedEnd(pos, binary ? length : length * 2, limit);
+	}
+
+	@Override
+	public boolean checkValue(byte[] buf, int pos, int end, boolean binary) {
+		return binary || checkHex(buf, pos, end);
+	}
+
+	@Override
+	public IsoValue<?> parse(byte[] buf, int pos, int limit, CustomField<?> custom)
 			throws ParseException, UnsupportedEncodingException {
 		if (pos < 0) {
 			throw new ParseException(String.format("Invalid BINARY position %d", pos), pos);
 		}
-		if (pos+(length*2) > buf.length) {
+		if (pos+(length*2) > limit) {
 			throw new ParseException(String.format("Insufficient data for BINARY field of length %d, pos %d",
 				length, pos), pos);
 		}
@@ -52,7 +84,7 @@ public class BinaryParseInfo extends FieldParseInfo {
 			return new IsoValue<byte[]>(type, binval, binval.length, null);
 		} else {
 			@SuppressWarnings({"unchecked", "rawtypes"})
-			IsoValue<?> v = new IsoValue(type, custom.decodeField(new String(buf, pos, length*2, getCharacterEncoding())), length, custom);
+			IsoValue<?> v = new IsoValue(type, custom.decodeField(getCharCodec().decode(buf, pos, length*2)), length, custom);
 			if (v.getValue() == null) {
 				return new IsoValue<byte[]>(type, binval, binval.length, null);
 			}
@@ -61,7 +93,13 @@ public class BinaryParseInfo extends FieldParseInfo {
 	}
 
 	@Override
-	public IsoValue<?> parseBinary(byte[] buf, int pos, CustomField<?> custom) throws ParseException {
+	public IsoValue<?> parseBinary(byte[] buf, int pos, int limit, CustomField<?> custom) throws ParseException {
+		if (pos < 0) {
+			throw new ParseException(String.format("Invalid bin BINARY position %d", pos), pos);
+		} else if (pos+length > limit) {
+			throw new ParseException(String.format("Insufficient data for bin BINARY field of length %d, pos %d",
+				length, pos), pos);
+		}
 		byte[] _v = new byte[length];
 		System.arraycopy(buf, pos, _v, 0, length);
 		if (custom == null) {
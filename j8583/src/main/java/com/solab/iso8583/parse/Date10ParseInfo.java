@@ -25,6 +25,7 @@ import java.util.Date;
 import com.solab.iso8583.CustomField;
 import com.solab.iso8583.IsoType;
 import com.solab.iso8583.IsoValue;
+import com.solab.iso8583.util.DateCodec;
 
 /** This class is used to parse fields of type DATE10.
  * 
@@ -32,64 +33,84 @@ import com.solab.iso8583.IsoValue;
  */
 public class Date10ParseInfo extends FieldParseInfo {
 
-	private static final long FUTURE_TOLERANCE;
-
-	static {
-		FUTURE_TOLERANCE = Long.parseLong(System.getProperty("j8583.future.tolerance", "900000"));
-	}
 	public Date10ParseInfo() {
 		super(IsoType.DATE10, 10);
 	}
 
 	@Override
-	public IsoValue<Date> parse(byte[] buf, int pos, CustomField<?> custom)
+	public int skip(byte[] buf, int pos, int limit) throws ParseException {
+		if (pos < 0) {
+			throw new ParseException(String.format("Invalid DATE10 position %d", pos), pos);
+		} else if (pos+10 > limit) {
+			throw new ParseException(String.format("Insufficient data for DATE10 field, pos %d", pos), pos);
+		}
+		return pos + 10;
+	}
+
+	@Override
+	public int skipBinary(byte[] buf, int pos, int limit) throws ParseException {
+		if (pos < 0) {
+			throw new ParseException(String.format("Invalid bin DATE10 position %d", pos), pos);
+		} else if (pos+5 > limit) {
+			throw new ParseException(String.format("Insufficient data for bin DATE10 field, pos %d", pos), pos);
+		}
+		return pos + 5;
+	}
+
+	@Override
+	public int findEnd(byte[] buf, int pos, int limit, boolean binary) {
+		return fixedEnd(pos, binary ? 5 : 10, limit);
+	}
+
+	@Override
+	public boolean checkValue(byte[] buf, int pos, int end, boolean binary) {
+		return checkDigits(buf, pos, end, binary);
+	}
+
+	@Override
+	public IsoValue<Date> parse(byte[] buf, int pos, CustomField<?> custom) throws ParseException {
+		return parse(buf, pos, buf.length, custom);
+	}
+
+	@Override
+	public IsoValue<Date> parse(byte[] buf, int pos, int limit, CustomField<?> custom)
 			throws ParseException {
 		if (pos < 0) {
 			throw new ParseException(String.format("Invalid DATE10 position %d", pos), pos);
 		}
-		if (pos+10 > buf.length) {
+		if (pos+10 > limit) {
 			throw new ParseException(String.format("Insufficient data for DATE10 field, pos %d", pos), pos);
 		}
-		//A SimpleDateFormat in the case of dates won't help because of the missing data
-		//we have to use the current date for reference and change what comes in the buffer
-		Calendar cal = Calendar.getInstance();
-		//Set the month in the date
-		cal.set(Calendar.MONTH, ((buf[pos] - 48) * 10) + buf[pos + 1] - 49);
-		cal.set(Calendar.DATE, ((buf[pos + 2] - 48) * 10) + buf[pos + 3] - 48);
-		cal.set(Calendar.HOUR_OF_DAY, ((buf[pos + 4] - 48) * 10) + buf[pos + 5] - 48);
-		cal.set(Calendar.MINUTE, ((buf[pos + 6] - 48) * 10) + buf[pos + 7] - 48);
-		cal.set(Calendar.SECOND, ((buf[pos + 8] - 48) * 10) + buf[pos + 9] - 48);
-		cal.set(Calendar.MILLISECOND,0);
-		adjustWithFutureTolerance(cal);
-		return new IsoValue<Date>(type, cal.getTime(), null);
+		//The year is taken from the current date
+		return new IsoValue<Date>(type, new Date(DateCodec.date10(DateCodec.ascii(buf, pos),
+			DateCodec.ascii(buf, pos + 2), DateCodec.ascii(buf, pos + 4),
+			DateCodec.ascii(buf, pos + 6), DateCodec.ascii(buf, pos + 8))), null);
 	}
 
 	@Override
 	public IsoValue<Date> parseBinary(byte[] buf, int pos, CustomField<?> custom) throws ParseException {
-		int[] tens = new int[5];
-		int start = 0;
-		for (int i = pos; i < pos + tens.length; i++) {
-			tens[start++] = (((buf[i] & 0xf0) >> 4) * 10) + (buf[i] & 0x0f);
+		return parseBinary(buf, pos, buf.length, custom);
+	}
+
+	@Override
+	public IsoValue<Date> parseBinary(byte[] buf, int pos, int limit, CustomField<?> custom) throws ParseException {
+		if (pos < 0) {
+			throw new ParseException(String.format("Invalid bin DATE10 position %d", pos), pos);
+		} else if (pos+5 > limit) {
+			throw new ParseException(String.format("Insufficient data for bin DATE10 field, pos %d", pos), pos);
 		}
-		Calendar cal = Calendar.getInstance();
-		//A SimpleDateFormat in the case of dates won't help because of the missing data
-		//we have to use the current date for reference and change what comes in the buffer
-		//Set the month in the date
-		cal.set(Calendar.MONTH, tens[0] - 1);
-		cal.set(Calendar.DATE, tens[1]);
-		cal.set(Calendar.HOUR_OF_DAY, tens[2]);
-		cal.set(Calendar.MINUTE, tens[3]);
-		cal.set(Calendar.SECOND, tens[4]);
-		cal.set(Calendar.MILLISECOND,0);
-		adjustWithFutureTolerance(cal);
-		return new IsoValue<Date>(type, cal.getTime(), null);
+		return new IsoValue<Date>(type, new Date(DateCodec.date10(DateCodec.bcd(buf, pos),
+			DateCodec.bcd(buf, pos + 1), DateCodec.bcd(buf, pos + 2),
+			DateCodec.bcd(buf, pos + 3), DateCodec.bcd(buf, pos + 4))), null);
 	}
 
+	/** Moves the date to the previous year if it's too far into the future.
+	 * See {@link DateCodec#getFutureTolerance()}. */
 	public static void adjustWithFutureTolerance(Calendar cal) {
 		//We need to handle a small tolerance into the future (a couple of minutes)
 		long now = System.currentTimeMillis();
 		long then = cal.getTimeInMillis();
-		if (then > now && then-now > FUTURE_TOLERANCE) {
+		if (then > now && then-now > DateCodec.getFutureTolerance()) {
 			cal.add(Calendar.YEAR, -1);
 		}
 	}
@@ -19,12 +19,12 @@ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
 package com.solab.iso8583.parse;
 
 import java.text.ParseException;
-import java.util.Calendar;
 import java.util.Date;
 
 import com.solab.iso8583.CustomField;
 import com.solab.iso8583.IsoType;
 import com.solab.iso8583.IsoValue;
+import com.solab.iso8583.util.DateCodec;
 
 /** This class is used to parse fields of type DATE_EXP.
  * 
@@ -36,42 +36,66 @@ public class DateExpParseInfo extends FieldParseInfo {
 		super(IsoType.DATE_EXP, 4);
 	}
 
+	@Override
+	public int skip(byte[] buf, int pos, int limit) throws ParseException {
+		if (pos < 0) {
+			throw new ParseException(String.format("Invalid DATE_EXP position %d", pos), pos);
+		} else if (pos+4 > limit) {
+			throw new ParseException(String.format("Insufficient data for DATE_EXP field, pos %d", pos), pos);
+		}
+		return pos + 4;
+	}
+
+	@Override
+	public int skipBinary(byte[] buf, int pos, int limit) throws ParseException {
+		if (pos < 0) {
+			throw new ParseException(String.format("Invalid bin DATE_EXP position %d", pos), pos);
+		} else if (pos+2 > limit) {
+			throw new ParseException(String.format("Insufficient data for bin DATE_EXP field, pos %d", pos), pos);
+		}
+		return pos + 2;
+	}
+
+	@Override
+	public int findEnd(byte[] buf, int pos, int limit, boolean binary) {
+		return fixedEnd(pos, binary ? 2 : 4, limit);
+	}
+
+	@Override
+	public boolean checkValue(byte[] buf, int pos, int end, boolean binary) {
+		return checkDigits(buf, pos, end, binary);
+	}
+
 	@Override
 	public IsoValue<Date> parse(byte[] buf, int pos, CustomField<?> custom) throws ParseException {
+		return parse(buf, pos, buf.length, custom);
+	}
+
+	@Override
+	public IsoValue<Date> parse(byte[] buf, int pos, int limit, CustomField<?> custom) throws ParseException {
 		if (pos < 0) {
 			throw new ParseException(String.format("Invalid DATE_EXP position %d", pos), pos);
 		}
-		if (pos+4 > buf.length) {
+		if (pos+4 > limit) {
 			throw new ParseException(String.format("Insufficient data for DATE_EXP field, pos %d", pos), pos);
 		}
-		Calendar cal = Calendar.getInstance();
-		cal.set(Calendar.HOUR, 0);
-		cal.set(Calendar.MINUTE, 0);
-		cal.set(Calendar.SECOND, 0);
-		cal.set(Calendar.DATE, 1);
-		//Set the month in the date
-		cal.set(Calendar.YEAR, cal.get(Calendar.YEAR) - (cal.get(Calendar.YEAR) % 100)
-				+ ((buf[pos] - 48) * 10) + buf[pos + 1] - 48);
-		cal.set(Calendar.MONTH, ((buf[pos + 2] - 48) * 10) + buf[pos + 3] - 49);
-		return new IsoValue<Date>(type, cal.getTime(), null);
+		return new IsoValue<Date>(type, new Date(DateCodec.dateExp(DateCodec.ascii(buf, pos),
+			DateCodec.ascii(buf, pos + 2))), null);
 	}
 
 	@Override
 	public IsoValue<Date> parseBinary(byte[] buf, int pos, CustomField<?> custom) throws ParseException {
-		int[] tens = new int[2];
-		int start = 0;
-		for (int i = pos; i < pos + tens.length; i++) {
-			tens[start++] = (((buf[i] & 0xf0) >> 4) * 10) + (buf[i] & 0x0f);
+		return parseBinary(buf, pos, buf.length, custom);
+	}
+
+	@Override
+	public IsoValue<Date> parseBinary(byte[] buf, int pos, int limit, CustomField<?> custom) throws ParseException {
+		if (pos < 0) {
+			throw new ParseException(String.format("Invalid bin DATE_EXP position %d", pos), pos);
+		} else if (pos+2 > limit) {
+			throw new ParseException(String.format("Insufficient data for bin DATE_EXP field, pos %d", pos), pos);
 		}
-		Calendar cal = Calendar.getInstance();
-		cal.set(Calendar.HOUR, 0);
-		cal.set(Calendar.MINUTE, 0);
-		cal.set(Calendar.SECOND, 0);
-		cal.set(Calendar.DATE, 1);
-		//Set the month in the date
-		cal.set(Calendar.YEAR, cal.get(Calendar.YEAR)
-				- (cal.get(Calendar.YEAR) % 100) + tens[0]);
-		cal.set(Calendar.MONTH, tens[1] - 1);
-		return new IsoValue<Date>(type, cal.getTime(), null);
+		return new IsoValue<Date>(type, new Date(DateCodec.dateExp(DateCodec.bcd(buf, pos),
+			DateCodec.bcd(buf, pos + 1))), null);
 	}
 }
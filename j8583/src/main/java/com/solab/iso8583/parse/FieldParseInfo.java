@@ -24,16 +24,29 @@ import java.text.ParseException;
 import com.solab.iso8583.CustomField;
 import com.solab.iso8583.IsoType;
 import com.solab.iso8583.IsoValue;
+import com.solab.iso8583.util.Bcd;
+import com.solab.iso8583.util.CharCodec;
 
 /** This class is used to parse a field from a message buffer. There are concrete subclasses for each IsoType.
+ * <P>
+ * Instances don't keep any state from one parse to the next; the values read from a field
+ * (such as the length header of a variable-length field) are kept in local variables. Once
+ * configured, the same instance can be used to parse messages from several threads at once.
  * 
  * @author Enrique Zamudio
  */
 public abstract class FieldParseInfo {
 
-	protected IsoType type;
-	protected int length;
+	/** Returned by {@link #findEnd(byte[], int, int, boolean)} when the field is cut short. */
+	public static final int INSUFFICIENT_DATA = -1;
+	/** Returned by {@link #findEnd(byte[], int, int, boolean)} when the length header is invalid. */
+	public static final int INVALID_LENGTH = -2;
+
+	protected final IsoType type;
+	protected final int length;
 	private String encoding = System.getProperty("file.encoding");
+	/** The encoding, resolved when it's set. */
+	private CharCodec codec = CharCodec.forName(encoding);
 
 	/** Creates a new instance that parses a value of the specified type, with the specified length.
 	 * The length is only useful for ALPHA and NUMERIC types.
@@ -47,7 +60,11 @@ public abstract class FieldParseInfo {
 		length = len;
 	}
 
+	/** Sets the character encoding used to decode the field. This is part of the configuration,
+	 * it must not be changed while messages are being parsed.
+	 * @throws IllegalArgumentException if the encoding is not supported. */
 	public void setCharacterEncoding(String value) {
+		codec = CharCodec.forName(value);
 		encoding = value;
 	}
 	public String getCharacterEncoding() {
@@ -66,14 +83,154 @@ public abstract class FieldParseInfo {
 
 	/** Parses the character data from the buffer and returns the
 	 * IsoValue with the correct data type in it. */
-	public abstract IsoValue<?> parse(byte[] buf, int pos, CustomField<?> custom)
+	public IsoValue<?> parse(byte[] buf, int pos, CustomField<?> custom)
+	throws ParseException, UnsupportedEncodingException {
+		return parse(buf, pos, buf.length, custom);
+	}
+
+	/** Parses the character data from the buffer and returns the
+	 * IsoValue with the correct data type in it, without reading any data at or after
+	 * the specified limit. This allows a message to be parsed in place, inside a larger buffer.
+	 * @param buf The buffer containing the message.
+	 * @param pos The position in the buffer where the field begins.
+	 * @param limit The position in the buffer where the message ends (exclusive). */
+	public abstract IsoValue<?> parse(byte[] buf, int pos, int limit, CustomField<?> custom)
 	throws ParseException, UnsupportedEncodingException;
 
 	/** Parses binary data from the buffer, creating and returning an IsoValue of the configured
 	 * type and length. */
-	public abstract IsoValue<?> parseBinary(byte[] buf, int pos, CustomField<?> custom)
+	public IsoValue<?> parseBinary(byte[] buf, int pos, CustomField<?> custom)
+	throws ParseException, UnsupportedEncodingException {
+		return parseBinary(buf, pos, buf.length, custom);
+	}
+
+	/** Parses binary data from the buffer, creating and returning an IsoValue of the configured
+	 * type and length, without reading any data at or after the specified limit.
+	 * @param buf The buffer containing the message.
+	 * @param pos The position in the buffer where the field begins.
+	 * @param limit The position in the buffer where the message ends (exclusive). */
+	public abstract IsoValue<?> parseBinary(byte[] buf, int pos, int limit, CustomField<?> custom)
 	throws ParseException, UnsupportedEncodingException;
 
+	/** Returns the position right after the field that begins at the specified position in a
+	 * character-coded message, reading only the length header (if the type has one), without
+	 * decoding the value.
+	 * @param buf The buffer containing the message.
+	 * @param pos The position in the buffer where the field begins.
+	 * @param limit The position in the buffer where the message ends (exclusive).
+	 * @throws ParseException if the field does not fit inside the message. */
+	public abstract int skip(byte[] buf, int pos, int limit)
+	throws ParseException, UnsupportedEncodingException;
+
+	/** Returns the position right after the field that begins at the specified position in a
+	 * binary message, reading only the length header (if the type has one), without decoding the value.
+	 * @param buf The buffer containing the message.
+	 * @param pos The position in the buffer where the field begins.
+	 * @param limit The position in the buffer where the message ends (exclusive).
+	 * @throws ParseException if the field does not fit inside the message. */
+	public abstract int skipBinary(byte[] buf, int pos, int limit) throws ParseException;
+
+	/** Finds where the field ends, performing the same checks as {@link #skip(byte[], int, int)}
+	 * or {@link #skipBinary(byte[], int, int)} (and the length checks of the parse methods), but
+	 * without throwing exceptions.
+	 * @return The position right after the field, or INSUFFICIENT_DATA or INVALID_LENGTH. */
+	public abstract int findEnd(byte[] buf, int pos, int limit, boolean binary);
+
+	/** Checks the value of a field that ends at the specified position (as returned by
+	 * {@link #findEnd(byte[], int, int, boolean)}) without throwing exceptions. Subclasses whose
+	 * values can be malformed (digits, BCD or hex) override this; text is always valid.
+	 * @return false if the value is invalid. */
+	public boolean checkValue(byte[] buf, int pos, int end, boolean binary) {
+		return true;
+	}
+
+	/** Returns the end of a field of the specified length in bytes, or INSUFFICIENT_DATA
+	 * if it doesn't fit before the limit. */
+	protected static int fixedEnd(int pos, int len, int limit) {
+		return pos < 0 || pos + len > limit ? INSUFFICIENT_DATA : pos + len;
+	}
+
+	/** Finds the end of the specified number of characters, or returns INSUFFICIENT_DATA
+	 * if they don't fit before the limit. */
+	protected int findTextEnd(byte[] buf, int pos, int limit, int chars) {
+		if (pos < 0 || pos + chars > limit) {
+			return INSUFFICIENT_DATA;
+		} else if (!codec.isSingleByte() && codec.decodeChars(buf, pos, limit, chars).length() < chars) {
+			return INSUFFICIENT_DATA;
+		}
+		return pos + codec.byteLength(buf, pos, limit, chars);
+	}
+
+	/** Reads the length header of a variable-length field, which has 2 or 3 ASCII digits, or
+	 * in a binary message 1 or 2 bytes of BCD (the first nibble of a 3-digit header is ignored).
+	 * The caller must check that the header fits in the buffer.
+	 * @return The length, or -1 if the header has something other than digits. */
+	protected static int readLengthHeader(byte[] buf, int pos, int digits, boolean binary) {
+		if (!binary) {
+			return (int)decodeLong(buf, pos, digits);
+		} else if (digits == 2) {
+			return (int)Bcd.decode(buf, pos, 1);
+		}
+		final int hundreds = buf[pos] & 0x0f;
+		final long rest = Bcd.decode(buf, pos + 1, 1);
+		return hundreds > 9 || rest < 0 ? -1 : hundreds * 100 + (int)rest;
+	}
+
+	/** Returns true if the bytes are all ASCII digits, or in a binary message, BCD digits. */
+	protected static boolean checkDigits(byte[] buf, int pos, int end, boolean binary) {
+		if (binary) {
+			return Bcd.isValid(buf, pos, end - pos);
+		}
+		for (int i = pos; i < end; i++) {
+			if (buf[i] < 48 || buf[i] > 57) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Returns true if the bytes are all ASCII hex digits. */
+	protected static boolean checkHex(byte[] buf, int pos, int end) {
+		for (int i = pos; i < end; i++) {
+			final int c = buf[i];
+			if (!((c >= 48 && c <= 57) || (c >= 65 && c <= 70) || (c >= 97 && c <= 102))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Returns the codec for the character encoding. */
+	protected CharCodec getCharCodec() {
+		return codec;
+	}
+
+	/** Returns the number of bytes taken by the specified number of characters, starting at the
+	 * specified position, without reading at or after the limit. */
+	protected int getByteLength(byte[] buf, int pos, int limit, int chars) {
+		return codec.byteLength(buf, pos, limit, chars);
+	}
+
+	/** Decodes the specified number of characters, starting at the specified position. Only the
+	 * bytes taken by those characters are decoded, never reading at or after the limit. */
+	protected String decodeChars(byte[] buf, int pos, int limit, int chars) {
+		return codec.decodeChars(buf, pos, limit, chars);
+	}
+
+	/** Reads the specified number of ASCII digits (up to 18) as a long.
+	 * @return The number, or -1 if there's something other than a digit. */
+	protected static long decodeLong(byte[] buf, int pos, int digits) {
+		long l = 0;
+		for (int i = pos; i < pos + digits; i++) {
+			final int d = buf[i] - 48;
+			if (d < 0 || d > 9) {
+				return -1;
+			}
+			l = l * 10 + d;
+		}
+		return l;
+	}
+
 	/** Returns a new FieldParseInfo instance that can parse the specified type. */
 	public static FieldParseInfo getInstance(IsoType t, int len, String encoding) {
 		FieldParseInfo fpi = null;
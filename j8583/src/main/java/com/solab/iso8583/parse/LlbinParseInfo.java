@@ -37,26 +37,76 @@ public class LlbinParseInfo extends FieldParseInfo {
 	}
 
 	@Override
-	public IsoValue<?> parse(byte[] buf, int pos, CustomField<?> custom) throws ParseException {
+	public int skip(byte[] buf, int pos, int limit) throws ParseException {
 		if (pos < 0) {
 			throw new ParseException(String.format("Invalid LLBIN position %d", pos), pos);
-		} else if (pos+2 > buf.length) {
+		} else if (pos+2 > limit) {
 			throw new ParseException("Insufficient LLBIN header", pos);
 		}
-		length = ((buf[pos] - 48) * 10) + (buf[pos + 1] - 48);
-		if (length < 0) {
-			throw new ParseException(String.format("Invalid LLBIN length %d pos %d", length, pos), pos);
+		final int len = readLengthHeader(buf, pos, 2, false);
+		if (len < 0) {
+			throw new ParseException(String.format("Invalid LLBIN length '%s' pos %d", new String(buf, pos, 2), pos), pos);
+		} else if (len+pos+2 > limit) {
+			throw new ParseException(String.format("Insufficient data for LLBIN field, pos %d (LEN states '%s')", pos, new String(buf, pos, 2)), pos);
+		}
+		return pos + 2 + len;
+	}
+
+	@Override
+	public int skipBinary(byte[] buf, int pos, int limit) throws ParseException {
+		if (pos < 0) {
+			throw new ParseException(String.format("Invalid bin LLBIN position %d", pos), pos);
+		} else if (pos+1 > limit) {
+			throw new ParseException("Insufficient bin LLBIN header", pos);
+		}
+		final int len = readLengthHeader(buf, pos, 2, true);
+		if (len < 0) {
+			throw new ParseException(String.format("Invalid bin LLBIN length '%s' pos %d", HexCodec.hexEncode(buf, pos, 1), pos), pos);
+		}
+		if (len+pos+1 > limit) {
+			throw new ParseException(String.format("Insufficient data for bin LLBIN field, pos %d", pos), pos);
+		}
+		return pos + 1 + len;
+	}
+
+	@Override
+	public int findEnd(byte[] buf, int pos, int limit, boolean binary) {
+		if (pos < 0 || pos + (binary ? 1 : 2) > limit) {
+			return INSUFFICIENT_DATA;
+		}
+		final int len = readLengthHeader(buf, pos, 2, binary);
+		if (len < 0) {
+			return INVALID_LENGTH;
+		}
+		return fixedEnd(pos + (binary ? 1 : 2), len, limit);
+	}
+
+	@Override
+	public boolean checkValue(byte[] buf, int pos, int end, boolean binary) {
+		return binary || checkHex(buf, pos + 2, end);
+	}
+
+	@Override
+	public IsoValue<?> parse(byte[] buf, int pos, int limit, CustomField<?> custom) throws ParseException {
+		if (pos < 0) {
+			throw new ParseException(String.format("Invalid LLBIN position %d", pos), pos);
+		} else if (pos+2 > limit) {
+			throw new ParseException("Insufficient LLBIN header", pos);
+		}
+		final int len = readLengthHeader(buf, pos, 2, false);
+		if (len < 0) {
+			throw new ParseException(String.format("Invalid LLBIN length '%s' pos %d", new String(buf, pos, 2), pos), pos);
 		}
-		if (length+pos+2 > buf.length) {
+		if (len+pos+2 > limit) {
 			throw new ParseException(String.format("Insufficient data for LLBIN field, pos %d (LEN states '%s')", pos, new String(buf, pos, 2)), pos);
 		}
-		byte[] binval = length == 0 ? new byte[0] : HexCodec.hexDecode(new String(buf, pos + 2, length));
+		byte[] binval = len == 0 ? new byte[0] : HexCodec.hexDecode(new String(buf, pos + 2, len));
 		if (custom == null) {
 			return new IsoValue<byte[]>(type, binval, binval.length, null);
 		} else {
 			@SuppressWarnings({"unchecked", "rawtypes"})
 			IsoValue<?> v = new IsoValue(type, custom.decodeField(
-				new String(buf, pos + 2, length)), binval.length, custom);
+				new String(buf, pos + 2, len)), binval.length, custom);
 			if (v.getValue() == null) {
 				return new IsoValue<byte[]>(type, binval, binval.length, null);
 			}
@@ -65,21 +115,21 @@ public class LlbinParseInfo extends FieldParseInfo {
 	}
 
 	@Override
-	public IsoValue<?> parseBinary(byte[] buf, int pos, CustomField<?> custom) throws ParseException {
+	public IsoValue<?> parseBinary(byte[] buf, int pos, int limit, CustomField<?> custom) throws ParseException {
 		if (pos < 0) {
 			throw new ParseException(String.format("Invalid bin LLBIN position %d", pos), pos);
-		} else if (pos+1 > buf.length) {
+		} else if (pos+1 > limit) {
 			throw new ParseException("Insufficient bin LLBIN header", pos);
 		}
-		length = (((buf[pos] & 0xf0) >> 4) * 10) + (buf[pos] & 0x0f);
-		if (length < 0) {
-			throw new ParseException(String.format("Invalid bin LLBIN length %d pos %d", length, pos), pos);
+		final int len = readLengthHeader(buf, pos, 2, true);
+		if (len < 0) {
+			throw new ParseException(String.format("Invalid bin LLBIN length '%s' pos %d", HexCodec.hexEncode(buf, pos, 1), pos), pos);
 		}
-		if (length+pos+1 > buf.length) {
+		if (len+pos+1 > limit) {
 			throw new ParseException(String.format("Insufficient data for bin LLBIN field, pos %d", pos), pos);
 		}
-		byte[] _v = new byte[length];
-		System.arraycopy(buf, pos+1, _v, 0, length);
+		byte[] _v = new byte[len];
+		System.arraycopy(buf, pos+1, _v, 0, len);
 		if (custom == null) {
 			return new IsoValue<byte[]>(type, _v, null);
 		} else {
@@ -37,28 +37,76 @@ public class LllbinParseInfo extends FieldParseInfo {
 	}
 
 	@Override
-	public IsoValue<?> parse(byte[] buf, int pos, CustomField<?> custom) throws ParseException {
+	public int skip(byte[] buf, int pos, int limit) throws ParseException {
 		if (pos < 0) {
 			throw new ParseException(String.format("Invalid LLLBIN position %d", pos), pos);
-		} else if (pos+3 > buf.length) {
+		} else if (pos+3 > limit) {
 			throw new ParseException("Insufficient LLLBIN header", pos);
 		}
-		if (!(Character.isDigit(buf[pos]) && Character.isDigit(buf[pos+1]) && Character.isDigit(buf[pos+2]))) {
+		final int len = readLengthHeader(buf, pos, 3, false);
+		if (len < 0) {
 			throw new ParseException(String.format("Invalid LLLBIN length '%s' pos %d", new String(buf, pos, 3), pos), pos);
 		}
-		length = ((buf[pos] - 48) * 100) + ((buf[pos + 1] - 48) * 10) + (buf[pos + 2] - 48);
-		if (length < 0) {
-			throw new ParseException(String.format("Invalid LLLBIN length %d pos %d", length, pos), pos);
-		} else if (length+pos+3 > buf.length) {
+		if (len+pos+3 > limit) {
 			throw new ParseException(String.format("Insufficient data for LLLBIN field, pos %d", pos), pos);
 		}
-		byte[] binval = length == 0 ? new byte[0] : HexCodec.hexDecode(new String(buf, pos + 3, length));
+		return pos + 3 + len;
+	}
+
+	@Override
+	public int skipBinary(byte[] buf, int pos, int limit) throws ParseException {
+		if (pos < 0) {
+			throw new ParseException(String.format("Invalid bin LLLBIN position %d", pos), pos);
+		} else if (pos+2 > limit) {
+			throw new ParseException("Insufficient bin LLLBIN header", pos);
+		}
+		final int len = readLengthHeader(buf, pos, 3, true);
+		if (len < 0) {
+			throw new ParseException(String.format("Invalid bin LLLBIN length '%s' pos %d", HexCodec.hexEncode(buf, pos, 2), pos), pos);
+		}
+		if (len+pos+2 > limit) {
+			throw new ParseException(String.format("Insufficient data for bin LLLBIN field, pos %d", pos), pos);
+		}
+		return pos + 2 + len;
+	}
+
+	@Override
+	public int findEnd(byte[] buf, int pos, int limit, boolean binary) {
+		if (pos < 0 || pos + (binary ? 2 : 3) > limit) {
+			return INSUFFICIENT_DATA;
+		}
+		final int len = readLengthHeader(buf, pos, 3, binary);
+		if (len < 0) {
+			return INVALID_LENGTH;
+		}
+		return fixedEnd(pos + (binary ? 2 : 3), len, limit);
+	}
+
+	@Override
+	public boolean checkValue(byte[] buf, int pos, int end, boolean binary) {
+		return binary || checkHex(buf, pos + 3, end);
+	}
+
+	@Override
+	public IsoValue<?> parse(byte[] buf, int pos, int limit, CustomField<?> custom) throws ParseException {
+		if (pos < 0) {
+			throw new ParseException(String.format("Invalid LLLBIN position %d", pos), pos);
+		} else if (pos+3 > limit) {
+			throw new ParseException("Insufficient LLLBIN header", pos);
+		}
+		final int len = readLengthHeader(buf, pos, 3, false);
+		if (len < 0) {
+			throw new ParseException(String.format("Invalid LLLBIN length '%s' pos %d", new String(buf, pos, 3), pos), pos);
+		} else if (len+pos+3 > limit) {
+			throw new ParseException(String.format("Insufficient data for LLLBIN field, pos %d", pos), pos);
+		}
+		byte[] binval = len == 0 ? new byte[0] : HexCodec.hexDecode(new String(buf, pos + 3, len));
 		if (custom == null) {
 			return new IsoValue<byte[]>(type, binval, binval.length, null);
 		} else {
 			@SuppressWarnings({"unchecked", "rawtypes"})
 			IsoValue<?> v = new IsoValue(type, custom.decodeField(
-				length == 0 ? "" : new String(buf, pos + 3, length)), length, custom);
+				len == 0 ? "" : new String(buf, pos + 3, len)), len, custom);
 			if (v.getValue() == null) {
 				//problems decoding? return the string
 				return new IsoValue<byte[]>(type, binval, binval.length, null);
@@ -68,21 +116,21 @@ public class LllbinParseInfo extends FieldParseInfo {
 	}
 
 	@Override
-	public IsoValue<?> parseBinary(byte[] buf, int pos, CustomField<?> custom) throws ParseException {
+	public IsoValue<?> parseBinary(byte[] buf, int pos, int limit, CustomField<?> custom) throws ParseException {
 		if (pos < 0) {
 			throw new ParseException(String.format("Invalid bin LLLBIN position %d", pos), pos);
-		} else if (pos+3 > buf.length) {
+		} else if (pos+2 > limit) {
 			throw new ParseException("Insufficient bin LLLBIN header", pos);
 		}
-		length = ((buf[pos] & 0x0f) * 100) + (((buf[pos + 1] & 0xf0) >> 4) * 10) + (buf[pos + 1] & 0x0f);
-		if (length < 0) {
-			throw new ParseException(String.format("Invalid bin LLLBIN length %d pos %d", length, pos), pos);
+		final int len = readLengthHeader(buf, pos, 3, true);
+		if (len < 0) {
+			throw new ParseException(String.format("Invalid bin LLLBIN length '%s' pos %d", HexCodec.hexEncode(buf, pos, 2), pos), pos);
 		}
-		if (length+pos+2 > buf.length) {
+		if (len+pos+2 > limit) {
 			throw new ParseException(String.format("Insufficient data for bin LLLBIN field, pos %d", pos), pos);
 		}
-		byte[] _v = new byte[length];
-		System.arraycopy(buf, pos+2, _v, 0, length);
+		byte[] _v = new byte[len];
+		System.arraycopy(buf, pos+2, _v, 0, len);
 		if (custom == null) {
 			return new IsoValue<byte[]>(type, _v, null);
 		} else {
@@ -24,6 +24,7 @@ import java.text.ParseException;
 import com.solab.iso8583.CustomField;
 import com.solab.iso8583.IsoType;
 import com.solab.iso8583.IsoValue;
+import com.solab.iso8583.util.HexCodec;
 
 /** This class is used to parse fields of type LLLVAR.
  * 
@@ -36,59 +37,97 @@ public class LllvarParseInfo extends FieldParseInfo {
 		super(IsoType.LLLVAR, 0);
 	}
 
-	public IsoValue<?> parse(byte[] buf, int pos, CustomField<?> custom)
-	throws ParseException, UnsupportedEncodingException {
+	public int skip(byte[] buf, int pos, int limit) throws ParseException, UnsupportedEncodingException {
 		if (pos < 0) {
 			throw new ParseException(String.format("Invalid LLLVAR position %d", pos), pos);
-		} else if (pos+3 > buf.length) {
+		} else if (pos+3 > limit) {
 			throw new ParseException(String.format("Insufficient data for LLLVAR header, pos %d", pos), pos);
 		}
-		if (!(Character.isDigit(buf[pos]) && Character.isDigit(buf[pos+1]) && Character.isDigit(buf[pos+2]))) {
-			throw new ParseException(String.format("Invalid LLLVAR length '%s' pos %d",
-				new String(buf, pos, 3), pos), pos);
+		final int len = readLengthHeader(buf, pos, 3, false);
+		if (len < 0) {
+			throw new ParseException(String.format("Invalid LLLVAR length '%s' pos %d", new String(buf, pos, 3), pos), pos);
+		}
+		if (len+pos+3 > limit) {
+			throw new ParseException(String.format("Insufficient data for LLLVAR field, pos %d", pos), pos);
+		}
+		return pos + 3 + getByteLength(buf, pos + 3, limit, len);
+	}
+
+	public int skipBinary(byte[] buf, int pos, int limit) throws ParseException {
+		if (pos < 0) {
+			throw new ParseException(String.format("Invalid bin LLLVAR position %d", pos), pos);
+		} else if (pos+2 > limit) {
+			throw new ParseException(String.format("Insufficient data for bin LLLVAR header, pos %d", pos), pos);
+		}
+		final int len = readLengthHeader(buf, pos, 3, true);
+		if (len < 0) {
+			throw new ParseException(String.format("Invalid bin LLLVAR length '%s' pos %d", HexCodec.hexEncode(buf, pos, 2), pos), pos);
+		}
+		if (len+pos+2 > limit) {
+			throw new ParseException(String.format("Insufficient data for bin LLLVAR field, pos %d", pos), pos);
+		}
+		return pos + 2 + len;
+	}
+
+	@Override
+	public int findEnd(byte[] buf, int pos, int limit, boolean binary) {
+		if (pos < 0 || pos + (binary ? 2 : 3) > limit) {
+			return INSUFFICIENT_DATA;
+		}
+		final int len = readLengthHeader(buf, pos, 3, binary);
+		if (len < 0) {
+			return INVALID_LENGTH;
+		}
+		return binary ? fixedEnd(pos + 2, len, limit) : findTextEnd(buf, pos + 3, limit, len);
+	}
+
+	public IsoValue<?> parse(byte[] buf, int pos, int limit, CustomField<?> custom)
+	throws ParseException, UnsupportedEncodingException {
+		if (pos < 0) {
+			throw new ParseException(String.format("Invalid LLLVAR position %d", pos), pos);
+		} else if (pos+3 > limit) {
+			throw new ParseException(String.format("Insufficient data for LLLVAR header, pos %d", pos), pos);
 		}
-		length = ((buf[pos] - 48) * 100) + ((buf[pos + 1] - 48) * 10) + (buf[pos + 2] - 48);
-		if (length < 0) {
-			throw new ParseException(String.format("Invalid LLLVAR length %d pos %d", length, pos), pos);
-		} else if (length+pos+3 > buf.length) {
+		final int len = readLengthHeader(buf, pos, 3, false);
+		if (len < 0) {
+			throw new ParseException(String.format("Invalid LLLVAR length '%s' pos %d", new String(buf, pos, 3), pos), pos);
+		} else if (len+pos+3 > limit) {
 			throw new ParseException(String.format("Insufficient data for LLLVAR field, pos %d", pos), pos);
 		}
-		String _v = length == 0 ? "" : new String(buf, pos + 3, length, getCharacterEncoding());
-		//This is new: if the String's length is different from the specified length in the buffer,
-		//there are probably some extended characters. So we create a String from the rest of the buffer,
-		//and then cut it to the specified length.
-		if (_v.length() != length) {
-			_v = new String(buf, pos + 3, buf.length-pos-3, getCharacterEncoding()).substring(0, length);
+		//The length is in characters, which can take more than one byte each
+		String _v = decodeChars(buf, pos + 3, limit, len);
+		if (_v.length() != len) {
+			throw new ParseException(String.format("Insufficient data for LLLVAR field, pos %d", pos), pos);
 		}
 		if (custom == null) {
-			return new IsoValue<String>(type, _v, length, null);
+			return new IsoValue<String>(type, _v, len, null);
 		} else {
 			Object decoded = custom.decodeField(_v);
 			//If decode fails, return string; otherwise use the decoded object and its codec
-			return new IsoValue(type, decoded == null ? _v : decoded, length, decoded == null ? null : custom);
+			return new IsoValue(type, decoded == null ? _v : decoded, len, decoded == null ? null : custom);
 		}
 	}
 
-	public IsoValue<?> parseBinary(byte[] buf, int pos, CustomField<?> custom)
+	public IsoValue<?> parseBinary(byte[] buf, int pos, int limit, CustomField<?> custom)
 			throws ParseException, UnsupportedEncodingException {
 		if (pos < 0) {
 			throw new ParseException(String.format("Invalid bin LLLVAR position %d", pos), pos);
-		} else if (pos+3 > buf.length) {
+		} else if (pos+2 > limit) {
 			throw new ParseException(String.format("Insufficient data for bin LLLVAR header, pos %d", pos), pos);
 		}
-		length = ((buf[pos] & 0x0f) * 100) + (((buf[pos + 1] & 0xf0) >> 4) * 10) + (buf[pos + 1] & 0x0f);
-		if (length < 0) {
-			throw new ParseException(String.format("Invalid bin LLLVAR length %d pos %d", length, pos), pos);
-		} else if (length+pos+2 > buf.length) {
+		final int len = readLengthHeader(buf, pos, 3, true);
+		if (len < 0) {
+			throw new ParseException(String.format("Invalid bin LLLVAR length '%s' pos %d", HexCodec.hexEncode(buf, pos, 2), pos), pos);
+		} else if (len+pos+2 > limit) {
 			throw new ParseException(String.format("Insufficient data for bin LLLVAR field, pos %d", pos), pos);
 		}
 		if (custom == null) {
-			return new IsoValue<String>(type, new String(buf, pos + 2, length, getCharacterEncoding()), null);
+			return new IsoValue<String>(type, getCharCodec().decode(buf, pos + 2, len), null);
 		} else {
 			@SuppressWarnings({"unchecked", "rawtypes"})
-			IsoValue<?> v = new IsoValue(type, custom.decodeField(new String(buf, pos + 2, length, getCharacterEncoding())), custom);
+			IsoValue<?> v = new IsoValue(type, custom.decodeField(getCharCodec().decode(buf, pos + 2, len)), custom);
 			if (v.getValue() == null) {
-				return new IsoValue<String>(type, new String(buf, pos + 2, length, getCharacterEncoding()), null);
+				return new IsoValue<String>(type, getCharCodec().decode(buf, pos + 2, len), null);
 			}
 			return v;
 		}
@@ -24,6 +24,9 @@ import java.text.ParseException;
 import com.solab.iso8583.CustomField;
 import com.solab.iso8583.IsoType;
 import com.solab.iso8583.IsoValue;
+import com.solab.iso8583.LongValue;
+import com.solab.iso8583.util.Bcd;
+import com.solab.iso8583.util.HexCodec;
 
 /** This class is used to parse NUMERIC fields.
  * 
@@ -35,34 +38,93 @@ public class NumericParseInfo extends AlphaNumericFieldParseInfo {
 		super(IsoType.NUMERIC, len);
 	}
 
+	public int skipBinary(byte[] buf, int pos, int limit) throws ParseException {
+		if (pos < 0) {
+			throw new ParseException(String.format("Invalid bin NUMERIC position %d", pos), pos);
+		} else if (pos+(length / 2)+(length % 2) > limit) {
+			throw new ParseException(String.format("Insufficient data for bin %s field of length %d, pos %d",
+				type, length, pos), pos);
+		}
+		return pos + (length / 2) + (length % 2);
+	}
+
+	@Override
+	public int findEnd(byte[] buf, int pos, int limit, boolean binary) {
+		return binary ? fixedEnd(pos, (length / 2) + (length % 2), limit) : super.findEnd(buf, pos, limit, false);
+	}
+
+	/** Binary values must be BCD; ASCII values are kept as they are, like the parse method does. */
+	@Override
+	public boolean checkValue(byte[] buf, int pos, int end, boolean binary) {
+		return !binary || checkDigits(buf, pos, end, true);
+	}
+
+	@Override
 	public IsoValue<Number> parseBinary(byte[] buf, int pos, CustomField<?> custom) throws ParseException {
+		return parseBinary(buf, pos, buf.length, custom);
+	}
+
+	public IsoValue<Number> parseBinary(byte[] buf, int pos, int limit, CustomField<?> custom) throws ParseException {
 		if (pos < 0) {
 			throw new ParseException(String.format("Invalid bin NUMERIC position %d", pos), pos);
-		} else if (pos+length > buf.length) {
+		} else if (pos+(length / 2)+(length % 2) > limit) {
 			throw new ParseException(String.format("Insufficient data for bin %s field of length %d, pos %d",
 				type, length, pos), pos);
 		}
 		//A long covers up to 18 digits
 		if (length < 19) {
-			long l = 0;
-			long power = 1L;
-			for (int i = pos + (length / 2) + (length % 2) - 1; i >= pos; i--) {
-				l += (buf[i] & 0x0f) * power;
-				power *= 10L;
-				l += ((buf[i] & 0xf0) >> 4) * power;
-				power *= 10L;
+			final long l = parseBinaryLong(buf, pos, limit);
+			if (length % 2 == 1 && (buf[pos] & 0xf0) != 0) {
+				//The padding nibble is not zero, so the value doesn't fit in the length
+				return new IsoValue<Number>(IsoType.NUMERIC, l, length, null);
 			}
-			return new IsoValue<Number>(IsoType.NUMERIC, l, length, null);
+			return new LongValue(l, length);
 		} else {
 			//Use a BigInteger
-			char[] digits = new char[length];
-			int start = 0;
-			for (int i = pos; i < pos + (length / 2) + (length % 2); i++) {
-				digits[start++] = (char)(((buf[i] & 0xf0) >> 4) + 48);
-				digits[start++] = (char)((buf[i] & 0x0f) + 48);
-			}
-			return new IsoValue<Number>(IsoType.NUMERIC, new BigInteger(new String(digits)), length, null);
+			return new IsoValue<Number>(IsoType.NUMERIC, new BigInteger(Bcd.decodeDigits(buf, pos, length)), length, null);
+		}
+	}
+
+	/** Reads the value as a long, straight from the ASCII digits in the buffer, without creating
+	 * the String that {@link #parse(byte[], int, int, CustomField)} returns.
+	 * @throws ParseException if there isn't enough data, the field has something other than digits,
+	 * or it's longer than 18 digits. */
+	public long parseLong(byte[] buf, int pos, int limit) throws ParseException {
+		if (pos < 0) {
+			throw new ParseException(String.format("Invalid NUMERIC position %d", pos), pos);
+		} else if (pos+length > limit) {
+			throw new ParseException(String.format("Insufficient data for %s field of length %d, pos %d",
+				type, length, pos), pos);
+		} else if (length > 18) {
+			throw new ParseException(String.format("NUMERIC field of length %d does not fit in a long", length), pos);
+		}
+		final long l = decodeLong(buf, pos, length);
+		if (l < 0) {
+			throw new ParseException(String.format("Invalid NUMERIC value '%s' pos %d",
+				new String(buf, pos, length), pos), pos);
+		}
+		return l;
+	}
+
+	/** Reads the BCD-encoded value as a long.
+	 * @throws ParseException if there isn't enough data, the field has something other than digits,
+	 * or it's longer than 18 digits. */
+	public long parseBinaryLong(byte[] buf, int pos, int limit) throws ParseException {
+		final int bytes = (length / 2) + (length % 2);
+		if (pos < 0) {
+			throw new ParseException(String.format("Invalid bin NUMERIC position %d", pos), pos);
+		} else if (pos+bytes > limit) {
+			throw new ParseException(String.format("Insufficient data for bin %s field of length %d, pos %d",
+				type, length, pos), pos);
+		} else if (length > 18) {
+			throw new ParseException(String.format("NUMERIC field of length %d does not fit in a long", length), pos);
+		}
+		final long l = Bcd.decode(buf, pos, bytes);
+		if (l < 0) {
+			throw new ParseException(String.format("Invalid bin NUMERIC value '%s' pos %d",
+				HexCodec.hexEncode(buf, pos, bytes), pos), pos);
 		}
+		return l;
 	}
 
 }
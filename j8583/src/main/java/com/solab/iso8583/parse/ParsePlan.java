@@ -0,0 +1,111 @@
+/*
+j8583 A Java implementation of the ISO8583 protocol
+Copyright (C) 2011 Enrique Zamudio Lopez
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+*/
+package com.solab.iso8583.parse;
+
+import java.util.Map;
+
+/** This is a compiled version of the parse guide for a message type. It holds the
+ * FieldParseInfo for each field in an array indexed by field number, the field numbers
+ * in the order they appear in a message, and a mask of the fields allowed in the bitmap,
+ * so that messages can be parsed without any map lookups or boxing.
+ * <P>
+ * The mask uses the same layout as the bitmap in the message: the first word holds
+ * fields 1 to 64 and the second word holds fields 65 to 128, with the lowest field number
+ * in the most significant bit.
+ *
+ * @author Enrique Zamudio
+ */
+public final class ParsePlan {
+
+	private final FieldParseInfo[] fields = new FieldParseInfo[129];
+	private final int[] order;
+	private final long allowed1;
+	private final long allowed2;
+
+	/** Compiles the specified parse guide.
+	 * @param guide A map of FieldParseInfo instances, keyed by field number (2 to 128). */
+	public ParsePlan(Map<Integer, FieldParseInfo> guide) {
+		//Field 1 is the secondary bitmap, it's always allowed
+		long a1 = 1L << 63;
+		long a2 = 0;
+		int count = 0;
+		for (Map.Entry<Integer, FieldParseInfo> e : guide.entrySet()) {
+			final int f = e.getKey();
+			if (f < 2 || f > 128) {
+				throw new IllegalArgumentException(String.format("Invalid field number %d in parse guide", f));
+			}
+			if (e.getValue() != null) {
+				fields[f] = e.getValue();
+				if (f <= 64) {
+					a1 |= 1L << (64 - f);
+				} else {
+					a2 |= 1L << (128 - f);
+				}
+				count++;
+			}
+		}
+		allowed1 = a1;
+		allowed2 = a2;
+		order = new int[count];
+		int pos = 0;
+		for (int i = 2; i < 129; i++) {
+			if (fields[i] != null) {
+				order[pos++] = i;
+			}
+		}
+	}
+
+	/** Returns the FieldParseInfo for the specified field, or null if the field is not
+	 * in the parse guide. */
+	public FieldParseInfo get(int field) {
+		return fields[field];
+	}
+
+	/** Returns the number of fields in the parse guide. */
+	public int size() {
+		return order.length;
+	}
+
+	/** Returns the field number at the specified position, in the order in which the fields
+	 * appear in a message. */
+	public int getField(int index) {
+		return order[index];
+	}
+
+	/** Returns the highest field number in the parse guide, or 0 if the guide is empty. */
+	public int getLastField() {
+		return order.length == 0 ? 0 : order[order.length - 1];
+	}
+
+	/** Returns the mask of allowed fields from 1 to 64. */
+	public long getAllowedPrimary() {
+		return allowed1;
+	}
+
+	/** Returns the mask of allowed fields from 65 to 128. */
+	public long getAllowedSecondary() {
+		return allowed2;
+	}
+
+	/** Returns true if all the fields present in the specified bitmap are in the parse guide. */
+	public boolean allows(long primary, long secondary) {
+		return (primary & ~allowed1) == 0 && (secondary & ~allowed2) == 0;
+	}
+
+}
@@ -19,12 +19,12 @@ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
 package com.solab.iso8583.parse;
 
 import java.text.ParseException;
-import java.util.Calendar;
 import java.util.Date;
 
 import com.solab.iso8583.CustomField;
 import com.solab.iso8583.IsoType;
 import com.solab.iso8583.IsoValue;
+import com.solab.iso8583.util.DateCodec;
 
 /** This class is used to parse TIME fields.
  * 
@@ -37,37 +37,66 @@ public class TimeParseInfo extends FieldParseInfo {
 		super(IsoType.TIME, 6);
 	}
 
+	@Override
+	public int skip(byte[] buf, int pos, int limit) throws ParseException {
+		if (pos < 0) {
+			throw new ParseException(String.format("Invalid TIME position %d", pos), pos);
+		} else if (pos+6 > limit) {
+			throw new ParseException(String.format("Insufficient data for TIME field, pos %d", pos), pos);
+		}
+		return pos + 6;
+	}
+
+	@Override
+	public int skipBinary(byte[] buf, int pos, int limit) throws ParseException {
+		if (pos < 0) {
+			throw new ParseException(String.format("Invalid bin TIME position %d", pos), pos);
+		} else if (pos+3 > limit) {
+			throw new ParseException(String.format("Insufficient data for bin TIME field, pos %d", pos), pos);
+		}
+		return pos + 3;
+	}
+
+	@Override
+	public int findEnd(byte[] buf, int pos, int limit, boolean binary) {
+		return fixedEnd(pos, binary ? 3 : 6, limit);
+	}
+
+	@Override
+	public boolean checkValue(byte[] buf, int pos, int end, boolean binary) {
+		return checkDigits(buf, pos, end, binary);
+	}
+
 	@Override
 	public IsoValue<Date> parse(byte[] buf, int pos, CustomField<?> custom) throws ParseException {
+		return parse(buf, pos, buf.length, custom);
+	}
+
+	@Override
+	public IsoValue<Date> parse(byte[] buf, int pos, int limit, CustomField<?> custom) throws ParseException {
 		if (pos < 0) {
 			throw new ParseException(String.format("Invalid TIME position %d", pos), pos);
-		} else if (pos+6 > buf.length) {
+		} else if (pos+6 > limit) {
 			throw new ParseException(String.format("Insufficient data for TIME field, pos %d", pos), pos);
 		}
-		Calendar cal = Calendar.getInstance();
-		cal.set(Calendar.HOUR_OF_DAY, ((buf[pos] - 48) * 10) + buf[pos + 1] - 48);
-		cal.set(Calendar.MINUTE, ((buf[pos + 2] - 48) * 10) + buf[pos + 3] - 48);
-		cal.set(Calendar.SECOND, ((buf[pos + 4] - 48) * 10) + buf[pos + 5] - 48);
-		return new IsoValue<Date>(type, cal.getTime(), null);
+		return new IsoValue<Date>(type, new Date(DateCodec.time(DateCodec.ascii(buf, pos),
+			DateCodec.ascii(buf, pos + 2), DateCodec.ascii(buf, pos + 4))), null);
 	}
 
 	@Override
 	public IsoValue<Date> parseBinary(byte[] buf, int pos, CustomField<?> custom) throws ParseException {
+		return parseBinary(buf, pos, buf.length, custom);
+	}
+
+	@Override
+	public IsoValue<Date> parseBinary(byte[] buf, int pos, int limit, CustomField<?> custom) throws ParseException {
 		if (pos < 0) {
 			throw new ParseException(String.format("Invalid bin TIME position %d", pos), pos);
-		} else if (pos+3 > buf.length) {
+		} else if (pos+3 > limit) {
 			throw new ParseException(String.format("Insufficient data for bin TIME field, pos %d", pos), pos);
 		}
-		int[] tens = new int[3];
-		int start = 0;
-		for (int i = pos; i < pos + 3; i++) {
-			tens[start++] = (((buf[i] & 0xf0) >> 4) * 10) + (buf[i] & 0x0f);
-		}
-		Calendar cal = Calendar.getInstance();
-		cal.set(Calendar.HOUR_OF_DAY, tens[0]);
-		cal.set(Calendar.MINUTE, tens[1]);
-		cal.set(Calendar.SECOND, tens[2]);
-		return new IsoValue<Date>(type, cal.getTime(), null);
+		return new IsoValue<Date>(type, new Date(DateCodec.time(DateCodec.bcd(buf, pos),
+			DateCodec.bcd(buf, pos + 1), DateCodec.bcd(buf, pos + 2))), null);
 	}
 
 }
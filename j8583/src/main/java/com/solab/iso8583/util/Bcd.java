@@ -0,0 +1,123 @@
+/*
+j8583 A Java implementation of the ISO8583 protocol
+Copyright (C) 2011 Enrique Zamudio Lopez
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+*/
+package com.solab.iso8583.util;
+
+/** Packs numbers into BCD, two decimal digits per byte with the most significant digit in the
+ * high nibble, and reads them back. Values are right-aligned, so when the number of digits is
+ * odd the high nibble of the first byte is zero.
+ *
+ * @author Enrique Zamudio
+ */
+public final class Bcd {
+
+	private Bcd() {
+	}
+
+	/** Returns the number of bytes needed for the specified number of digits. */
+	public static int length(int digits) {
+		return (digits / 2) + (digits % 2);
+	}
+
+	/** Packs the non-negative value into the specified number of digits, zero-filled to the left.
+	 * @return The position after the last byte.
+	 * @throws IllegalArgumentException if the value is negative or has more digits than specified. */
+	public static int encode(long value, int digits, byte[] buf, int pos) {
+		if (value < 0) {
+			throw new IllegalArgumentException("Cannot encode negative value " + value + " as BCD");
+		}
+		final int end = pos + length(digits);
+		long v = value;
+		for (int i = end - 1; i >= pos; i--) {
+			final int two = (int)(v % 100);
+			buf[i] = (byte)(((two / 10) << 4) | (two % 10));
+			v /= 100;
+		}
+		if (v != 0 || (digits % 2 == 1 && (buf[pos] & 0xf0) != 0)) {
+			throw new IllegalArgumentException(String.format("Value %d doesn't fit in %d BCD digits", value, digits));
+		}
+		return end;
+	}
+
+	/** Packs a string of digits into the specified number of bytes. The digits are written from
+	 * the start, with the first one alone in a byte if there's an odd number of them, and the
+	 * remaining bytes are filled with zeroes.
+	 * @return The position after the last byte. */
+	public static int encode(String digits, byte[] buf, int pos, int bytes) {
+		if (digits.length() > bytes * 2) {
+			throw new IllegalArgumentException(String.format("Value '%s' doesn't fit in %d BCD bytes", digits, bytes));
+		}
+		final int end = pos + bytes;
+		int charpos = 0;
+		if (digits.length() % 2 == 1) {
+			//for odd lengths we encode just the first digit in the first byte
+			buf[pos++] = (byte)(digits.charAt(0) - 48);
+			charpos = 1;
+		}
+		while (charpos < digits.length()) {
+			buf[pos++] = (byte)(((digits.charAt(charpos) - 48) << 4) | (digits.charAt(charpos + 1) - 48));
+			charpos += 2;
+		}
+		while (pos < end) {
+			buf[pos++] = 0;
+		}
+		return end;
+	}
+
+	/** Reads the specified number of bytes (up to 9) as a long.
+	 * @return The number, or -1 if there's a nibble that is not a digit. */
+	public static long decode(byte[] buf, int pos, int bytes) {
+		long l = 0;
+		for (int i = pos; i < pos + bytes; i++) {
+			final int hi = (buf[i] & 0xf0) >> 4;
+			final int lo = buf[i] & 0x0f;
+			if (hi > 9 || lo > 9) {
+				return -1;
+			}
+			l = l * 100 + hi * 10 + lo;
+		}
+		return l;
+	}
+
+	/** Returns true if every nibble of the specified bytes is a digit. */
+	public static boolean isValid(byte[] buf, int pos, int bytes) {
+		for (int i = pos; i < pos + bytes; i++) {
+			if ((buf[i] & 0xf0) > 0x90 || (buf[i] & 0x0f) > 9) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Reads the specified number of bytes as a string of digits, dropping the high nibble of the
+	 * first byte if the number of digits is odd. Nibbles are not checked. */
+	public static String decodeDigits(byte[] buf, int pos, int digits) {
+		final char[] c = new char[digits];
+		int n = 0;
+		int i = pos;
+		if (digits % 2 == 1) {
+			c[n++] = (char)((buf[i++] & 0x0f) + 48);
+		}
+		while (n < digits) {
+			c[n++] = (char)(((buf[i] & 0xf0) >> 4) + 48);
+			c[n++] = (char)((buf[i++] & 0x0f) + 48);
+		}
+		return new String(c);
+	}
+
+}
@@ -0,0 +1,315 @@
+/*
+j8583 A Java implementation of the ISO8583 protocol
+Copyright (C) 2011 Enrique Zamudio Lopez
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+*/
+package com.solab.iso8583.util;
+
+import java.text.ParseException;
+
+/** The bitmap of an ISO8583 message, stored as two longs: the primary bitmap holds fields
+ * 1 to 64 and the secondary bitmap holds fields 65 to 128. The words have the same layout
+ * as on the wire, that is, the lowest field number is the most significant bit; field 1
+ * indicates the presence of the secondary bitmap.
+ * <P>
+ * Instances are mutable and can be reused.
+ *
+ * @author Enrique Zamudio
+ */
+public final class Bitmap {
+
+	private static final byte[] HEX = new byte[]{ '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
+	/** The value of each hex digit, indexed by character; -1 for anything else. */
+	private static final byte[] NIBBLES = new byte[256];
+
+	static {
+		for (int i = 0; i < 256; i++) {
+			NIBBLES[i] = -1;
+		}
+		for (int i = 0; i < 10; i++) {
+			NIBBLES['0' + i] = (byte)i;
+		}
+		for (int i = 0; i < 6; i++) {
+			NIBBLES['A' + i] = (byte)(10 + i);
+			NIBBLES['a' + i] = (byte)(10 + i);
+		}
+	}
+
+	private long primary;
+	private long secondary;
+
+	/** Returns fields 1 to 64. */
+	public long getPrimary() {
+		return primary;
+	}
+	/** Returns fields 65 to 128. */
+	public long getSecondary() {
+		return secondary;
+	}
+
+	/** Sets both words of the bitmap. */
+	public void set(long primary, long secondary) {
+		this.primary = primary;
+		this.secondary = secondary;
+	}
+
+	/** Returns true if the specified field (1 to 128) is present in the bitmap. */
+	public boolean get(int field) {
+		return field <= 64 ? (primary & (1L << (64 - field))) != 0 : (secondary & (1L << (128 - field))) != 0;
+	}
+
+	/** Marks the specified field (1 to 128) as present. */
+	public void set(int field) {
+		if (field <= 64) {
+			primary |= 1L << (64 - field);
+		} else {
+			secondary |= 1L << (128 - field);
+		}
+	}
+
+	/** Marks the specified field (1 to 128) as absent. */
+	public void clear(int field) {
+		if (field <= 64) {
+			primary &= ~(1L << (64 - field));
+		} else {
+			secondary &= ~(1L << (128 - field));
+		}
+	}
+
+	/** Removes all the fields from the bitmap. */
+	public void clear() {
+		primary = 0;
+		secondary = 0;
+	}
+
+	/** Removes all the fields after the specified one. */
+	public void clearAfter(int field) {
+		if (field < 64) {
+			primary = field <= 0 ? 0 : primary & ~(-1L >>> field);
+			secondary = 0;
+		} else if (field == 64) {
+			secondary = 0;
+		} else if (field < 128) {
+			secondary &= ~(-1L >>> (field - 64));
+		}
+	}
+
+	/** Returns the lowest field number that is present in the bitmap and greater than the
+	 * specified one, or -1 if there are no more fields. Iterate over the fields with
+	 * <code>for (int f = bitmap.nextField(1); f > 0; f = bitmap.nextField(f))</code>. */
+	public int nextField(int after) {
+		if (after < 64) {
+			final long w = after <= 0 ? primary : primary & (-1L >>> after);
+			if (w != 0) {
+				return Long.numberOfLeadingZeros(w) + 1;
+			}
+			after = 64;
+		}
+		if (after < 128) {
+			final long w = secondary & (-1L >>> (after - 64));
+			if (w != 0) {
+				return Long.numberOfLeadingZeros(w) + 65;
+			}
+		}
+		return -1;
+	}
+
+	/** Returns the highest field number present in the bitmap, or -1 if it's empty. */
+	public int lastField() {
+		if (secondary != 0) {
+			return 128 - Long.numberOfTrailingZeros(secondary);
+		}
+		return primary == 0 ? -1 : 64 - Long.numberOfTrailingZeros(primary);
+	}
+
+	/** Returns the number of fields present in the bitmap. */
+	public int size() {
+		return Long.bitCount(primary) + Long.bitCount(secondary);
+	}
+
+	/** Reads a binary bitmap from the buffer: 8 bytes for the primary bitmap and, if
+	 * field 1 is set, another 8 bytes for the secondary bitmap.
+	 * @param buf The buffer containing the message.
+	 * @param pos The position where the bitmap begins.
+	 * @param limit The position where the message ends (exclusive).
+	 * @return The position right after the bitmap. */
+	public int readBinary(byte[] buf, int pos, int limit) throws ParseException {
+		if (pos + 8 > limit) {
+			throw new ParseException("Insufficient length for bitmap", pos);
+		}
+		primary = readLong(buf, pos);
+		pos += 8;
+		if (primary < 0) {
+			if (pos + 8 > limit) {
+				throw new ParseException("Insufficient length for secondary bitmap", pos);
+			}
+			secondary = readLong(buf, pos);
+			pos += 8;
+		} else {
+			secondary = 0;
+		}
+		return pos;
+	}
+
+	/** Reads a hex-encoded bitmap from the buffer: 16 characters for the primary bitmap and,
+	 * if field 1 is set, another 16 for the secondary bitmap. Upper and lowercase hex digits
+	 * are accepted.
+	 * @param buf The buffer containing the message.
+	 * @param pos The position where the bitmap begins.
+	 * @param limit The position where the message ends (exclusive).
+	 * @return The position right after the bitmap. */
+	public int readAscii(byte[] buf, int pos, int limit) throws ParseException {
+		if (pos + 16 > limit) {
+			throw new ParseException("Insufficient length for bitmap", pos);
+		}
+		primary = readHex(buf, pos);
+		pos += 16;
+		if (primary < 0) {
+			if (pos + 16 > limit) {
+				throw new ParseException("Insufficient length for secondary bitmap", pos);
+			}
+			secondary = readHex(buf, pos);
+			pos += 16;
+		} else {
+			secondary = 0;
+		}
+		return pos;
+	}
+
+	/** Reads a binary or ASCII bitmap like {@link #readBinary(byte[], int, int)} and
+	 * {@link #readAscii(byte[], int, int)}, but reports errors with a negative result instead of
+	 * an exception: -1 if there isn't enough data, -2 if there's an invalid hex digit. The bitmap
+	 * is left empty in case of error.
+	 * @return The position right after the bitmap, or a negative error code. */
+	public int tryRead(byte[] buf, int pos, int limit, boolean binary) {
+		final int len = binary ? 8 : 16;
+		primary = 0;
+		secondary = 0;
+		if (pos + len > limit) {
+			return -1;
+		} else if (!binary && !isHex(buf, pos)) {
+			return -2;
+		}
+		final long p = binary ? readLong(buf, pos) : readHexDigits(buf, pos);
+		pos += len;
+		if (p < 0) {
+			if (pos + len > limit) {
+				return -1;
+			} else if (!binary && !isHex(buf, pos)) {
+				return -2;
+			}
+			secondary = binary ? readLong(buf, pos) : readHexDigits(buf, pos);
+			pos += len;
+		}
+		primary = p;
+		return pos;
+	}
+
+	/** Writes the bitmap to the buffer, in binary or as hex digits. The secondary bitmap
+	 * is written only if field 1 is set.
+	 * @return The position right after the bitmap. */
+	public int write(byte[] buf, int pos, boolean binary) {
+		if (binary) {
+			pos = writeLong(primary, buf, pos);
+			if (primary < 0) {
+				pos = writeLong(secondary, buf, pos);
+			}
+		} else {
+			pos = writeHex(primary, buf, pos);
+			if (primary < 0) {
+				pos = writeHex(secondary, buf, pos);
+			}
+		}
+		return pos;
+	}
+
+	/** Returns the number of bytes that {@link #write(byte[], int, boolean)} will write. */
+	public int getEncodedLength(boolean binary) {
+		return (binary ? 8 : 16) * (primary < 0 ? 2 : 1);
+	}
+
+	private static long readLong(byte[] buf, int pos) {
+		return ((long)(buf[pos] & 0xff) << 56) | ((long)(buf[pos + 1] & 0xff) << 48)
+			| ((long)(buf[pos + 2] & 0xff) << 40) | ((long)(buf[pos + 3] & 0xff) << 32)
+			| ((long)(buf[pos + 4] & 0xff) << 24) | ((buf[pos + 5] & 0xff) << 16)
+			| ((buf[pos + 6] & 0xff) << 8) | (buf[pos + 7] & 0xff);
+	}
+
+	private static boolean isHex(byte[] buf, int pos) {
+		for (int i = pos; i < pos + 16; i++) {
+			if (NIBBLES[buf[i] & 0xff] < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Reads 16 hex digits that are known to be valid. */
+	private static long readHexDigits(byte[] buf, int pos) {
+		long v = 0;
+		for (int i = pos; i < pos + 16; i++) {
+			v = (v << 4) | NIBBLES[buf[i] & 0xff];
+		}
+		return v;
+	}
+
+	private static long readHex(byte[] buf, int pos) throws ParseException {
+		long v = 0;
+		for (int i = pos; i < pos + 16; i++) {
+			final int n = NIBBLES[buf[i] & 0xff];
+			if (n < 0) {
+				throw new ParseException("Invalid ISO8583 bitmap", i);
+			}
+			v = (v << 4) | n;
+		}
+		return v;
+	}
+
+	private static int writeLong(long v, byte[] buf, int pos) {
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			buf[pos++] = (byte)(v >>> shift);
+		}
+		return pos;
+	}
+
+	private static int writeHex(long v, byte[] buf, int pos) {
+		for (int shift = 60; shift >= 0; shift -= 4) {
+			buf[pos++] = HEX[(int)(v >>> shift) & 0xf];
+		}
+		return pos;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof Bitmap)) {
+			return false;
+		}
+		Bitmap other = (Bitmap)obj;
+		return other.primary == primary && other.secondary == secondary;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int)(primary ^ (primary >>> 32) ^ secondary ^ (secondary >>> 32));
+	}
+
+	@Override
+	public String toString() {
+		byte[] buf = new byte[32];
+		return new String(buf, 0, writeHex(secondary, buf, writeHex(primary, buf, 0)));
+	}
+
+}
@@ -0,0 +1,306 @@
+/*
+j8583 A Java implementation of the ISO8583 protocol
+Copyright (C) 2011 Enrique Zamudio Lopez
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+*/
+package com.solab.iso8583.util;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/** Converts between bytes and characters for a specific charset, which is resolved only once,
+ * when the codec is created. Single-byte charsets (US-ASCII, ISO-8859-1, the EBCDIC code pages
+ * such as Cp037 and Cp1047, etc.) are converted with lookup tables built from the JDK's own
+ * charset, so the results are the same but without going through a CharsetDecoder for each
+ * field. Other charsets use a CharsetDecoder, with a fast path for runs of ASCII characters in
+ * UTF-8.
+ * <P>
+ * Malformed input and unmappable characters are replaced, just like String does.
+ * Instances are immutable and thread-safe; use {@link #forName(String)} to get them.
+ *
+ * @author Enrique Zamudio
+ */
+public final class CharCodec {
+
+	/** The codecs by the names they were requested with, including aliases. */
+	private static final ConcurrentMap<String, CharCodec> CODECS = new ConcurrentHashMap<String, CharCodec>();
+	/** The single codec for each charset, whatever name it was requested with. */
+	private static final ConcurrentMap<Charset, CharCodec> CANONICAL = new ConcurrentHashMap<Charset, CharCodec>();
+	private static final String ASCII_CHARS = "0123456789ABCDEFabcdef -";
+	private static final byte[] ASCII_BYTES = new byte[ASCII_CHARS.length()];
+
+	static {
+		for (int i = 0; i < ASCII_BYTES.length; i++) {
+			ASCII_BYTES[i] = (byte)ASCII_CHARS.charAt(i);
+		}
+	}
+
+	private final Charset charset;
+	/** The character for each byte, only for single-byte charsets. */
+	private final char[] decodeTable;
+	/** The byte for each character, only for single-byte charsets. */
+	private final byte[] encodeTable;
+	private final boolean utf8;
+	private final boolean asciiCompatible;
+
+	private CharCodec(Charset cs) {
+		charset = cs;
+		utf8 = "UTF-8".equals(cs.name());
+		final CharsetEncoder enc = cs.canEncode() ? cs.newEncoder() : null;
+		if (enc != null && enc.maxBytesPerChar() <= 1f) {
+			decodeTable = new char[256];
+			encodeTable = new byte[65536];
+			Arrays.fill(encodeTable, enc.replacement()[0]);
+			final CharsetDecoder dec = cs.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			final byte[] b = new byte[1];
+			for (int i = 255; i >= 0; i--) {
+				b[0] = (byte)i;
+				CharBuffer cb = CharBuffer.allocate(2);
+				dec.reset();
+				dec.decode(ByteBuffer.wrap(b), cb, true);
+				dec.flush(cb);
+				final char c = cb.position() == 1 ? cb.get(0) : '\ufffd';
+				decodeTable[i] = c;
+				if (c != '\ufffd') {
+					//Going down, so that the lowest byte wins if two of them decode to the same char
+					encodeTable[c] = (byte)i;
+				}
+			}
+		} else {
+			decodeTable = null;
+			encodeTable = null;
+		}
+		asciiCompatible = Arrays.equals(ASCII_CHARS.getBytes(cs), ASCII_BYTES);
+	}
+
+	/** Returns the codec for the specified charset name. Aliases of the same charset return the
+	 * same codec.
+	 * @throws IllegalArgumentException if the charset is not supported. */
+	public static CharCodec forName(String name) {
+		CharCodec codec = CODECS.get(name);
+		if (codec == null) {
+			codec = forCharset(Charset.forName(name));
+			CODECS.putIfAbsent(name, codec);
+		}
+		return codec;
+	}
+
+	/** Returns the codec for the specified charset. There's only one codec for each charset. */
+	public static CharCodec forCharset(Charset cs) {
+		CharCodec codec = CANONICAL.get(cs);
+		if (codec == null) {
+			codec = new CharCodec(cs);
+			CharCodec prev = CANONICAL.putIfAbsent(cs, codec);
+			if (prev != null) {
+				codec = prev;
+			}
+		}
+		return codec;
+	}
+
+	/** Returns the codec for the platform's default charset (the file.encoding system property). */
+	public static CharCodec getDefault() {
+		return DefaultHolder.CODEC;
+	}
+
+	/** Resolves the default codec the first time it's needed. */
+	private static final class DefaultHolder {
+		static final CharCodec CODEC = forCharset(Charset.defaultCharset());
+	}
+
+	/** Returns the charset of this codec. */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/** Returns the canonical name of the charset. */
+	public String getName() {
+		return charset.name();
+	}
+
+	/** Returns true if the charset uses exactly one byte per character. */
+	public boolean isSingleByte() {
+		return decodeTable != null;
+	}
+
+	/** Returns true if the digits, hex letters, spaces and the minus sign are encoded as in ASCII,
+	 * one byte each, so they can be written directly. */
+	public boolean isAsciiCompatible() {
+		return asciiCompatible;
+	}
+
+	/** Decodes the specified number of bytes. */
+	public String decode(byte[] buf, int pos, int len) {
+		if (decodeTable != null) {
+			final char[] c = new char[len];
+			for (int i = 0; i < len; i++) {
+				c[i] = decodeTable[buf[pos + i] & 0xff];
+			}
+			return new String(c);
+		}
+		return new String(buf, pos, len, charset);
+	}
+
+	/** Decodes the specified number of characters, reading only as many bytes as they take and never
+	 * reading at or after the limit. The result is shorter if there aren't enough characters before
+	 * the limit. */
+	public String decodeChars(byte[] buf, int pos, int limit, int chars) {
+		if (decodeTable != null) {
+			return decode(buf, pos, Math.min(chars, limit - pos));
+		}
+		if (utf8) {
+			//Most of the time it's all ASCII
+			final int end = Math.min(pos + chars, limit);
+			int i = pos;
+			while (i < end && buf[i] >= 0) {
+				i++;
+			}
+			if (i - pos == chars) {
+				return decode(buf, pos, chars);
+			}
+		}
+		final CharBuffer out = CharBuffer.allocate(chars);
+		newDecoder().decode(ByteBuffer.wrap(buf, pos, limit - pos), out, true);
+		out.flip();
+		return out.toString();
+	}
+
+	/** Returns the number of bytes taken by the specified number of characters, starting at the
+	 * specified position, without reading at or after the limit. */
+	public int byteLength(byte[] buf, int pos, int limit, int chars) {
+		if (decodeTable != null) {
+			return Math.min(chars, limit - pos);
+		}
+		if (utf8) {
+			final int end = Math.min(pos + chars, limit);
+			int i = pos;
+			while (i < end && buf[i] >= 0) {
+				i++;
+			}
+			if (i - pos == chars) {
+				return chars;
+			}
+		}
+		final ByteBuffer in = ByteBuffer.wrap(buf, pos, limit - pos);
+		newDecoder().decode(in, CharBuffer.allocate(chars), true);
+		return in.position() - pos;
+	}
+
+	/** Returns the number of bytes that the string takes when encoded. */
+	public int encodedLength(String s) {
+		if (encodeTable != null) {
+			return s.length();
+		} else if (utf8) {
+			final int len = s.length();
+			int n = 0;
+			for (int i = 0; i < len; i++) {
+				final char c = s.charAt(i);
+				if (c < 0x80) {
+					n++;
+				} else if (c < 0x800) {
+					n += 2;
+				} else if (c >= '\ud800' && c <= '\udbff' && i + 1 < len
+						&& s.charAt(i + 1) >= '\udc00' && s.charAt(i + 1) <= '\udfff') {
+					n += 4;
+					i++;
+				} else if (c >= '\ud800' && c <= '\udfff') {
+					//Unpaired surrogates are replaced with a question mark
+					n++;
+				} else {
+					n += 3;
+				}
+			}
+			return n;
+		}
+		return s.getBytes(charset).length;
+	}
+
+	/** Encodes the string into the buffer, which must have room for {@link #encodedLength(String)} bytes.
+	 * @return The position after the last byte written. */
+	public int encode(String s, byte[] buf, int pos) {
+		if (encodeTable != null) {
+			final int len = s.length();
+			for (int i = 0; i < len; i++) {
+				buf[pos++] = encodeTable[s.charAt(i)];
+			}
+			return pos;
+		}
+		final byte[] b = s.getBytes(charset);
+		System.arraycopy(b, 0, buf, pos, b.length);
+		return pos + b.length;
+	}
+
+	/** Encodes the characters of the string from start (inclusive) to end (exclusive) into the buffer.
+	 * @return The position after the last byte written. */
+	public int encode(String s, int start, int end, byte[] buf, int pos) {
+		if (encodeTable != null) {
+			for (int i = start; i < end; i++) {
+				buf[pos++] = encodeTable[s.charAt(i)];
+			}
+			return pos;
+		}
+		return encode(s.substring(start, end), buf, pos);
+	}
+
+	/** Writes the character the specified number of times.
+	 * @return The position after the last byte written. */
+	public int fill(char c, int count, byte[] buf, int pos) {
+		if (encodeTable != null || (asciiCompatible && c < 0x80)) {
+			final byte b = encodeTable != null ? encodeTable[c] : (byte)c;
+			for (int i = 0; i < count; i++) {
+				buf[pos++] = b;
+			}
+			return pos;
+		}
+		final byte[] b = String.valueOf(c).getBytes(charset);
+		for (int i = 0; i < count; i++) {
+			System.arraycopy(b, 0, buf, pos, b.length);
+			pos += b.length;
+		}
+		return pos;
+	}
+
+	/** Encodes the string. */
+	public byte[] encode(String s) {
+		if (encodeTable != null) {
+			final byte[] b = new byte[s.length()];
+			for (int i = 0; i < b.length; i++) {
+				b[i] = encodeTable[s.charAt(i)];
+			}
+			return b;
+		}
+		return s.getBytes(charset);
+	}
+
+	private CharsetDecoder newDecoder() {
+		return charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	@Override
+	public String toString() {
+		return charset.name();
+	}
+
+}
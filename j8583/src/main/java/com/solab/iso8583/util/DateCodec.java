@@ -0,0 +1,251 @@
+/*
+j8583 A Java implementation of the ISO8583 protocol
+Copyright (C) 2011 Enrique Zamudio Lopez
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+*/
+package com.solab.iso8583.util;
+
+import java.util.TimeZone;
+
+import com.solab.iso8583.IsoType;
+
+/** Converts the digits of DATE10, DATE4, DATE_EXP and TIME fields to and from milliseconds,
+ * using plain arithmetic instead of a Calendar. The values are interpreted in the default
+ * time zone, like the Calendar did; the parts of the date that are not in the field (the year,
+ * or the whole date for TIME) are taken from the current date, which is cached and refreshed
+ * once per second.
+ * <P>
+ * DATE10 and DATE4 values more than a certain tolerance into the future are assumed to be from
+ * the previous year. The tolerance is 15 minutes by default, and can be changed in milliseconds
+ * with the j8583.future.tolerance system property.
+ *
+ * @author Enrique Zamudio
+ */
+public final class DateCodec {
+
+	private static final long FUTURE_TOLERANCE = Long.parseLong(System.getProperty("j8583.future.tolerance", "900000"));
+	private static final long DAY = 86400000L;
+
+	/** The current date, in the default time zone. Instances are immutable so they can be
+	 * replaced at any time. */
+	private static final class Context {
+		final long second;
+		final TimeZone zone;
+		final int year;
+		/** The current day, in days since the epoch. */
+		final long today;
+		/** 12 hours in the afternoon, 0 otherwise. */
+		final int halfDay;
+		Context(long now) {
+			second = now / 1000;
+			zone = TimeZone.getDefault();
+			final long local = now + zone.getOffset(now);
+			today = floorDiv(local, DAY);
+			year = (int)floorDiv(civil(today), 10000);
+			halfDay = local - today * DAY >= DAY / 2 ? 12 : 0;
+		}
+	}
+
+	private static volatile Context context = new Context(System.currentTimeMillis());
+
+	private DateCodec() {
+	}
+
+	private static Context context(long now) {
+		Context c = context;
+		if (c.second != now / 1000) {
+			c = new Context(now);
+			context = c;
+		}
+		return c;
+	}
+
+	/** Returns the tolerance into the future for DATE10 and DATE4 values, in milliseconds. */
+	public static long getFutureTolerance() {
+		return FUTURE_TOLERANCE;
+	}
+
+	/** Returns the milliseconds for a DATE10 value in the current year, or the previous one if it's
+	 * too far into the future. Values out of range roll over to the next field, as with a lenient
+	 * Calendar. */
+	public static long date10(int month, int day, int hour, int minute, int second) {
+		final long now = System.currentTimeMillis();
+		final Context c = context(now);
+		final long time = ((hour * 60L + minute) * 60 + second) * 1000;
+		long t = toUtc(c.zone, days(c.year, month, day) * DAY + time);
+		if (t > now && t - now > FUTURE_TOLERANCE) {
+			t = toUtc(c.zone, days(c.year - 1, month, lastYearsDay(c.year, month, day)) * DAY + time);
+		}
+		return t;
+	}
+
+	/** Returns the milliseconds for a DATE4 value in the current year, or the previous one if it's
+	 * too far into the future. As in previous versions, the time of day is noon instead of midnight
+	 * when the value is parsed in the afternoon. */
+	public static long date4(int month, int day) {
+		final long now = System.currentTimeMillis();
+		final Context c = context(now);
+		final long time = c.halfDay * 3600000L;
+		long t = toUtc(c.zone, days(c.year, month, day) * DAY + time);
+		if (t > now && t - now > FUTURE_TOLERANCE) {
+			t = toUtc(c.zone, days(c.year - 1, month, lastYearsDay(c.year, month, day)) * DAY + time);
+		}
+		return t;
+	}
+
+	/** Returns the milliseconds for the first day of the month of a DATE_EXP value, in the current
+	 * century. As in previous versions, the time of day is noon instead of midnight when the value
+	 * is parsed in the afternoon. */
+	public static long dateExp(int year, int month) {
+		final Context c = context(System.currentTimeMillis());
+		return toUtc(c.zone, days(c.year - (c.year % 100) + year, month, 1) * DAY + c.halfDay * 3600000L);
+	}
+
+	/** Returns the milliseconds for a TIME value in the current day. */
+	public static long time(int hour, int minute, int second) {
+		final Context c = context(System.currentTimeMillis());
+		return toUtc(c.zone, c.today * DAY + ((hour * 60L + minute) * 60 + second) * 1000);
+	}
+
+	/** Reads a number from two ASCII digits. */
+	public static int ascii(byte[] buf, int pos) {
+		return ((buf[pos] - 48) * 10) + buf[pos + 1] - 48;
+	}
+
+	/** Reads a number from a BCD-encoded byte. */
+	public static int bcd(byte[] buf, int pos) {
+		return (((buf[pos] & 0xf0) >> 4) * 10) + (buf[pos] & 0x0f);
+	}
+
+	/** Writes the date as ASCII digits, in the format of the specified type.
+	 * @return The position after the last digit. */
+	public static int format(IsoType type, long millis, byte[] buf, int pos) {
+		return write(type, millis, buf, pos, false);
+	}
+
+	/** Writes the date as BCD digits, two per byte, in the format of the specified type.
+	 * @return The position after the last byte. */
+	public static int formatBcd(IsoType type, long millis, byte[] buf, int pos) {
+		return write(type, millis, buf, pos, true);
+	}
+
+	/** Returns the date as a String in the format of the specified type. */
+	public static String format(IsoType type, long millis) {
+		final byte[] b = new byte[type.getLength()];
+		final char[] c = new char[write(type, millis, b, 0, false)];
+		for (int i = 0; i < c.length; i++) {
+			c[i] = (char)b[i];
+		}
+		return new String(c);
+	}
+
+	/** Writes the two-digit fields of the date in the order in which they're formatted, as ASCII
+	 * or BCD digits. */
+	private static int write(IsoType type, long millis, byte[] buf, int pos, boolean bcd) {
+		final TimeZone zone = context(System.currentTimeMillis()).zone;
+		final long local = millis + zone.getOffset(millis);
+		final long days = floorDiv(local, DAY);
+		final int secs = (int)((local - days * DAY) / 1000);
+		if (type == IsoType.TIME) {
+			pos = put(secs / 3600, buf, pos, bcd);
+			pos = put(secs / 60 % 60, buf, pos, bcd);
+			return put(secs % 60, buf, pos, bcd);
+		}
+		final long ymd = civil(days);
+		final long year = floorDiv(ymd, 10000);
+		final int month = (int)(ymd - year * 10000) / 100;
+		final int day = (int)(ymd % 100);
+		if (type == IsoType.DATE10) {
+			pos = put(month, buf, pos, bcd);
+			pos = put(day, buf, pos, bcd);
+			pos = put(secs / 3600, buf, pos, bcd);
+			pos = put(secs / 60 % 60, buf, pos, bcd);
+			return put(secs % 60, buf, pos, bcd);
+		} else if (type == IsoType.DATE4) {
+			pos = put(month, buf, pos, bcd);
+			return put(day, buf, pos, bcd);
+		} else if (type == IsoType.DATE_EXP) {
+			pos = put((int)(((year % 100) + 100) % 100), buf, pos, bcd);
+			return put(month, buf, pos, bcd);
+		}
+		throw new IllegalArgumentException("Cannot format date as " + type);
+	}
+
+	/** Writes a number from 0 to 99 as two ASCII digits or one BCD byte. */
+	private static int put(int v, byte[] buf, int pos, boolean bcd) {
+		if (bcd) {
+			buf[pos] = (byte)(((v / 10) << 4) | (v % 10));
+			return pos + 1;
+		}
+		buf[pos] = (byte)(v / 10 + 48);
+		buf[pos + 1] = (byte)(v % 10 + 48);
+		return pos + 2;
+	}
+
+	/** Feb 29 becomes Feb 28 when moved to a year that is not a leap year, like Calendar.add() does. */
+	private static int lastYearsDay(int year, int month, int day) {
+		final int y = year - 1;
+		if (month == 2 && day == 29 && (y % 4 != 0 || (y % 100 == 0 && y % 400 != 0))) {
+			return 28;
+		}
+		return day;
+	}
+
+	/** Converts a local time in the specified zone to UTC. Times that fall in the gap of a daylight
+	 * saving transition are moved forward, as with a lenient Calendar. */
+	private static long toUtc(TimeZone zone, long local) {
+		final int offset = zone.getOffset(local - zone.getRawOffset());
+		final long t = local - offset;
+		final int actual = zone.getOffset(t);
+		return actual == offset ? t : local - actual;
+	}
+
+	/** Returns the days since the epoch for the specified date. Months and days out of range
+	 * roll over into the next (or previous) month and year. */
+	static long days(int year, int month, int day) {
+		final int m0 = month - 1;
+		long y = year + floorDiv(m0, 12);
+		final int m = (int)(m0 - floorDiv(m0, 12) * 12) + 1;
+		if (m <= 2) {
+			y--;
+		}
+		final long era = floorDiv(y, 400);
+		final long yoe = y - era * 400;
+		final long doy = (153 * (m > 2 ? m - 3 : m + 9) + 2) / 5 + day - 1;
+		final long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+		return era * 146097 + doe - 719468;
+	}
+
+	/** Returns the year, month and day for the specified number of days since the epoch, packed
+	 * into a single number as year * 10000 + month * 100 + day. */
+	static long civil(long days) {
+		final long z = days + 719468;
+		final long era = floorDiv(z, 146097);
+		final long doe = z - era * 146097;
+		final long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		final long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		final long mp = (5 * doy + 2) / 153;
+		final int d = (int)(doy - (153 * mp + 2) / 5 + 1);
+		final int m = (int)(mp < 10 ? mp + 3 : mp - 9);
+		return (yoe + era * 400 + (m <= 2 ? 1 : 0)) * 10000 + m * 100 + d;
+	}
+
+	private static long floorDiv(long x, long y) {
+		final long q = x / y;
+		return (x % y != 0 && ((x ^ y) < 0)) ? q - 1 : q;
+	}
+
+}
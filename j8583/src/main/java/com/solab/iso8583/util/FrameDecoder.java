@@ -0,0 +1,299 @@
+/*
+j8583 A Java implementation of the ISO8583 protocol
+Copyright (C) 2011 Enrique Zamudio Lopez
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+*/
+package com.solab.iso8583.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+
+/** Splits a stream of bytes read from a socket or channel into frames, each containing one
+ * message. The decoder can be fed chunks of data of any size, as they are read; it keeps any
+ * incomplete frame until the rest of it arrives, and a single chunk can contain several frames.
+ * <P>
+ * Each frame can begin with a length header of 1 to 4 bytes, which can be binary (big-endian),
+ * ASCII decimal digits, or packed BCD digits, and can end with an ETX character, as written by
+ * {@link com.solab.iso8583.IsoMessage#write(java.io.OutputStream, int)}; in that case the length
+ * includes the ETX. If there's no length header, frames are delimited by the ETX alone.
+ * <P>
+ * Frames are passed to a {@link FrameListener} without the length header and the ETX, ready to be
+ * parsed by a MessageFactory. Any error in the framing is reported with a ParseException, after
+ * which the stream can't be trusted anymore and the connection should be closed. An exception
+ * thrown by the listener, on the other hand, only affects its own frame: the frame is not
+ * delivered again, and the frames after it in the same chunk are delivered on the next call to feed.
+ * Instances are not thread-safe; there should be one decoder per connection.
+ *
+ * @author Enrique Zamudio
+ */
+public class FrameDecoder {
+
+	/** The ways in which the length header of a frame can be encoded. */
+	public enum LengthEncoding {
+		/** An unsigned big-endian integer. */
+		BINARY,
+		/** Decimal digits, one per byte. */
+		ASCII,
+		/** Decimal digits, two per byte. */
+		BCD
+	}
+
+	/** Receives the frames found by a FrameDecoder. */
+	public interface FrameListener {
+		/** Called for each complete frame. The buffer is only valid during the call, since it can
+		 * be the decoder's internal buffer or the chunk of data that was fed to the decoder.
+		 * @param buf The buffer containing the frame.
+		 * @param offset The position in the buffer where the message begins.
+		 * @param length The length of the message, without length header or ETX. */
+		public void frameReceived(byte[] buf, int offset, int length) throws ParseException, IOException;
+	}
+
+	private final int lengthBytes;
+	private final LengthEncoding encoding;
+	private final int etx;
+	private final int maxLength;
+	/** Holds an incomplete frame, including its length header. */
+	private byte[] pending = new byte[64];
+	private int count;
+	/** The total length of the pending frame, including the header; -1 if not yet known. */
+	private int total = -1;
+	/** The data that followed a frame whose listener threw an exception, to be processed
+	 * before the next chunk. */
+	private byte[] unread;
+	/** Holds the data read from direct buffers; reused for subsequent chunks. */
+	private byte[] scratch;
+
+	/** Creates a new decoder.
+	 * @param lengthBytes The length of the length header, from 0 to 4 bytes.
+	 * @param encoding The encoding of the length header.
+	 * @param etx The character that ends each frame, or -1 if the frames don't end with an ETX.
+	 * @param maxLength The maximum length of a frame, not counting the length header. Longer
+	 * frames cause a ParseException. */
+	public FrameDecoder(int lengthBytes, LengthEncoding encoding, int etx, int maxLength) {
+		if (lengthBytes < 0 || lengthBytes > 4) {
+			throw new IllegalArgumentException("The length header can have 0 to 4 bytes");
+		} else if (lengthBytes == 0 && etx < 0) {
+			throw new IllegalArgumentException("Frames without length header need an ETX");
+		} else if (encoding == null && lengthBytes > 0) {
+			throw new IllegalArgumentException("The length header encoding cannot be null");
+		} else if (maxLength < 1) {
+			throw new IllegalArgumentException("Invalid maximum frame length " + maxLength);
+		}
+		this.lengthBytes = lengthBytes;
+		this.encoding = encoding;
+		this.etx = etx;
+		this.maxLength = maxLength;
+	}
+
+	/** Feeds a chunk of data to the decoder, calling the listener for each frame that is completed.
+	 * Complete frames are passed to the listener straight from the specified buffer, without being
+	 * copied; only incomplete frames are kept until the rest of their data arrives.
+	 * @return The number of frames that were completed. */
+	public int feed(byte[] buf, int offset, int length, FrameListener listener) throws ParseException, IOException {
+		if (offset < 0 || length < 0 || offset + length > buf.length) {
+			throw new IndexOutOfBoundsException(String.format("Invalid region offset %d length %d for buffer of length %d",
+				offset, length, buf.length));
+		}
+		if (unread != null) {
+			//This only happens after the listener threw an exception
+			final byte[] b = new byte[unread.length + length];
+			System.arraycopy(unread, 0, b, 0, unread.length);
+			System.arraycopy(buf, offset, b, unread.length, length);
+			unread = null;
+			buf = b;
+			offset = 0;
+			length = b.length;
+		}
+		final int end = offset + length;
+		int pos = offset;
+		int frames = 0;
+		//First complete the frame left over from the previous chunk, if any
+		if (count > 0) {
+			pos = fill(buf, pos, end);
+			if (total < 0 || count < total) {
+				return 0;
+			}
+			//The frame is cleared before it's delivered, so it's not delivered again if the listener fails
+			final int len = total;
+			count = 0;
+			total = -1;
+			deliver(pending, 0, len, listener, buf, pos, end);
+			frames++;
+		}
+		while (pos < end) {
+			final int frameEnd = frameEnd(buf, pos, end);
+			if (frameEnd < 0) {
+				//Keep the rest for the next chunk
+				pos = fill(buf, pos, end);
+				break;
+			}
+			deliver(buf, pos, frameEnd, listener, buf, frameEnd, end);
+			frames++;
+			pos = frameEnd;
+		}
+		return frames;
+	}
+
+	/** Feeds all the remaining data in the buffer to the decoder, leaving the buffer's position
+	 * at its limit, even if the listener throws an exception. Data from a direct buffer is copied
+	 * into an internal array that is reused for subsequent chunks. See {@link #feed(byte[], int, int, FrameListener)}.
+	 * @return The number of frames that were completed. */
+	public int feed(ByteBuffer buf, FrameListener listener) throws ParseException, IOException {
+		final int len = buf.remaining();
+		if (buf.hasArray()) {
+			final int pos = buf.arrayOffset() + buf.position();
+			//The chunk is consumed even if the listener throws, since the rest of it is kept
+			buf.position(buf.limit());
+			return feed(buf.array(), pos, len, listener);
+		}
+		if (scratch == null || scratch.length < len) {
+			scratch = new byte[len];
+		}
+		buf.get(scratch, 0, len);
+		return feed(scratch, 0, len, listener);
+	}
+
+	/** Returns the number of bytes of an incomplete frame that the decoder is holding, plus any
+	 * data left unprocessed when the listener threw an exception. */
+	public int getPendingLength() {
+		return count + (unread == null ? 0 : unread.length);
+	}
+
+	/** Discards any incomplete frame, and any data left unprocessed when the listener threw an exception. */
+	public void reset() {
+		count = 0;
+		total = -1;
+		unread = null;
+	}
+
+	/** Returns the position right after the complete frame that begins at the specified position,
+	 * or -1 if the frame is not complete before the end. */
+	private int frameEnd(byte[] buf, int pos, int end) throws ParseException {
+		if (lengthBytes == 0) {
+			for (int i = pos; i < end; i++) {
+				if (buf[i] == (byte)etx) {
+					if (i - pos + 1 > maxLength) {
+						throw new ParseException(String.format("Frame length %d exceeds maximum %d", i - pos + 1, maxLength), pos);
+					}
+					return i + 1;
+				}
+			}
+			if (end - pos > maxLength) {
+				throw new ParseException(String.format("No ETX found within %d bytes", maxLength), pos);
+			}
+			return -1;
+		}
+		if (end - pos < lengthBytes) {
+			return -1;
+		}
+		final int len = readLength(buf, pos);
+		return end - pos < lengthBytes + len ? -1 : pos + lengthBytes + len;
+	}
+
+	/** Copies into the pending buffer as much of the current frame as there is in the specified
+	 * range, and returns the position after the last byte copied. */
+	private int fill(byte[] buf, int pos, int end) throws ParseException {
+		int need;
+		if (lengthBytes == 0) {
+			int i = pos;
+			while (i < end && buf[i] != (byte)etx) {
+				i++;
+			}
+			if (i < end) {
+				total = count + i - pos + 1;
+			}
+			need = i < end ? i - pos + 1 : end - pos;
+			if (count + need > maxLength) {
+				throw new ParseException(String.format("No ETX found within %d bytes", maxLength), pos);
+			}
+		} else if (count < lengthBytes) {
+			need = Math.min(lengthBytes - count, end - pos);
+			append(buf, pos, need);
+			pos += need;
+			if (count < lengthBytes) {
+				return pos;
+			}
+			total = lengthBytes + readLength(pending, 0);
+			need = Math.min(total - count, end - pos);
+		} else {
+			need = Math.min(total - count, end - pos);
+		}
+		append(buf, pos, need);
+		return pos + need;
+	}
+
+	private void append(byte[] buf, int pos, int len) {
+		if (count + len > pending.length) {
+			byte[] b = new byte[Math.max(pending.length * 2, count + len)];
+			System.arraycopy(pending, 0, b, 0, count);
+			pending = b;
+		}
+		System.arraycopy(buf, pos, pending, count, len);
+		count += len;
+	}
+
+	/** Decodes the length header at the specified position and checks it against the maximum length. */
+	private int readLength(byte[] buf, int pos) throws ParseException {
+		int len = 0;
+		for (int i = pos; i < pos + lengthBytes; i++) {
+			final int b = buf[i] & 0xff;
+			if (encoding == LengthEncoding.BINARY) {
+				len = (len << 8) | b;
+			} else if (encoding == LengthEncoding.ASCII) {
+				if (b < '0' || b > '9') {
+					throw new ParseException(String.format("Invalid ASCII length header %02x", b), i);
+				}
+				len = len * 10 + b - '0';
+			} else {
+				if ((b >> 4) > 9 || (b & 0x0f) > 9) {
+					throw new ParseException(String.format("Invalid BCD length header %02x", b), i);
+				}
+				len = len * 100 + (b >> 4) * 10 + (b & 0x0f);
+			}
+		}
+		if (len < 0 || len > maxLength) {
+			throw new ParseException(String.format("Frame length %d exceeds maximum %d", len, maxLength), pos);
+		} else if (etx > -1 && len == 0) {
+			throw new ParseException("Frame length must include the ETX", pos);
+		}
+		return len;
+	}
+
+	/** Checks the ETX of the frame and passes the message to the listener. If the listener throws an
+	 * exception, the rest of the chunk (from next to chunkEnd) is kept for the next call to feed. */
+	private void deliver(byte[] buf, int start, int end, FrameListener listener,
+			byte[] chunk, int next, int chunkEnd) throws ParseException, IOException {
+		int last = end;
+		if (etx > -1) {
+			if (buf[end - 1] != (byte)etx) {
+				throw new ParseException("Frame does not end with ETX", end - 1);
+			}
+			last--;
+		}
+		boolean ok = false;
+		try {
+			listener.frameReceived(buf, start + lengthBytes, last - start - lengthBytes);
+			ok = true;
+		} finally {
+			if (!ok && next < chunkEnd) {
+				unread = new byte[chunkEnd - next];
+				System.arraycopy(chunk, next, unread, 0, unread.length);
+			}
+		}
+	}
+
+}
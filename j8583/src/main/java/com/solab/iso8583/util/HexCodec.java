@@ -6,20 +6,35 @@ public class HexCodec {
 	static final char[] HEX = new char[]{ '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
 
 	public static String hexEncode(byte[] buffer) {
-		if (buffer.length == 0) {
+		return hexEncode(buffer, 0, buffer.length);
+	}
+
+	/** Encodes the specified number of bytes, starting at the specified offset. */
+	public static String hexEncode(byte[] buffer, int offset, int length) {
+		if (length == 0) {
 			return "";
 		}
 		int holder = 0;
-		char[] chars = new char[buffer.length * 2];
-		for (int i = 0; i < buffer.length; i++) {
-			holder = (buffer[i] & 0xf0) >> 4;
+		char[] chars = new char[length * 2];
+		for (int i = 0; i < length; i++) {
+			holder = (buffer[offset + i] & 0xf0) >> 4;
 			chars[i * 2] = HEX[holder];
-			holder = buffer[i] & 0x0f;
+			holder = buffer[offset + i] & 0x0f;
 			chars[(i * 2) + 1] = HEX[holder];
 		}
 		return new String(chars);
 	}
 
+	/** Writes the hex digits of the bytes into the buffer as ASCII characters.
+	 * @return The position after the last digit. */
+	public static int hexEncode(byte[] src, int offset, int length, byte[] buf, int pos) {
+		for (int i = offset; i < offset + length; i++) {
+			buf[pos++] = (byte)HEX[(src[i] & 0xf0) >> 4];
+			buf[pos++] = (byte)HEX[src[i] & 0x0f];
+		}
+		return pos;
+	}
+
 	public static byte[] hexDecode(String hex) {
 		//A null string returns an empty array
 		if (hex == null || hex.length() == 0) {
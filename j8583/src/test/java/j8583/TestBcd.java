@@ -0,0 +1,67 @@
+package j8583;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.solab.iso8583.IsoType;
+import com.solab.iso8583.IsoValue;
+import com.solab.iso8583.util.Bcd;
+import com.solab.iso8583.util.HexCodec;
+
+/** Tests packing numbers into BCD and reading them back.
+ *
+ * @author Enrique Zamudio
+ */
+public class TestBcd {
+
+	@Test
+	public void testEncodeDecode() {
+		byte[] buf = new byte[10];
+		Assert.assertEquals(4, Bcd.encode(12345, 5, buf, 1));
+		Assert.assertArrayEquals(new byte[]{ 0, 1, 0x23, 0x45, 0 }, Arrays.copyOf(buf, 5));
+		Assert.assertEquals(12345, Bcd.decode(buf, 1, 3));
+		Assert.assertEquals("012345", Bcd.decodeDigits(buf, 1, 6));
+		Assert.assertEquals("12345", Bcd.decodeDigits(buf, 1, 5));
+		Assert.assertEquals(9, Bcd.encode(999999999999999999L, 18, buf, 0));
+		Assert.assertEquals(999999999999999999L, Bcd.decode(buf, 0, 9));
+		buf[0] = (byte)0x1a;
+		Assert.assertEquals(-1, Bcd.decode(buf, 0, 9));
+		Assert.assertEquals(2, Bcd.encode("123", buf, 0, 2));
+		Assert.assertArrayEquals(new byte[]{ 1, 0x23 }, Arrays.copyOf(buf, 2));
+	}
+
+	@Test
+	public void testTooLong() {
+		byte[] buf = new byte[4];
+		for (long v : new long[]{ 1000, 100000, -1 }) {
+			try {
+				Bcd.encode(v, 3, buf, 0);
+				Assert.fail("Encoded " + v);
+			} catch (IllegalArgumentException ex) {
+				//expected
+			}
+		}
+	}
+
+	@Test
+	public void testSameAsString() {
+		Object[][] values = {
+				{ IsoType.NUMERIC, 0L, 6 }, { IsoType.NUMERIC, 123, 6 }, { IsoType.NUMERIC, 12345, 5 },
+				{ IsoType.NUMERIC, 999999999999999999L, 18 }, { IsoType.NUMERIC, "42", 4 },
+				{ IsoType.AMOUNT, new BigDecimal("0"), 0 }, { IsoType.AMOUNT, new BigDecimal("501.25"), 0 },
+				{ IsoType.AMOUNT, new BigDecimal("9999999999.99"), 0 }, { IsoType.AMOUNT, new BigDecimal("12.345"), 0 },
+		};
+		for (Object[] v : values) {
+			IsoValue<Object> iv = new IsoValue<Object>((IsoType)v[0], v[1], (Integer)v[2]);
+			byte[] expected = HexCodec.hexDecode(iv.toString());
+			byte[] buf = new byte[expected.length];
+			Assert.assertEquals(expected.length, iv.getEncodedLength(true));
+			Assert.assertEquals(expected.length, iv.write(buf, 0, true));
+			Assert.assertArrayEquals(iv.toString(), expected, buf);
+		}
+	}
+
+}
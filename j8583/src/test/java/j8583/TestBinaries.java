@@ -12,7 +12,10 @@ import org.junit.Before;
 import org.junit.Test;
 
 import com.solab.iso8583.IsoMessage;
+import com.solab.iso8583.IsoMessageView;
 import com.solab.iso8583.MessageFactory;
+import com.solab.iso8583.MessagePeek;
+import com.solab.iso8583.util.Bitmap;
 import com.solab.iso8583.util.HexCodec;
 
 /** Test binary message encoding and binary fields. */
@@ -85,4 +88,57 @@ public class TestBinaries {
 		Assert.assertEquals(bin.getObjectValue(7).toString(), bin2.getObjectValue(7).toString());
 	}
 
+	@Test
+	public void testLazyParsing() throws ParseException, UnsupportedEncodingException {
+		mfactBin.setLazyParsing(true);
+		mfactAscii.setLazyParsing(true);
+		testParsed(mfactBin.parseMessage(mfactBin.newMessage(0x600).writeData(), 0));
+		testParsed(mfactAscii.parseMessage(mfactAscii.newMessage(0x600).writeData(), 0));
+	}
+
+	@Test
+	public void testPeek() throws ParseException {
+		byte[] data = mfactBin.newMessage(0x600).writeData();
+		Bitmap fields = new Bitmap();
+		fields.set(62);
+		fields.set(102);
+		MessagePeek peek = new MessagePeek(fields);
+		Assert.assertTrue(peek.peek(mfactBin, data, 0, data.length, 0));
+		Assert.assertEquals(0x600, peek.getType());
+		Assert.assertEquals(16, peek.getLength(62));
+		Assert.assertEquals(0x01, data[peek.getOffset(62)]);
+		Assert.assertEquals("Field of type LLLVAR", new String(data, peek.getOffset(102), peek.getLength(102)));
+	}
+
+	@Test
+	public void testView() throws ParseException, UnsupportedEncodingException {
+		byte[] data = mfactBin.newMessage(0x600).writeData();
+		IsoMessage m = mfactBin.parseMessage(data, 0);
+		IsoMessageView view = new IsoMessageView(mfactBin, 0);
+		Assert.assertTrue(view.wrap(data, 0, data.length));
+		Assert.assertEquals(0x600, view.getType());
+		Assert.assertEquals(123400, view.getAmountCents(4));
+		Assert.assertEquals(123, view.getLong(11));
+		Assert.assertEquals(Long.parseLong(m.getField(7).toString()), view.getLong(7));
+		Assert.assertEquals(-1, view.getLong(41));
+		Assert.assertEquals(-1, view.getAmountCents(11));
+		StringBuilder sb = new StringBuilder();
+		Assert.assertEquals(20, view.getAsciiInto(102, sb));
+		Assert.assertEquals("Field of type LLLVAR", sb.toString());
+	}
+
+	@Test
+	public void testParseInPlace() throws ParseException, UnsupportedEncodingException {
+		byte[] data = mfactBin.newMessage(0x600).writeData();
+		byte[] buf = new byte[data.length + 32];
+		Arrays.fill(buf, (byte)0x55);
+		System.arraycopy(data, 0, buf, 16, data.length);
+		testParsed(mfactBin.parseMessage(buf, 16, data.length, 0));
+		data = mfactAscii.newMessage(0x600).writeData();
+		buf = new byte[data.length + 32];
+		Arrays.fill(buf, (byte)'1');
+		System.arraycopy(data, 0, buf, 16, data.length);
+		testParsed(mfactAscii.parseMessage(buf, 16, data.length, 0));
+	}
+
 }
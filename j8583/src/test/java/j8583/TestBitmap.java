@@ -0,0 +1,99 @@
+package j8583;
+
+import java.text.ParseException;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.solab.iso8583.util.Bitmap;
+
+public class TestBitmap {
+
+	@Test
+	public void testFields() {
+		Bitmap bm = new Bitmap();
+		Assert.assertEquals(-1, bm.nextField(0));
+		Assert.assertEquals(-1, bm.lastField());
+		int[] fields = { 2, 3, 63, 64, 65, 100, 127, 128 };
+		for (int f : fields) {
+			bm.set(f);
+		}
+		Assert.assertEquals(fields.length, bm.size());
+		int k = 0;
+		for (int f = bm.nextField(1); f > 0; f = bm.nextField(f)) {
+			Assert.assertEquals(fields[k++], f);
+		}
+		Assert.assertEquals(fields.length, k);
+		Assert.assertEquals(128, bm.lastField());
+		Assert.assertEquals(-1, bm.nextField(128));
+		bm.clear(128);
+		bm.clear(3);
+		Assert.assertFalse(bm.get(3));
+		Assert.assertTrue(bm.get(2));
+		Assert.assertEquals(63, bm.nextField(2));
+		Assert.assertEquals(127, bm.lastField());
+		bm.set(1);
+		Assert.assertEquals(1, bm.nextField(0));
+	}
+
+	@Test
+	public void testClearAfter() {
+		Bitmap bm = new Bitmap();
+		bm.set(2);
+		bm.set(64);
+		bm.set(65);
+		bm.set(128);
+		bm.clearAfter(128);
+		Assert.assertEquals(4, bm.size());
+		bm.clearAfter(65);
+		Assert.assertEquals(65, bm.lastField());
+		bm.clearAfter(64);
+		Assert.assertEquals(64, bm.lastField());
+		bm.clearAfter(63);
+		Assert.assertEquals(2, bm.lastField());
+		bm.clearAfter(0);
+		Assert.assertEquals(0, bm.size());
+	}
+
+	@Test
+	public void testAsciiRoundTrip() throws ParseException {
+		Bitmap bm = new Bitmap();
+		bm.set(1);
+		bm.set(3);
+		bm.set(11);
+		bm.set(70);
+		byte[] buf = new byte[32];
+		Assert.assertEquals(32, bm.write(buf, 0, false));
+		Assert.assertEquals("A0200000000000000400000000000000", new String(buf));
+		Bitmap other = new Bitmap();
+		Assert.assertEquals(32, other.readAscii("a0200000000000000400000000000000".getBytes(), 0, 32));
+		Assert.assertEquals(bm, other);
+	}
+
+	@Test
+	public void testBinaryRoundTrip() throws ParseException {
+		Bitmap bm = new Bitmap();
+		bm.set(7);
+		bm.set(64);
+		byte[] buf = new byte[10];
+		Assert.assertEquals(9, bm.write(buf, 1, true));
+		Assert.assertEquals(2, buf[1]);
+		Assert.assertEquals(1, buf[8]);
+		Bitmap other = new Bitmap();
+		other.set(100);
+		Assert.assertEquals(9, other.readBinary(buf, 1, 10));
+		Assert.assertEquals(bm, other);
+	}
+
+	@Test(expected=ParseException.class)
+	public void testInvalidAscii() throws ParseException {
+		new Bitmap().readAscii("0123456789ABCDEG".getBytes(), 0, 16);
+	}
+
+	@Test(expected=ParseException.class)
+	public void testMissingSecondary() throws ParseException {
+		new Bitmap().readAscii("80000000000000000000".getBytes(), 0, 20);
+	}
+
+}
@@ -0,0 +1,76 @@
+package j8583;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.solab.iso8583.IsoMessage;
+import com.solab.iso8583.IsoType;
+import com.solab.iso8583.MessageFactory;
+import com.solab.iso8583.parse.FieldParseInfo;
+import com.solab.iso8583.util.CharCodec;
+
+/** Checks that the codecs give the same results as the JDK.
+ *
+ * @author Enrique Zamudio
+ */
+public class TestCharCodec {
+
+	private static final String TEXT = "Hola, qu\u00e9 tal? \u20ac100 \u00f1and\u00fa {[|]} ~\u0001";
+
+	@Test
+	public void testSameAsJdk() throws UnsupportedEncodingException {
+		byte[] all = new byte[256];
+		for (int i = 0; i < 256; i++) {
+			all[i] = (byte)i;
+		}
+		for (String enc : new String[]{ "US-ASCII", "ISO-8859-1", "Cp037", "Cp1047", "windows-1252", "UTF-8" }) {
+			CharCodec codec = CharCodec.forName(enc);
+			Assert.assertSame(codec, CharCodec.forName(enc));
+			Assert.assertEquals(enc, !"UTF-8".equals(enc), codec.isSingleByte());
+			Assert.assertEquals(enc, new String(all, 10, 200, enc), codec.decode(all, 10, 200));
+			Assert.assertArrayEquals(enc, TEXT.getBytes(enc), codec.encode(TEXT));
+			byte[] buf = TEXT.getBytes(enc);
+			Assert.assertEquals(enc, new String(buf, enc), codec.decode(buf, 0, buf.length));
+			//Only the first 12 characters
+			String first = new String(buf, enc).substring(0, 12);
+			Assert.assertEquals(enc, first, codec.decodeChars(buf, 0, buf.length, 12));
+			Assert.assertEquals(enc, first.getBytes(enc).length, codec.byteLength(buf, 0, buf.length, 12));
+		}
+	}
+
+	/** There's a single codec for each charset, whatever name it's requested with. */
+	@Test
+	public void testAliases() {
+		Assert.assertSame(CharCodec.forName("UTF-8"), CharCodec.forName("utf8"));
+		Assert.assertSame(CharCodec.forName("ISO-8859-1"), CharCodec.forCharset(Charset.forName("latin1")));
+		Assert.assertSame(CharCodec.forName(Charset.defaultCharset().name()), CharCodec.getDefault());
+	}
+
+	@Test
+	public void testEbcdic() throws UnsupportedEncodingException, ParseException {
+		Assert.assertEquals((byte)0xc8, CharCodec.forName("Cp037").encode("H")[0]);
+		Assert.assertEquals("H", CharCodec.forName("Cp1047").decode(new byte[]{ (byte)0xc8 }, 0, 1));
+		//Fields are written and parsed in EBCDIC
+		MessageFactory mf = new MessageFactory();
+		mf.setCharacterEncoding("Cp1047");
+		Map<Integer, FieldParseInfo> guide = new HashMap<Integer, FieldParseInfo>();
+		guide.put(2, FieldParseInfo.getInstance(IsoType.LLVAR, 0, "Cp1047"));
+		guide.put(3, FieldParseInfo.getInstance(IsoType.ALPHA, 5, "Cp1047"));
+		mf.setParseMap(0x100, guide);
+		IsoMessage m = mf.newMessage(0x100);
+		m.setValue(2, "[ebcdic]", IsoType.LLVAR, 0);
+		m.setValue(3, "HELLO", IsoType.ALPHA, 5);
+		byte[] data = m.writeData();
+		Assert.assertEquals((byte)0xc8, data[data.length - 5]);
+		m = mf.parseMessage(data, 0);
+		Assert.assertEquals("[ebcdic]", m.getObjectValue(2));
+		Assert.assertEquals("HELLO", m.getObjectValue(3));
+	}
+
+}
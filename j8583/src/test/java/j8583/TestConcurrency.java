@@ -0,0 +1,127 @@
+package j8583;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.solab.iso8583.IsoMessage;
+import com.solab.iso8583.IsoType;
+import com.solab.iso8583.MessageFactory;
+import com.solab.iso8583.ParseBatch;
+
+/** Parses messages with variable-length fields of different lengths from several threads,
+ * using a single frozen MessageFactory.
+ *
+ * @author Enrique Zamudio
+ */
+public class TestConcurrency {
+
+	private static final int THREADS = 8;
+	private static final int ROUNDS = 2000;
+
+	private MessageFactory mf;
+
+	@Before
+	public void init() throws IOException {
+		mf = new MessageFactory();
+		mf.setCharacterEncoding("UTF-8");
+		mf.setConfigPath("config.xml");
+	}
+
+	private void stress(boolean binary) throws Exception {
+		mf.setUseBinaryMessages(binary);
+		mf.freeze();
+		final int hlen = mf.getIsoHeader(0x200).length();
+		//Each message has variable-length fields of a different length
+		final List<byte[]> messages = new ArrayList<byte[]>();
+		final List<String> values = new ArrayList<String>();
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < THREADS; i++) {
+			IsoMessage m = mf.newMessage(0x200);
+			//The template value has multibyte characters, which binary headers don't account for
+			m.setValue(61, "Field 61", IsoType.LLLVAR, 0);
+			m.setValue(32, sb.toString(), IsoType.LLVAR, 0);
+			m.setValue(60, sb.toString() + sb.toString(), IsoType.LLLVAR, 0);
+			m.setValue(102, Integer.toString(i), IsoType.LLVAR, 0);
+			messages.add(m.writeData());
+			values.add(sb.toString());
+			sb.append((char)('A' + i));
+		}
+		ExecutorService exec = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+			for (int t = 0; t < THREADS; t++) {
+				final int start = t;
+				results.add(exec.submit(new Callable<Integer>() {
+					public Integer call() throws Exception {
+						for (int r = 0; r < ROUNDS; r++) {
+							final int k = (start + r) % THREADS;
+							IsoMessage m = mf.parseMessage(messages.get(k), hlen);
+							Assert.assertEquals(values.get(k), m.getObjectValue(32));
+							Assert.assertEquals(values.get(k) + values.get(k), m.getObjectValue(60));
+							Assert.assertEquals(Integer.toString(k), m.getObjectValue(102));
+							Assert.assertEquals("4591700012340000=", m.getObjectValue(35));
+						}
+						return ROUNDS;
+					}
+				}));
+			}
+			for (Future<Integer> f : results) {
+				Assert.assertEquals(ROUNDS, f.get().intValue());
+			}
+		} finally {
+			exec.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testParseAll() throws Exception {
+		mf.freeze();
+		final int hlen = mf.getIsoHeader(0x200).length();
+		List<byte[]> frames = new ArrayList<byte[]>();
+		for (int i = 0; i < 1000; i++) {
+			IsoMessage m = mf.newMessage(0x200);
+			m.setValue(11, i, IsoType.NUMERIC, 6);
+			byte[] data = m.writeData();
+			if (i % 100 == 7) {
+				//Truncated frame
+				byte[] b = new byte[data.length - 10];
+				System.arraycopy(data, 0, b, 0, b.length);
+				data = b;
+			}
+			frames.add(data);
+		}
+		ParseBatch batch = mf.parseAll(frames, hlen);
+		Assert.assertEquals(1000, batch.size());
+		Assert.assertEquals(10, batch.getFailureCount());
+		for (int i = 0; i < 1000; i++) {
+			if (i % 100 == 7) {
+				Assert.assertNull(batch.getMessage(i));
+				Assert.assertTrue(batch.getError(i) instanceof ParseException);
+			} else {
+				Assert.assertNull(batch.getError(i));
+				Assert.assertEquals(i, Integer.parseInt(batch.getMessages().get(i).getField(11).toString()));
+			}
+		}
+	}
+
+	@Test
+	public void testSharedFactory() throws Exception {
+		stress(false);
+	}
+
+	@Test
+	public void testSharedFactoryBinary() throws Exception {
+		stress(true);
+	}
+
+}
@@ -3,6 +3,8 @@ package j8583;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
 
@@ -13,6 +15,9 @@ import com.solab.iso8583.IsoValue;
 import com.solab.iso8583.MessageFactory;
 import com.solab.iso8583.parse.Date10ParseInfo;
 import com.solab.iso8583.parse.Date4ParseInfo;
+import com.solab.iso8583.parse.DateExpParseInfo;
+import com.solab.iso8583.parse.TimeParseInfo;
+import com.solab.iso8583.util.DateCodec;
 
 /** Test that the dates are formatted and parsed correctly.
  * 
@@ -61,4 +66,70 @@ public class TestDates {
 		Assert.assertEquals(comp.getValue().getTime(), bin.getValue().getTime());
 	}
 
+	@Test
+	public void testSameAsCalendar() throws ParseException {
+		//Every day of the year, at different times
+		Calendar cal = Calendar.getInstance();
+		cal.set(Calendar.MONTH, Calendar.JANUARY);
+		cal.set(Calendar.DATE, 1);
+		cal.set(Calendar.HOUR_OF_DAY, 0);
+		cal.set(Calendar.MINUTE, 0);
+		cal.set(Calendar.SECOND, 0);
+		cal.set(Calendar.MILLISECOND, 0);
+		final int year = cal.get(Calendar.YEAR);
+		while (cal.get(Calendar.YEAR) == year && cal.getTimeInMillis() < System.currentTimeMillis()) {
+			Date d = cal.getTime();
+			Assert.assertEquals(String.format("%Tm%<Td%<TH%<TM%<TS", d), IsoType.DATE10.format(d));
+			Assert.assertEquals(String.format("%Ty%<Tm", d), IsoType.DATE_EXP.format(d));
+			Assert.assertEquals(d, new Date(DateCodec.date10(cal.get(Calendar.MONTH) + 1, cal.get(Calendar.DATE),
+				cal.get(Calendar.HOUR_OF_DAY), cal.get(Calendar.MINUTE), cal.get(Calendar.SECOND))));
+			cal.add(Calendar.MINUTE, 1439);
+		}
+		//Lenient values roll over
+		cal = Calendar.getInstance();
+		cal.set(Calendar.MONTH, Calendar.FEBRUARY);
+		cal.set(Calendar.DATE, 31);
+		cal.set(Calendar.HOUR_OF_DAY, 25);
+		cal.set(Calendar.MINUTE, 0);
+		cal.set(Calendar.SECOND, 0);
+		cal.set(Calendar.MILLISECOND, 0);
+		Date10ParseInfo.adjustWithFutureTolerance(cal);
+		Assert.assertEquals(cal.getTime(), new Date(DateCodec.date10(2, 31, 25, 0, 0)));
+		//Expiration date and time
+		cal = Calendar.getInstance();
+		cal.set(Calendar.HOUR, 0);
+		cal.set(Calendar.MINUTE, 0);
+		cal.set(Calendar.SECOND, 0);
+		cal.set(Calendar.MILLISECOND, 0);
+		cal.set(Calendar.DATE, 1);
+		cal.set(Calendar.YEAR, cal.get(Calendar.YEAR) - (cal.get(Calendar.YEAR) % 100) + 27);
+		cal.set(Calendar.MONTH, Calendar.MARCH);
+		Assert.assertEquals(cal.getTime(), new DateExpParseInfo().parse("2703".getBytes(), 0, null).getValue());
+		Assert.assertEquals(cal.getTime(), new DateExpParseInfo().parseBinary(new byte[]{ 0x27, 3 }, 0, null).getValue());
+		cal = Calendar.getInstance();
+		cal.set(Calendar.HOUR_OF_DAY, 21);
+		cal.set(Calendar.MINUTE, 34);
+		cal.set(Calendar.SECOND, 56);
+		cal.set(Calendar.MILLISECOND, 0);
+		Assert.assertEquals(cal.getTime(), new TimeParseInfo().parse("213456".getBytes(), 0, null).getValue());
+		Assert.assertEquals(cal.getTime(), new TimeParseInfo().parseBinary(new byte[]{ 0x21, 0x34, 0x56 }, 0, null).getValue());
+	}
+
+	@Test
+	public void testWriteDigits() throws IOException {
+		Calendar cal = new GregorianCalendar(1973, Calendar.JANUARY, 26, 21, 34, 56);
+		Date d = cal.getTime();
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		new IsoValue<Date>(IsoType.DATE10, d).write(bout, false);
+		new IsoValue<Date>(IsoType.TIME, d).write(bout, true);
+		Assert.assertEquals(IsoType.DATE10.format(d), new String(bout.toByteArray(), 0, 10, "US-ASCII"));
+		Assert.assertArrayEquals(new byte[]{ 0x21, 0x34, 0x56 }, Arrays.copyOfRange(bout.toByteArray(), 10, 13));
+		//Digits in EBCDIC
+		IsoValue<Date> v = new IsoValue<Date>(IsoType.DATE4, d);
+		v.setCharacterEncoding("Cp1047");
+		bout.reset();
+		v.write(bout, false);
+		Assert.assertArrayEquals(IsoType.DATE4.format(d).getBytes("Cp1047"), bout.toByteArray());
+	}
+
 }
@@ -1,11 +1,19 @@
 package j8583;
 
+import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.Date;
 
+import org.junit.Assert;
 import org.junit.Test;
 
+import com.solab.iso8583.AlphaValue;
+import com.solab.iso8583.AmountValue;
 import com.solab.iso8583.IsoType;
+import com.solab.iso8583.IsoValue;
+import com.solab.iso8583.LongValue;
+import com.solab.iso8583.util.CharCodec;
 
 /** Tests formatting of certain IsoTypes.
  * 
@@ -41,4 +49,78 @@ public class TestFormats {
 		assert IsoType.LLLVAR.format("hola", 0).equals("hola");
 	}
 
+	@Test
+	public void testWriteSameAsString() throws UnsupportedEncodingException {
+		Object[][] values = {
+				{ IsoType.NUMERIC, 0L, 6 }, { IsoType.NUMERIC, 123, 6 }, { IsoType.NUMERIC, 999999, 6 },
+				{ IsoType.NUMERIC, -12, 6 }, { IsoType.NUMERIC, Long.MAX_VALUE, 19 }, { IsoType.NUMERIC, "42", 4 },
+				{ IsoType.AMOUNT, new BigDecimal("0"), 0 }, { IsoType.AMOUNT, new BigDecimal("501.25"), 0 },
+				{ IsoType.AMOUNT, new BigDecimal("9999999999.99"), 0 }, { IsoType.AMOUNT, new BigDecimal("-3.5"), 0 },
+				{ IsoType.AMOUNT, new BigDecimal("12.345"), 0 },
+				{ IsoType.ALPHA, "hola", 3 }, { IsoType.ALPHA, "hola", 4 }, { IsoType.ALPHA, "hola", 10 },
+				{ IsoType.ALPHA, "", 2 }, { IsoType.ALPHA, "\u00d1and\u00fa", 8 },
+				{ IsoType.BINARY, new byte[]{ 1, 2, (byte)0xab }, 3 }, { IsoType.BINARY, new byte[]{ 1, 2, (byte)0xab }, 5 },
+				{ IsoType.BINARY, new byte[]{ 1, 2, (byte)0xab }, 2 },
+				{ IsoType.LLBIN, new byte[]{ (byte)0xff, 0, 0x7f }, 3 }, { IsoType.LLLBIN, new byte[0], 0 },
+		};
+		for (String enc : new String[]{ "ISO-8859-1", "UTF-8" }) {
+			for (Object[] v : values) {
+				IsoValue<Object> iv = new IsoValue<Object>((IsoType)v[0], v[1], (Integer)v[2]);
+				iv.setCharacterEncoding(enc);
+				String s = iv.toString();
+				byte[] expected = s.getBytes(enc);
+				if (iv.getType() == IsoType.LLBIN) {
+					expected = (String.format("%02d", s.length()) + s).getBytes(enc);
+				} else if (iv.getType() == IsoType.LLLBIN) {
+					expected = (String.format("%03d", s.length()) + s).getBytes(enc);
+				}
+				byte[] buf = new byte[iv.getEncodedLength(false) + 2];
+				Assert.assertEquals(s, expected.length, iv.getEncodedLength(false));
+				Assert.assertEquals(s, expected.length + 1, iv.write(buf, 1, false));
+				Assert.assertArrayEquals(s, expected, Arrays.copyOfRange(buf, 1, expected.length + 1));
+			}
+		}
+	}
+
+	@Test
+	public void testPrimitiveValues() throws UnsupportedEncodingException {
+		byte[] alpha = "  hola mundo".getBytes("ISO-8859-1");
+		for (String enc : new String[]{ "ISO-8859-1", "UTF-8", "Cp1047" }) {
+			IsoValue<?>[][] pairs = {
+					{ new LongValue(123, 6), new IsoValue<Long>(IsoType.NUMERIC, 123L, 6) },
+					{ new LongValue(12345, 5), new IsoValue<Long>(IsoType.NUMERIC, 12345L, 5) },
+					{ new LongValue(999999999999999999L, 18), new IsoValue<Long>(IsoType.NUMERIC, 999999999999999999L, 18) },
+					{ new AmountValue(50125), new IsoValue<BigDecimal>(IsoType.AMOUNT, new BigDecimal("501.25")) },
+					{ new AmountValue(0), new IsoValue<BigDecimal>(IsoType.AMOUNT, new BigDecimal("0.00")) },
+					{ new AlphaValue(alpha, 2, 10, CharCodec.forName("ISO-8859-1")),
+						new IsoValue<String>(IsoType.ALPHA, "hola mundo", 10) },
+			};
+			for (IsoValue<?>[] p : pairs) {
+				Assert.assertEquals(p[1].getValue(), p[0].getValue());
+				Assert.assertEquals(p[1].toString(), p[0].toString());
+				Assert.assertEquals(p[1], p[0]);
+				Assert.assertEquals(p[1].hashCode(), p[0].hashCode());
+				for (boolean binary : new boolean[]{ false, true }) {
+					p[0].setCharacterEncoding(enc);
+					p[1].setCharacterEncoding(enc);
+					byte[] expected = new byte[p[1].getEncodedLength(binary)];
+					p[1].write(expected, 0, binary);
+					byte[] buf = new byte[p[0].getEncodedLength(binary)];
+					Assert.assertEquals(buf.length, p[0].write(buf, 0, binary));
+					Assert.assertArrayEquals(p[1].toString(), expected, buf);
+				}
+			}
+		}
+		Assert.assertEquals(501.25, new AmountValue(50125).getValue().doubleValue(), 0.001);
+		Assert.assertEquals(2, new AmountValue(50125).getValue().scale());
+		for (long v : new long[]{ -1, 1000 }) {
+			try {
+				new LongValue(v, 3);
+				Assert.fail("Created LongValue " + v);
+			} catch (IllegalArgumentException ex) {
+				//expected
+			}
+		}
+	}
+
 }
@@ -0,0 +1,203 @@
+package j8583;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.solab.iso8583.IsoMessage;
+import com.solab.iso8583.IsoType;
+import com.solab.iso8583.MessageFactory;
+import com.solab.iso8583.util.FrameDecoder;
+import com.solab.iso8583.util.FrameDecoder.LengthEncoding;
+
+/** Tests the splitting of a stream into frames, with different chunk sizes and length headers.
+ *
+ * @author Enrique Zamudio
+ */
+public class TestFrameDecoder {
+
+	private MessageFactory mf;
+	private final List<String> frames = new ArrayList<String>();
+	private final FrameDecoder.FrameListener listener = new FrameDecoder.FrameListener() {
+		public void frameReceived(byte[] buf, int offset, int length) {
+			//Latin-1 keeps every byte as it is
+			try {
+				frames.add(new String(buf, offset, length, "ISO-8859-1"));
+			} catch (UnsupportedEncodingException ex) {
+				throw new RuntimeException(ex);
+			}
+		}
+	};
+
+	@Before
+	public void init() throws IOException {
+		mf = new MessageFactory();
+		mf.setCharacterEncoding("UTF-8");
+		mf.setConfigPath("config.xml");
+	}
+
+	/** Writes three messages with a binary length header and the specified ETX, as they would go on the wire. */
+	private byte[] stream(List<String> expected, int lengthBytes, int etx) throws IOException {
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		for (int i = 0; i < 3; i++) {
+			IsoMessage m = mf.newMessage(0x200);
+			m.setValue(11, i, IsoType.NUMERIC, 6);
+			m.setEtx(etx);
+			m.write(bout, lengthBytes);
+			expected.add(new String(m.writeData(), "ISO-8859-1"));
+		}
+		return bout.toByteArray();
+	}
+
+	private void feedInChunks(FrameDecoder dec, byte[] data, int chunk) throws ParseException, IOException {
+		for (int pos = 0; pos < data.length; pos += chunk) {
+			dec.feed(data, pos, Math.min(chunk, data.length - pos), listener);
+		}
+	}
+
+	@Test
+	public void testChunks() throws ParseException, IOException {
+		List<String> expected = new ArrayList<String>();
+		byte[] data = stream(expected, 2, 3);
+		for (int chunk : new int[]{ 1, 2, 3, 7, 100, data.length }) {
+			frames.clear();
+			FrameDecoder dec = new FrameDecoder(2, LengthEncoding.BINARY, 3, 4096);
+			feedInChunks(dec, data, chunk);
+			Assert.assertEquals("chunk size " + chunk, expected, frames);
+			Assert.assertEquals(0, dec.getPendingLength());
+		}
+		//Parse one of the frames
+		IsoMessage m = mf.parseMessage(frames.get(2).getBytes("ISO-8859-1"), mf.getIsoHeader(0x200).length());
+		Assert.assertEquals("000002", m.getField(11).toString());
+	}
+
+	@Test
+	public void testByteBuffer() throws ParseException, IOException {
+		List<String> expected = new ArrayList<String>();
+		byte[] data = stream(expected, 4, -1);
+		ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+		direct.put(data);
+		direct.flip();
+		FrameDecoder dec = new FrameDecoder(4, LengthEncoding.BINARY, -1, 4096);
+		Assert.assertEquals(3, dec.feed(direct, listener));
+		Assert.assertFalse(direct.hasRemaining());
+		Assert.assertEquals(expected, frames);
+	}
+
+	@Test
+	public void testAsciiAndBcdHeaders() throws ParseException, IOException {
+		FrameDecoder dec = new FrameDecoder(4, LengthEncoding.ASCII, -1, 100);
+		byte[] data = "0005hello0003abc0000".getBytes();
+		feedInChunks(dec, data, 3);
+		Assert.assertEquals(3, frames.size());
+		Assert.assertEquals("hello", frames.get(0));
+		Assert.assertEquals("abc", frames.get(1));
+		Assert.assertEquals("", frames.get(2));
+		frames.clear();
+		dec = new FrameDecoder(2, LengthEncoding.BCD, 3, 200);
+		data = new byte[105];
+		data[0] = 0x01;
+		data[1] = 0x03;
+		Arrays.fill(data, 2, 104, (byte)'x');
+		data[104] = 3;
+		Assert.assertEquals(1, dec.feed(data, 0, data.length, listener));
+		Assert.assertEquals(102, frames.get(0).length());
+	}
+
+	@Test
+	public void testEtxOnly() throws ParseException, IOException {
+		List<String> expected = new ArrayList<String>();
+		byte[] data = stream(expected, 0, 3);
+		FrameDecoder dec = new FrameDecoder(0, null, 3, 4096);
+		feedInChunks(dec, data, 5);
+		Assert.assertEquals(expected, frames);
+	}
+
+	/** A frame that the listener rejects is not delivered again, and the frames after it are not lost. */
+	@Test
+	public void testListenerFailure() throws ParseException, IOException {
+		FrameDecoder.FrameListener picky = new FrameDecoder.FrameListener() {
+			public void frameReceived(byte[] buf, int offset, int length) throws ParseException, IOException {
+				if (new String(buf, offset, length, "ISO-8859-1").equals("bad")) {
+					throw new ParseException("bad message", 0);
+				}
+				listener.frameReceived(buf, offset, length);
+			}
+		};
+		FrameDecoder dec = new FrameDecoder(4, LengthEncoding.ASCII, -1, 100);
+		//The bad frame comes straight from the chunk
+		byte[] data = "0005hello0003bad0003abc".getBytes();
+		dec.feed(data, 0, 7, picky);
+		try {
+			dec.feed(data, 7, data.length - 7, picky);
+			Assert.fail("The listener should have failed");
+		} catch (ParseException ex) {
+			Assert.assertEquals(7, dec.getPendingLength());
+		}
+		data = "0002ok".getBytes();
+		Assert.assertEquals(2, dec.feed(data, 0, data.length, picky));
+		Assert.assertEquals(Arrays.asList("hello", "abc", "ok"), frames);
+		//The bad frame is completed from the pending data
+		frames.clear();
+		data = "0003bad0003abc".getBytes();
+		dec.feed(data, 0, 5, picky);
+		try {
+			dec.feed(data, 5, data.length - 5, picky);
+			Assert.fail("The listener should have failed");
+		} catch (ParseException ex) {
+			Assert.assertEquals(7, dec.getPendingLength());
+		}
+		Assert.assertEquals(1, dec.feed(data, 0, 0, picky));
+		Assert.assertEquals(Arrays.asList("abc"), frames);
+		Assert.assertEquals(0, dec.getPendingLength());
+		//A ByteBuffer is consumed even if the listener fails, so feeding it again adds nothing
+		for (ByteBuffer bb : new ByteBuffer[]{ ByteBuffer.allocate(14), ByteBuffer.allocateDirect(14) }) {
+			frames.clear();
+			bb.put("0003bad0003abc".getBytes()).flip();
+			try {
+				dec.feed(bb, picky);
+				Assert.fail("The listener should have failed");
+			} catch (ParseException ex) {
+				Assert.assertFalse(bb.hasRemaining());
+			}
+			Assert.assertEquals(1, dec.feed(bb, picky));
+			Assert.assertEquals(Arrays.asList("abc"), frames);
+			Assert.assertEquals(0, dec.getPendingLength());
+		}
+	}
+
+	@Test(expected=ParseException.class)
+	public void testMaxLength() throws ParseException, IOException {
+		FrameDecoder dec = new FrameDecoder(2, LengthEncoding.BINARY, -1, 100);
+		dec.feed(new byte[]{ 0, 101 }, 0, 2, listener);
+	}
+
+	@Test(expected=ParseException.class)
+	public void testMaxLengthWithoutEtx() throws ParseException, IOException {
+		FrameDecoder dec = new FrameDecoder(0, null, 3, 10);
+		dec.feed("0123456".getBytes(), 0, 7, listener);
+		dec.feed("789ABC".getBytes(), 0, 6, listener);
+	}
+
+	@Test(expected=ParseException.class)
+	public void testMissingEtx() throws ParseException, IOException {
+		FrameDecoder dec = new FrameDecoder(2, LengthEncoding.ASCII, 3, 100);
+		dec.feed("04abcd".getBytes(), 0, 6, listener);
+	}
+
+	@Test(expected=ParseException.class)
+	public void testInvalidHeader() throws ParseException, IOException {
+		FrameDecoder dec = new FrameDecoder(4, LengthEncoding.ASCII, -1, 100);
+		dec.feed("00x5hello".getBytes(), 0, 9, listener);
+	}
+
+}
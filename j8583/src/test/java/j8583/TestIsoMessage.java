@@ -1,16 +1,36 @@
 package j8583;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.Pipe;
+import java.math.BigDecimal;
 import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.solab.iso8583.CustomField;
 import com.solab.iso8583.IsoMessage;
+import com.solab.iso8583.IsoMessageView;
 import com.solab.iso8583.IsoType;
+import com.solab.iso8583.IsoValue;
 import com.solab.iso8583.MessageFactory;
+import com.solab.iso8583.MessagePeek;
+import com.solab.iso8583.parse.AlphaParseInfo;
+import com.solab.iso8583.parse.FieldParseInfo;
+import com.solab.iso8583.parse.NumericParseInfo;
+import com.solab.iso8583.util.Bitmap;
 
 /** These are very simple tests for creating and manipulating messages.
  * 
@@ -97,6 +117,255 @@ public class TestIsoMessage {
 		Assert.assertArrayEquals(b3, b2);
 	}
 
+	/** Parses a message lazily and checks that it has the same values as when parsed eagerly. */
+	@Test
+	public void testLazyParsing() throws IOException, ParseException {
+		InputStream ins = getClass().getResourceAsStream("/parse1.txt");
+		byte[] buf = new byte[400];
+		int pos = 0;
+		while (ins.available() > 0) {
+			buf[pos++] = (byte)ins.read();
+		}
+		ins.close();
+		IsoMessage eager = mf.parseMessage(buf, mf.getIsoHeader(0x210).length());
+		mf.setLazyParsing(true);
+		IsoMessage lazy = mf.parseMessage(buf, mf.getIsoHeader(0x210).length());
+		Assert.assertEquals(eager.getType(), lazy.getType());
+		Assert.assertEquals(eager.getObjectValue(41), lazy.getObjectValue(41));
+		for (int i = 2; i <= 128; i++) {
+			Assert.assertEquals(eager.hasField(i), lazy.hasField(i));
+			if (eager.hasField(i)) {
+				Assert.assertEquals(eager.getField(i).getType(), lazy.getField(i).getType());
+				//TIME values carry the current milliseconds, so compare the formatted values
+				Assert.assertEquals(eager.getField(i).toString(), lazy.getField(i).toString());
+			}
+		}
+		lazy = mf.parseMessage(buf, mf.getIsoHeader(0x210).length());
+		lazy.setValue(39, "05", IsoType.NUMERIC, 2);
+		Assert.assertEquals("05", lazy.getObjectValue(39));
+		lazy.setField(41, null);
+		Assert.assertFalse(lazy.hasField(41));
+		eager.setValue(39, "05", IsoType.NUMERIC, 2);
+		eager.setField(41, null);
+		Assert.assertArrayEquals(eager.writeData(), lazy.writeData());
+	}
+
+	/** A lazy field that decodes to null is left out of the bitmap when the message is written. */
+	@Test
+	public void testLazyNullField() throws ParseException, UnsupportedEncodingException {
+		Map<Integer, FieldParseInfo> guide = new HashMap<Integer, FieldParseInfo>();
+		guide.put(3, new NumericParseInfo(6));
+		guide.put(41, new AlphaParseInfo(8) {
+			@Override
+			public IsoValue<?> parse(byte[] buf, int pos, int limit, CustomField<?> custom) {
+				return null;
+			}
+		});
+		MessageFactory f = new MessageFactory();
+		f.setParseMap(0x800, guide);
+		f.setLazyParsing(true);
+		IsoMessage m = f.parseMessage("08002000000000800000123456ABCDEFGH".getBytes("US-ASCII"), 0);
+		Assert.assertEquals("08002000000000000000123456", new String(m.writeData(), "US-ASCII"));
+		Assert.assertFalse(m.hasField(41));
+	}
+
+	/** Parsed values that keep their bytes are copied as they are to a response. */
+	@Test
+	public void testKeepWireData() throws IOException, ParseException {
+		byte[] msg = mf.newMessage(0x200).writeData();
+		byte[] plain = mf.createResponse(mf.parseMessage(msg, mf.getIsoHeader(0x200).length())).writeData();
+		mf.setKeepWireData(true);
+		IsoMessage req = mf.parseMessage(msg, mf.getIsoHeader(0x200).length());
+		IsoMessage resp = mf.createResponse(req);
+		Assert.assertArrayEquals(plain, resp.writeData());
+		//Change the bytes of field 3 in the parsed buffer; they're copied but the value is the same
+		int f3 = new String(msg, "ISO-8859-1").indexOf("650000", 16);
+		msg[f3 + 5] = '1';
+		Assert.assertEquals("650000", resp.getObjectValue(3));
+		Assert.assertTrue(new String(resp.writeData(), "ISO-8859-1").contains("650001"));
+		//Only when written with the same encoding
+		resp.getField(3).setCharacterEncoding("ISO-8859-1");
+		Assert.assertArrayEquals(plain, resp.writeData());
+		//Lazily parsed fields keep their bytes too
+		mf.setLazyParsing(true);
+		req = mf.parseMessage(msg, mf.getIsoHeader(0x200).length());
+		Assert.assertEquals("650001", req.getObjectValue(3));
+		msg[f3 + 5] = '2';
+		Assert.assertTrue(new String(mf.createResponse(req).writeData(), "ISO-8859-1").contains("650002"));
+		mf.setKeepWireData(false);
+		req = mf.parseMessage(msg, mf.getIsoHeader(0x200).length());
+		Assert.assertEquals("650002", req.getObjectValue(3));
+		msg[f3 + 5] = '3';
+		Assert.assertTrue(new String(mf.createResponse(req).writeData(), "ISO-8859-1").contains("650002"));
+		//Aliases of the same encoding share the codec, so the bytes are still copied
+		mf.setKeepWireData(true);
+		mf.setLazyParsing(false);
+		mf.setCharacterEncoding("utf8");
+		resp = mf.createResponse(mf.parseMessage(msg, mf.getIsoHeader(0x200).length()));
+		resp.getField(3).setCharacterEncoding("UTF-8");
+		msg[f3 + 5] = '4';
+		Assert.assertTrue(new String(resp.writeData(), "ISO-8859-1").contains("650004"));
+	}
+
+	/** Parses a message that is embedded in a larger buffer, without copying it. */
+	@Test
+	public void testParsingInPlace() throws IOException, ParseException {
+		byte[] msg = mf.newMessage(0x200).writeData();
+		byte[] buf = new byte[msg.length + 100];
+		Arrays.fill(buf, (byte)'9');
+		System.arraycopy(msg, 0, buf, 40, msg.length);
+		IsoMessage m1 = mf.parseMessage(msg, mf.getIsoHeader(0x200).length());
+		IsoMessage m2 = mf.parseMessage(buf, 40, msg.length, mf.getIsoHeader(0x200).length());
+		Assert.assertEquals(m1.getType(), m2.getType());
+		Assert.assertEquals(m1.getIsoHeader(), m2.getIsoHeader());
+		for (int i = 2; i <= 128; i++) {
+			Assert.assertEquals(m1.hasField(i), m2.hasField(i));
+			if (m1.hasField(i)) {
+				Assert.assertEquals(m1.getObjectValue(i), m2.getObjectValue(i));
+			}
+		}
+		Assert.assertArrayEquals(msg, m2.writeData());
+		//The region is too short, the rest of the buffer must not be read
+		try {
+			mf.parseMessage(buf, 40, msg.length - 5, mf.getIsoHeader(0x200).length());
+			Assert.fail("Parsed a truncated message");
+		} catch (ParseException ex) {
+			//expected
+		}
+	}
+
+	@Test
+	public void testProjection() throws IOException, ParseException {
+		byte[] msg = mf.newMessage(0x200).writeData();
+		final int hlen = mf.getIsoHeader(0x200).length();
+		IsoMessage full = mf.parseMessage(msg, hlen);
+		Bitmap wanted = new Bitmap();
+		wanted.set(32);
+		wanted.set(49);
+		wanted.set(90);
+		IsoMessage m = mf.parseMessage(msg, hlen, wanted);
+		Assert.assertEquals(full.getType(), m.getType());
+		for (int i = 2; i <= 128; i++) {
+			if (i == 32 || i == 49) {
+				Assert.assertEquals(full.getObjectValue(i), m.getObjectValue(i));
+			} else {
+				Assert.assertFalse(m.hasField(i));
+			}
+		}
+		//The fields after the last requested one are not even read
+		wanted.clear(90);
+		m = mf.parseMessage(msg, 0, msg.length - 5, hlen, wanted);
+		Assert.assertEquals(full.getObjectValue(49), m.getObjectValue(49));
+	}
+
+	@Test
+	public void testPeek() throws IOException, ParseException {
+		byte[] msg = mf.newMessage(0x200).writeData();
+		final int hlen = mf.getIsoHeader(0x200).length();
+		byte[] buf = new byte[msg.length + 10];
+		System.arraycopy(msg, 0, buf, 10, msg.length);
+		Bitmap fields = new Bitmap();
+		fields.set(3);
+		fields.set(32);
+		fields.set(41);
+		fields.set(49);
+		MessagePeek peek = new MessagePeek(fields);
+		Assert.assertTrue(peek.peek(mf, buf, 10, msg.length, hlen));
+		Assert.assertEquals(0x200, peek.getType());
+		Assert.assertTrue(peek.hasField(3));
+		Assert.assertFalse(peek.hasField(41));
+		Assert.assertFalse(peek.isLocated(41));
+		Assert.assertFalse(peek.isLocated(35));
+		Assert.assertEquals("650000", new String(buf, 10 + peek.getOffset(3), peek.getLength(3)));
+		Assert.assertEquals("456", new String(buf, 10 + peek.getOffset(32), peek.getLength(32)));
+		Assert.assertEquals("484", new String(buf, 10 + peek.getOffset(49), peek.getLength(49)));
+		//A direct buffer gives the same offsets, relative to its position
+		ByteBuffer direct = ByteBuffer.allocateDirect(buf.length);
+		direct.put(buf);
+		direct.position(10);
+		Assert.assertTrue(peek.peek(mf, direct, hlen));
+		Assert.assertEquals(10, direct.position());
+		Assert.assertEquals(0x200, peek.getType());
+		Assert.assertEquals("484", new String(msg, peek.getOffset(49), peek.getLength(49)));
+		//The last field of the guide can be missing if the factory ignores it
+		msg = mf.newMessage(0x200).setValue(102, "12", IsoType.LLVAR, 0).writeData();
+		fields.set(102);
+		peek = new MessagePeek(fields);
+		try {
+			peek.peek(mf, msg, 0, msg.length - 4, hlen);
+			Assert.fail("Located a missing field");
+		} catch (ParseException ex) {
+			//Expected
+		}
+		mf.setIgnoreLastMissingField(true);
+		Assert.assertTrue(peek.peek(mf, msg, 0, msg.length - 4, hlen));
+		Assert.assertTrue(peek.hasField(102));
+		Assert.assertFalse(peek.isLocated(102));
+		Assert.assertEquals("650000", new String(msg, peek.getOffset(3), peek.getLength(3)));
+		//The type is known even if the bitmap is incomplete
+		try {
+			peek.peek(mf, msg, 0, hlen + 20, hlen);
+			Assert.fail("Read an incomplete bitmap");
+		} catch (ParseException ex) {
+			Assert.assertEquals(0x200, peek.getType());
+		}
+	}
+
+	@Test
+	public void testView() throws IOException, ParseException {
+		IsoMessage m = mf.newMessage(0x200);
+		m.setValue(4, new BigDecimal("1234.56"), IsoType.AMOUNT, 0);
+		m.setValue(11, 123, IsoType.NUMERIC, 6);
+		byte[] msg = m.writeData();
+		final int hlen = mf.getIsoHeader(0x200).length();
+		IsoMessage parsed = mf.parseMessage(msg, hlen);
+		byte[] buf = new byte[msg.length + 10];
+		System.arraycopy(msg, 0, buf, 10, msg.length);
+		IsoMessageView view = new IsoMessageView(mf, hlen);
+		Assert.assertTrue(view.wrap(buf, 10, msg.length));
+		Assert.assertEquals(0x200, view.getType());
+		Assert.assertTrue(view.hasField(4));
+		Assert.assertFalse(view.hasField(41));
+		Assert.assertEquals(123456, view.getAmountCents(4));
+		Assert.assertEquals(123, view.getLong(11));
+		Assert.assertEquals(650000, view.getLong(3));
+		Assert.assertEquals(-1, view.getAmountCents(3));
+		Assert.assertEquals(-1, view.getLong(41));
+		Assert.assertEquals(-1, view.fieldOffset(0));
+		char[] chars = new char[40];
+		Assert.assertEquals(40, view.getAsciiInto(43, chars, 0));
+		Assert.assertEquals(parsed.getObjectValue(43), new String(chars));
+		StringBuilder sb = new StringBuilder();
+		Assert.assertEquals(-1, view.getAsciiInto(41, sb));
+		Assert.assertEquals(3, view.getAsciiInto(49, sb));
+		Assert.assertEquals(parsed.getObjectValue(49), sb.toString());
+		Assert.assertEquals(parsed.getField(102).toString(), new String(buf, 10 + view.fieldOffset(102), view.fieldLength(102)));
+		//A direct buffer is copied, the offset is absolute
+		ByteBuffer direct = ByteBuffer.allocateDirect(buf.length);
+		direct.put(buf);
+		Assert.assertTrue(view.wrap(direct, 10, msg.length));
+		Assert.assertEquals(buf.length, direct.position());
+		Assert.assertEquals(123456, view.getAmountCents(4));
+		sb.setLength(0);
+		view.getAsciiInto(49, sb);
+		Assert.assertEquals("484", sb.toString());
+		//Heap buffers are checked against their limit too
+		ByteBuffer heap = ByteBuffer.wrap(buf);
+		heap.limit(buf.length - 1);
+		try {
+			view.wrap(heap, 10, msg.length);
+			Assert.fail("Wrapped a region past the limit");
+		} catch (IndexOutOfBoundsException ex) {
+			//Expected
+		}
+		//Field 5 is not in the guide, so none of the fields before it are available either
+		msg = m.setValue(5, 1, IsoType.NUMERIC, 12).writeData();
+		Assert.assertFalse(view.wrap(msg, 0, msg.length));
+		Assert.assertTrue(view.hasField(3));
+		Assert.assertEquals(-1, view.fieldOffset(3));
+		Assert.assertEquals(-1, view.getLong(4));
+	}
+
 	@Test
 	public void testTemplating() {
 		IsoMessage iso1 = mf.newMessage(0x200);
@@ -113,4 +382,270 @@ public class TestIsoMessage {
 		assert cf48_2.getValue2() == origv + 1000;
 	}
 
+	/** The fields of a message can be iterated, and they're all copied to a response. */
+	@Test
+	public void testFieldIteration() throws IOException, ParseException {
+		IsoMessage m = mf.newMessage(0x200);
+		m.setValue(128, "01234567", IsoType.ALPHA, 8);
+		m.setValue(65, "X", IsoType.ALPHA, 1);
+		m.setField(65, null);
+		int count = 0;
+		int last = 1;
+		for (int f = m.nextField(1); f > 0; f = m.nextField(f)) {
+			Assert.assertTrue(f > last);
+			Assert.assertTrue(m.hasField(f));
+			last = f;
+			count++;
+		}
+		Assert.assertEquals(128, last);
+		Assert.assertEquals(count, m.getFieldCount());
+		for (int i = 2; i <= 128; i++) {
+			if (m.hasField(i)) {
+				count--;
+			}
+		}
+		Assert.assertEquals(0, count);
+		Assert.assertFalse(m.hasField(65));
+		Assert.assertFalse(m.hasField(1));
+		IsoMessage resp = mf.createResponse(m);
+		Assert.assertEquals("01234567", resp.getObjectValue(128));
+		//Fields of lazily parsed messages are present until they're decoded
+		mf.setLazyParsing(true);
+		IsoMessage lazy = mf.parseMessage(mf.newMessage(0x200).writeData(), mf.getIsoHeader(0x200).length());
+		Assert.assertEquals(mf.newMessage(0x200).getFieldCount(), lazy.getFieldCount());
+		lazy.setField(3, null);
+		Assert.assertFalse(lazy.hasField(3));
+		Assert.assertEquals(mf.newMessage(0x200).getFieldCount() - 1, lazy.getFieldCount());
+	}
+
+	/** A response that overlays the request is the same as one with copies of its fields. */
+	@Test
+	public void testResponseOverlay() throws IOException, ParseException {
+		IsoMessage req = mf.parseMessage(mf.newMessage(0x200).writeData(), mf.getIsoHeader(0x200).length());
+		req.setValue(128, "X", IsoType.ALPHA, 1);
+		IsoMessage copy = mf.createResponse(req);
+		IsoMessage overlay = mf.createResponseOverlay(req);
+		Assert.assertEquals(0x210, overlay.getType());
+		Assert.assertEquals(copy.getFieldCount(), overlay.getFieldCount());
+		Assert.assertArrayEquals(copy.writeData(), overlay.writeData());
+		Assert.assertSame(req.getField(3), overlay.getField(3));
+		Assert.assertSame(mf.getMessageTemplate(0x210).getField(70), overlay.getField(70));
+		//Changes to the response don't touch the request
+		for (IsoMessage m : new IsoMessage[]{ copy, overlay }) {
+			m.setValue(39, "00", IsoType.NUMERIC, 2);
+			m.setValue(3, "999999", IsoType.NUMERIC, 6);
+			m.setField(128, null);
+			m.setField(70, null);
+		}
+		Assert.assertArrayEquals(copy.writeData(), overlay.writeData());
+		Assert.assertFalse(overlay.hasField(128));
+		Assert.assertNull(overlay.getField(70));
+		Assert.assertTrue(mf.getMessageTemplate(0x210).hasField(70));
+		Assert.assertEquals("999999", overlay.getObjectValue(3));
+		Assert.assertEquals("650000", req.getObjectValue(3));
+		Assert.assertTrue(req.hasField(128));
+		Assert.assertFalse(req.hasField(39));
+	}
+
+	/** Messages created from the templates of a frozen factory are written the same way. */
+	@Test
+	public void testPrecompiledTemplates() throws IOException {
+		for (boolean binary : new boolean[]{ false, true }) {
+			mf.setUseBinaryMessages(binary);
+			MessageFactory frozen = new MessageFactory();
+			frozen.setCharacterEncoding("UTF-8");
+			frozen.setCustomField(48, new CustomField48());
+			frozen.setConfigPath("config.xml");
+			frozen.setUseBinaryMessages(binary);
+			frozen.freeze();
+			for (int type : new int[]{ 0x200, 0x210, 0x600 }) {
+				Assert.assertArrayEquals(mf.newMessage(type).writeData(), frozen.newMessage(type).writeData());
+			}
+			IsoMessage m1 = mf.newMessage(0x200);
+			IsoMessage m2 = frozen.newMessage(0x200);
+			for (IsoMessage m : new IsoMessage[]{ m1, m2 }) {
+				m.setValue(3, "123456", IsoType.NUMERIC, 6);
+				m.setValue(4, new BigDecimal("1.25"), IsoType.AMOUNT, 0);
+				m.setField(60, null);
+			}
+			Assert.assertArrayEquals(m1.writeData(), m2.writeData());
+			Assert.assertArrayEquals(mf.createResponse(m1).writeData(), frozen.createResponse(m2).writeData());
+		}
+		//Fields added to or replaced in the template after freezing are still used
+		mf.setUseBinaryMessages(false);
+		MessageFactory frozen = new MessageFactory();
+		frozen.setCharacterEncoding("UTF-8");
+		frozen.setCustomField(48, new CustomField48());
+		frozen.setConfigPath("config.xml");
+		frozen.freeze();
+		for (MessageFactory f : new MessageFactory[]{ mf, frozen }) {
+			f.getMessageTemplate(0x200).setValue(41, "TERMINAL00000001", IsoType.ALPHA, 16);
+			f.getMessageTemplate(0x200).setValue(3, "999999", IsoType.NUMERIC, 6);
+		}
+		IsoMessage m = frozen.newMessage(0x200);
+		Assert.assertEquals("TERMINAL00000001", m.getObjectValue(41));
+		Assert.assertEquals("999999", m.getObjectValue(3));
+		Assert.assertArrayEquals(mf.newMessage(0x200).writeData(), m.writeData());
+	}
+
+	@Test
+	public void testExactLength() throws IOException {
+		IsoMessage m = mf.newMessage(0x200);
+		m.setValue(4, new BigDecimal("501.25"), IsoType.AMOUNT, 0);
+		m.setValue(7, new Date(), IsoType.DATE10, 0);
+		m.setValue(11, 123, IsoType.NUMERIC, 6);
+		m.setValue(52, new byte[]{ 1, 2, 3, (byte)0xff }, IsoType.BINARY, 8);
+		m.setValue(63, "\u00d1and\u00fa \u20ac", IsoType.LLLVAR, 0);
+		m.setEtx(3);
+		//Compare with each field formatted on its own
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		bout.write(mf.getIsoHeader(0x200).getBytes());
+		bout.write("0200".getBytes());
+		for (int i = 2; i < 129; i++) {
+			if (m.hasField(i)) {
+				IsoValue<?> v = m.getField(i);
+				String s = v.toString();
+				if (v.getType() == IsoType.LLVAR) {
+					bout.write(String.format("%02d", v.getLength()).getBytes());
+				} else if (v.getType() == IsoType.LLLVAR) {
+					bout.write(String.format("%03d", v.getLength()).getBytes());
+				}
+				bout.write(s.getBytes("UTF-8"));
+			}
+		}
+		byte[] data = m.writeData();
+		byte[] fields = bout.toByteArray();
+		int bitmap = data.length - fields.length;
+		Assert.assertArrayEquals(Arrays.copyOfRange(fields, 0, 16), Arrays.copyOfRange(data, 0, 16));
+		Assert.assertArrayEquals(Arrays.copyOfRange(fields, 16, fields.length), Arrays.copyOfRange(data, 16 + bitmap, data.length));
+		//Length header, data and ETX
+		for (boolean binary : new boolean[]{ false, true }) {
+			m.setBinary(binary);
+			if (binary) {
+				m.setValue(63, "plain", IsoType.LLLVAR, 0);
+			}
+			data = m.writeData();
+			bout.reset();
+			m.write(bout, 2);
+			byte[] full = bout.toByteArray();
+			Assert.assertEquals(full.length, m.getEncodedLength(2));
+			Assert.assertEquals(data.length + 1, ((full[0] & 0xff) << 8) | (full[1] & 0xff));
+			Assert.assertArrayEquals(data, Arrays.copyOfRange(full, 2, full.length - 1));
+			Assert.assertEquals(3, full[full.length - 1]);
+			Assert.assertEquals(ByteBuffer.wrap(full), m.writeToBuffer(2));
+		}
+	}
+
+	@Test
+	public void testWriteToBuffer() throws IOException {
+		IsoMessage m = mf.newMessage(0x200);
+		m.setEtx(3);
+		byte[] expected = m.writeToBuffer(2).array();
+		for (ByteBuffer dst : new ByteBuffer[]{ ByteBuffer.allocate(1024), ByteBuffer.allocateDirect(1024) }) {
+			dst.put((byte)'x');
+			Assert.assertEquals(expected.length, m.writeTo(dst, 2));
+			Assert.assertEquals(expected.length + 1, dst.position());
+			dst.flip();
+			dst.get();
+			byte[] b = new byte[dst.remaining()];
+			dst.get(b);
+			Assert.assertArrayEquals(expected, b);
+		}
+		//Overflow leaves the buffer as it was
+		ByteBuffer small = ByteBuffer.allocate(expected.length + 3);
+		small.position(4);
+		try {
+			m.writeTo(small, 2);
+			Assert.fail("Message should not fit");
+		} catch (BufferOverflowException ex) {
+			Assert.assertEquals(4, small.position());
+			Assert.assertEquals(expected.length + 3, small.limit());
+		}
+	}
+
+	@Test
+	public void testWriteToChannel() throws IOException {
+		IsoMessage m = mf.newMessage(0x200);
+		m.setEtx(3);
+		byte[] expected = m.writeToBuffer(4).array();
+		final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		final int[] calls = new int[1];
+		//A channel that takes a few bytes at a time
+		GatheringByteChannel ch = new GatheringByteChannel() {
+			public int write(ByteBuffer src) {
+				int n = Math.min(src.remaining(), 50);
+				for (int i = 0; i < n; i++) {
+					bout.write(src.get());
+				}
+				return n;
+			}
+			public long write(ByteBuffer[] srcs, int offset, int length) {
+				calls[0]++;
+				long n = 0;
+				for (int i = offset; i < offset + length && n == 0; i++) {
+					n += write(srcs[i]);
+				}
+				return n;
+			}
+			public long write(ByteBuffer[] srcs) {
+				return write(srcs, 0, srcs.length);
+			}
+			public boolean isOpen() {
+				return true;
+			}
+			public void close() {
+			}
+		};
+		Assert.assertEquals(expected.length, m.writeTo(ch, 4));
+		Assert.assertArrayEquals(expected, bout.toByteArray());
+		Assert.assertTrue(calls[0] > 1);
+		//A channel that stops taking data fails instead of being retried forever
+		bout.reset();
+		final int[] room = new int[]{ 100 };
+		ch = new GatheringByteChannel() {
+			public int write(ByteBuffer src) {
+				int n = Math.min(src.remaining(), room[0]);
+				for (int i = 0; i < n; i++) {
+					bout.write(src.get());
+				}
+				room[0] -= n;
+				return n;
+			}
+			public long write(ByteBuffer[] srcs, int offset, int length) {
+				long n = 0;
+				for (int i = offset; i < offset + length; i++) {
+					n += write(srcs[i]);
+				}
+				return n;
+			}
+			public long write(ByteBuffer[] srcs) {
+				return write(srcs, 0, srcs.length);
+			}
+			public boolean isOpen() {
+				return true;
+			}
+			public void close() {
+			}
+		};
+		try {
+			m.writeTo(ch, 4);
+			Assert.fail("Wrote to a full channel");
+		} catch (IOException ex) {
+			Assert.assertEquals(100, bout.size());
+		}
+		//Non-blocking channels are rejected before anything is written
+		Pipe pipe = Pipe.open();
+		try {
+			pipe.sink().configureBlocking(false);
+			m.writeTo(pipe.sink(), 4);
+			Assert.fail("Wrote to a non-blocking channel");
+		} catch (IllegalBlockingModeException ex) {
+			pipe.source().configureBlocking(false);
+			Assert.assertEquals(0, pipe.source().read(ByteBuffer.allocate(16)));
+		} finally {
+			pipe.sink().close();
+			pipe.source().close();
+		}
+	}
+
 }
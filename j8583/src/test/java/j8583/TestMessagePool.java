@@ -0,0 +1,134 @@
+package j8583;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.text.ParseException;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.solab.iso8583.IsoMessage;
+import com.solab.iso8583.IsoType;
+import com.solab.iso8583.MessageFactory;
+
+/** Tests reusing messages, by resetting them and through the pool of the factory.
+ *
+ * @author Enrique Zamudio
+ */
+public class TestMessagePool {
+
+	private MessageFactory mf;
+	private byte[] data;
+	private int hlen;
+
+	@Before
+	public void init() throws IOException {
+		mf = new MessageFactory();
+		mf.setCharacterEncoding("UTF-8");
+		mf.setCustomField(48, new CustomField48());
+		mf.setConfigPath("config.xml");
+		data = mf.newMessage(0x200).setValue(11, 123, IsoType.NUMERIC, 6).writeData();
+		hlen = mf.getIsoHeader(0x200).length();
+	}
+
+	@Test
+	public void testReset() throws IOException, ParseException {
+		IsoMessage m = mf.parseMessage(data, hlen);
+		m.setBinary(true);
+		m.setEtx(3);
+		m.reset();
+		Assert.assertEquals(0, m.getType());
+		Assert.assertNull(m.getIsoHeader());
+		Assert.assertFalse(m.isBinary());
+		for (int i = 2; i <= 128; i++) {
+			Assert.assertFalse(m.hasField(i));
+		}
+		//A reused message is the same as a new one
+		Assert.assertSame(m, mf.newMessage(0x200, m));
+		Assert.assertArrayEquals(mf.newMessage(0x200).writeData(), m.writeData());
+		Assert.assertSame(m, mf.parseMessageInto(m, data, 0, data.length, hlen));
+		Assert.assertArrayEquals(data, m.writeData());
+		mf.setLazyParsing(true);
+		mf.parseMessageInto(m, data, 0, data.length, hlen);
+		Assert.assertEquals("000123", m.getObjectValue(11));
+		Assert.assertArrayEquals(data, m.writeData());
+	}
+
+	@Test
+	public void testPool() throws IOException, ParseException {
+		IsoMessage m = mf.parseMessage(data, hlen);
+		//Without a pool, released messages are just dropped
+		mf.release(m);
+		Assert.assertNotSame(m, mf.parseMessage(data, hlen));
+		mf.setMessagePoolSize(1);
+		m = mf.parseMessage(data, hlen);
+		IsoMessage m2 = mf.parseMessage(data, hlen);
+		mf.release(m);
+		mf.release(m2);
+		IsoMessage m3 = mf.newMessage(0x200);
+		Assert.assertSame(m, m3);
+		Assert.assertArrayEquals(mf.newMessage(0x200).writeData(), m3.writeData());
+		mf.release(m3);
+		Assert.assertSame(m, mf.parseMessage(data, hlen));
+	}
+
+	/** A message that can't be parsed doesn't take a message from the pool, nor leaves one half-parsed. */
+	@Test
+	public void testFailedParse() throws IOException, ParseException {
+		mf.setMessagePoolSize(1);
+		IsoMessage m = mf.parseMessage(data, hlen);
+		mf.release(m);
+		byte[] unknown = data.clone();
+		unknown[hlen + 1] = '9';
+		Assert.assertNull(mf.parseMessage(unknown, hlen));
+		try {
+			mf.parseMessage(data, 0, data.length - 5, hlen);
+			Assert.fail("Parsed a truncated message");
+		} catch (ParseException ex) {
+			//Expected
+		}
+		Assert.assertSame(m, mf.parseMessage(data, hlen));
+		try {
+			mf.parseMessageInto(m, data, 0, data.length - 5, hlen);
+			Assert.fail("Parsed a truncated message");
+		} catch (ParseException ex) {
+			//Expected
+		}
+		Assert.assertEquals(0, m.getType());
+		for (int i = 2; i <= 128; i++) {
+			Assert.assertFalse(m.hasField(i));
+		}
+	}
+
+	/** Once the pool is warm, parsing and releasing a message allocates less than parsing new ones. */
+	@Test
+	public void testAllocation() throws IOException, ParseException {
+		Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(mx.isThreadAllocatedMemorySupported() && mx.isThreadAllocatedMemoryEnabled());
+		final long tid = Thread.currentThread().getId();
+		final int n = 20000;
+		long plain = 0;
+		long pooled = 0;
+		for (int round = 0; round < 3; round++) {
+			mf.setMessagePoolSize(0);
+			long start = mx.getThreadAllocatedBytes(tid);
+			for (int i = 0; i < n; i++) {
+				mf.release(mf.parseMessage(data, hlen));
+			}
+			plain = mx.getThreadAllocatedBytes(tid) - start;
+			mf.setMessagePoolSize(4);
+			start = mx.getThreadAllocatedBytes(tid);
+			for (int i = 0; i < n; i++) {
+				mf.release(mf.parseMessage(data, hlen));
+			}
+			pooled = mx.getThreadAllocatedBytes(tid) - start;
+		}
+		//The array of fields alone is over 500 bytes
+		Assert.assertTrue(String.format("%d bytes per message without pool, %d with pool", plain / n, pooled / n),
+			(plain - pooled) / n > 500);
+	}
+
+}
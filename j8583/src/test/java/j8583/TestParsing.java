@@ -2,12 +2,27 @@ package j8583;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
 import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
 
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.solab.iso8583.AlphaValue;
+import com.solab.iso8583.AmountValue;
+import com.solab.iso8583.IsoMessage;
+import com.solab.iso8583.IsoType;
+import com.solab.iso8583.LongValue;
 import com.solab.iso8583.MessageFactory;
+import com.solab.iso8583.ParseError;
+import com.solab.iso8583.ParseResult;
+import com.solab.iso8583.parse.AmountParseInfo;
+import com.solab.iso8583.parse.FieldParseInfo;
+import com.solab.iso8583.parse.NumericParseInfo;
+import com.solab.iso8583.util.Bitmap;
 
 /** Test that parsing invalid messages is properly handled.
  * 
@@ -25,6 +40,51 @@ public class TestParsing {
 		mf.setConfigPath("config.xml");
 	}
 
+	/** A message with a field that is not in the parse guide is returned without fields. */
+	@Test
+	public void testUnknownField() throws ParseException, UnsupportedEncodingException {
+		Map<Integer, FieldParseInfo> guide = new HashMap<Integer, FieldParseInfo>();
+		guide.put(3, FieldParseInfo.getInstance(IsoType.NUMERIC, 6, "UTF-8"));
+		mf.setParseMap(0x100, guide);
+		IsoMessage m = mf.parseMessage("01002000000000000000650000".getBytes(), 0);
+		Assert.assertEquals("650000", m.getObjectValue(3));
+		//Field 4 is not in the guide
+		m = mf.parseMessage("01003000000000000000650000000000001000".getBytes(), 0);
+		Assert.assertNotNull(m);
+		Assert.assertFalse(m.hasField(3));
+		Assert.assertFalse(m.hasField(4));
+		//Unless it comes after all the fields we want
+		Bitmap wanted = new Bitmap();
+		wanted.set(3);
+		m = mf.parseMessage("01003000000000000000650000000000001000".getBytes(), 0, wanted);
+		Assert.assertEquals("650000", m.getObjectValue(3));
+		Assert.assertFalse(m.hasField(4));
+	}
+
+	@Test
+	public void testMultibyteFields() throws ParseException, UnsupportedEncodingException {
+		Map<Integer, FieldParseInfo> guide = new HashMap<Integer, FieldParseInfo>();
+		guide.put(2, FieldParseInfo.getInstance(IsoType.LLVAR, 0, "UTF-8"));
+		guide.put(3, FieldParseInfo.getInstance(IsoType.ALPHA, 3, "UTF-8"));
+		guide.put(4, FieldParseInfo.getInstance(IsoType.NUMERIC, 2, "UTF-8"));
+		mf.setParseMap(0x100, guide);
+		//A two-byte character in field 2 and an invalid UTF-8 byte in field 3,
+		//which decodes to one character but would be re-encoded as three bytes
+		byte[] buf = "0100700000000000000002\u00e9aa?b42".getBytes("UTF-8");
+		buf[buf.length - 4] = (byte)0xff;
+		IsoMessage m = mf.parseMessage(buf, 0);
+		Assert.assertEquals("\u00e9a", m.getObjectValue(2));
+		Assert.assertEquals("a\ufffdb", m.getObjectValue(3));
+		Assert.assertEquals("42", m.getObjectValue(4));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidParseGuide() {
+		Map<Integer, FieldParseInfo> guide = new HashMap<Integer, FieldParseInfo>();
+		guide.put(129, FieldParseInfo.getInstance(IsoType.NUMERIC, 6, "UTF-8"));
+		mf.setParseMap(0x100, guide);
+	}
+
 	@Test(expected=ParseException.class)
 	public void testEmpty() throws ParseException, UnsupportedEncodingException {
 		mf.parseMessage(new byte[0], 0);
@@ -96,4 +156,162 @@ public class TestParsing {
 		mf.parseMessage(new byte[]{2, 0x10, (byte)0xB2, 0x3A, (byte)0x80, 1, 0x2E, (byte)0xA0, (byte)0x80, 0x18, 0, 0, 0, 0, 0x14, 0, 0, 4, 0x65, 0, 0, 0, 0, 0, 0, 0x30, 0, 0x04, 0x28, 0x13, 0x05, 0x47, 0x46, (byte)0x87, 0x71, 0x12, 0x59, 0x46, 0x04, 0x28, 0x04, 0x28, 0x08, 0x11, 0x05, 0x12, 0x34}, 0);
 	}
 
+	@Test
+	public void testNumbers() throws ParseException {
+		AmountParseInfo amount = new AmountParseInfo();
+		byte[] buf = "x000000012345".getBytes();
+		Assert.assertEquals(12345L, amount.parseMinorUnits(buf, 1, buf.length));
+		Assert.assertEquals(new BigDecimal("123.45"), amount.parse(buf, 1, buf.length, null).getValue());
+		buf = new byte[]{ 0, 0, 0, 1, 0x23, 0x45 };
+		Assert.assertEquals(12345L, amount.parseBinaryMinorUnits(buf, 0, buf.length));
+		Assert.assertEquals(new BigDecimal("123.45"), amount.parseBinary(buf, 0, buf.length, null).getValue());
+		NumericParseInfo stan = new NumericParseInfo(6);
+		Assert.assertEquals(4321L, stan.parseLong("004321".getBytes(), 0, 6));
+		Assert.assertEquals(54321L, stan.parseBinaryLong(new byte[]{ 5, 0x43, 0x21 }, 0, 3));
+		Assert.assertEquals(54321L, stan.parseBinary(new byte[]{ 5, 0x43, 0x21 }, 0, 3, null).getValue());
+	}
+
+	/** Negative amounts are written with a sign, and parsed back. */
+	@Test
+	public void testNegativeAmount() throws ParseException, UnsupportedEncodingException {
+		IsoMessage m = mf.newMessage(0x200);
+		m.setValue(4, new BigDecimal("-10.00"), IsoType.AMOUNT, 0);
+		byte[] data = m.writeData();
+		Assert.assertTrue(new String(data, "US-ASCII").contains("-00000001000"));
+		IsoMessage p = mf.parseMessage(data, mf.getIsoHeader(0x200).length());
+		Assert.assertEquals(new BigDecimal("-10.00"), p.getObjectValue(4));
+		Assert.assertArrayEquals(data, p.writeData());
+		Assert.assertTrue(mf.tryParseMessage(data, mf.getIsoHeader(0x200).length()).isValid());
+		AmountParseInfo amount = new AmountParseInfo();
+		Assert.assertEquals(-1000L, amount.parseMinorUnits("-00000001000".getBytes(), 0, 12));
+		Assert.assertEquals(1000L, amount.parseMinorUnits("+00000001000".getBytes(), 0, 12));
+	}
+
+	@Test(expected=ParseException.class)
+	public void testInvalidAmount() throws ParseException {
+		new AmountParseInfo().parse("0000000123.5".getBytes(), 0, 12, null);
+	}
+
+	@Test(expected=ParseException.class)
+	public void testInvalidAmountBin() throws ParseException {
+		new AmountParseInfo().parseBinary(new byte[]{ 0, 0, 0, 1, 0x2a, 0x45 }, 0, 6, null);
+	}
+
+	@Test(expected=ParseException.class)
+	public void testInvalidNumeric() throws ParseException {
+		new NumericParseInfo(6).parseLong("12 345".getBytes(), 0, 6);
+	}
+
+	@Test
+	public void testTryParse() throws UnsupportedEncodingException {
+		Map<Integer, FieldParseInfo> guide = new HashMap<Integer, FieldParseInfo>();
+		guide.put(3, FieldParseInfo.getInstance(IsoType.NUMERIC, 6, "UTF-8"));
+		guide.put(4, FieldParseInfo.getInstance(IsoType.AMOUNT, 0, "UTF-8"));
+		guide.put(11, FieldParseInfo.getInstance(IsoType.NUMERIC, 6, "UTF-8"));
+		mf.setParseMap(0x100, guide);
+		ParseResult r = mf.tryParseMessage("01003020000000000000650000000000001000000123".getBytes(), 0);
+		Assert.assertTrue(r.isValid());
+		Assert.assertEquals(new BigDecimal("10.00"), r.getMessage().getObjectValue(4));
+		//Invalid amount, the next field is still parsed
+		r = mf.tryParseMessage("010030200000000000006500000000000010x0000123".getBytes(), 0);
+		Assert.assertEquals(1, r.getErrors().size());
+		ParseError err = r.getErrors().get(0);
+		Assert.assertEquals(ParseError.Reason.INVALID_VALUE, err.getReason());
+		Assert.assertEquals(4, err.getField());
+		Assert.assertEquals(26, err.getOffset());
+		Assert.assertEquals("Invalid value in field 4 at offset 26", err.getDescription());
+		Assert.assertFalse(r.getMessage().hasField(4));
+		Assert.assertEquals("000123", r.getMessage().getObjectValue(11));
+		//Missing data, parsing stops there
+		r = mf.tryParseMessage("010030200000000000006500000000".getBytes(), 0);
+		Assert.assertEquals(ParseError.Reason.INSUFFICIENT_DATA, r.getErrors().get(0).getReason());
+		Assert.assertEquals(4, r.getErrors().get(0).getField());
+		Assert.assertEquals("650000", r.getMessage().getObjectValue(3));
+		Assert.assertFalse(r.getMessage().hasField(11));
+		//Unknown field
+		r = mf.tryParseMessage("01003800000000000000650000000000001000".getBytes(), 0);
+		Assert.assertEquals(ParseError.Reason.UNKNOWN_FIELD, r.getErrors().get(0).getReason());
+		Assert.assertEquals(5, r.getErrors().get(0).getField());
+		//Bad bitmap and unknown type
+		r = mf.tryParseMessage("01003X00000000000000650000000000001000".getBytes(), 0);
+		Assert.assertEquals(ParseError.Reason.INVALID_BITMAP, r.getErrors().get(0).getReason());
+		Assert.assertNull(r.getMessage());
+		r = mf.tryParseMessage("07003000000000000000650000000000001000".getBytes(), 0);
+		Assert.assertEquals(ParseError.Reason.UNKNOWN_TYPE, r.getErrors().get(0).getReason());
+		//The same data that makes parseMessage throw
+		Assert.assertFalse(mf.tryParseMessage(new byte[0], 0).isValid());
+		Assert.assertFalse(mf.tryParseMessage("02008000000000000000".getBytes(), 0).isValid());
+		Assert.assertFalse(mf.tryParseMessage("0210B23A80012EA08018000000001400000465000".getBytes(), 0).isValid());
+		r = mf.tryParseMessage("0210B23A80012EA0801800000000140000046500000000000030000428130547468771125946042804280811051234".getBytes(), 0);
+		Assert.assertEquals(ParseError.Reason.INSUFFICIENT_DATA, r.getErrors().get(0).getReason());
+		Assert.assertEquals("000000003000", r.getMessage().getField(4).toString());
+		mf.setUseBinaryMessages(true);
+		Assert.assertFalse(mf.tryParseMessage(new byte[]{2, 0x10, (byte)0xB2, 0x3A, (byte)0x80, 1, 0x2E, (byte)0xA0, (byte)0x80, 0x18, 0, 0, 0, 0, 0x14, 0, 0, 4, 0x65, 0, 0, 0, 0, 0, 0, 0x30, 0, 0x04, 0x28, 0x13, 0x05, 0x47, 0x46, (byte)0x87, 0x71, 0x12, 0x59, 0x46, 0x04, 0x28, 0x04, 0x28, 0x08, 0x11, 0x05, 0x12, 0x34}, 0).isValid());
+	}
+
+	/** Malformed digits, BCD and length headers are reported without exceptions. */
+	@Test
+	public void testTryParseValues() {
+		Map<Integer, FieldParseInfo> guide = new HashMap<Integer, FieldParseInfo>();
+		guide.put(3, FieldParseInfo.getInstance(IsoType.NUMERIC, 6, "UTF-8"));
+		guide.put(7, FieldParseInfo.getInstance(IsoType.DATE10, 0, "UTF-8"));
+		guide.put(32, FieldParseInfo.getInstance(IsoType.LLVAR, 0, "UTF-8"));
+		mf.setParseMap(0x100, guide);
+		Assert.assertTrue(mf.tryParseMessage("01002200000100000000650000042813054703abc".getBytes(), 0).isValid());
+		ParseResult r = mf.tryParseMessage("010022000001000000006500000428130x4703abc".getBytes(), 0);
+		Assert.assertEquals(ParseError.Reason.INVALID_VALUE, r.getErrors().get(0).getReason());
+		Assert.assertEquals(7, r.getErrors().get(0).getField());
+		Assert.assertEquals("abc", r.getMessage().getObjectValue(32));
+		r = mf.tryParseMessage("0100220000010000000065000004281305470Aabc".getBytes(), 0);
+		Assert.assertEquals(ParseError.Reason.INVALID_LENGTH, r.getErrors().get(0).getReason());
+		Assert.assertEquals(32, r.getErrors().get(0).getField());
+		mf.setUseBinaryMessages(true);
+		byte[] bin = new byte[]{ 1, 0, 0x22, 0, 0, 1, 0, 0, 0, 0, 0x65, 0, 0, 4, 0x28, 0x13, 5, 0x47, 3, 'a', 'b', 'c' };
+		Assert.assertTrue(mf.tryParseMessage(bin, 0).isValid());
+		bin[10] = 0x6a;
+		r = mf.tryParseMessage(bin, 0);
+		Assert.assertEquals(ParseError.Reason.INVALID_VALUE, r.getErrors().get(0).getReason());
+		Assert.assertEquals(3, r.getErrors().get(0).getField());
+		Assert.assertEquals("abc", r.getMessage().getObjectValue(32));
+		bin[18] = 0x0a;
+		r = mf.tryParseMessage(bin, 0);
+		Assert.assertEquals(ParseError.Reason.INVALID_LENGTH, r.getErrors().get(1).getReason());
+		Assert.assertEquals(32, r.getErrors().get(1).getField());
+	}
+
+	/** AMOUNT, ALPHA and short binary NUMERIC fields are parsed into values that keep primitives or bytes. */
+	@Test
+	public void testPrimitiveValues() throws ParseException, UnsupportedEncodingException {
+		mf.setCharacterEncoding("ISO-8859-1");
+		IsoMessage m = mf.newMessage(0x200);
+		m.setValue(4, new BigDecimal("501.25"), IsoType.AMOUNT, 0);
+		m.setValue(11, 123, IsoType.NUMERIC, 6);
+		m.setValue(41, "TERM01", IsoType.ALPHA, 16);
+		byte[] data = m.writeData();
+		IsoMessage p = mf.parseMessage(data, mf.getIsoHeader(0x200).length());
+		Assert.assertTrue(p.<BigDecimal>getField(4) instanceof AmountValue);
+		Assert.assertEquals(50125, ((AmountValue)p.<BigDecimal>getField(4)).getLong());
+		Assert.assertEquals(new BigDecimal("501.25"), p.getObjectValue(4));
+		Assert.assertTrue(p.<String>getField(41) instanceof AlphaValue);
+		Assert.assertEquals("TERM01          ", p.getObjectValue(41));
+		Assert.assertArrayEquals(data, p.writeData());
+		//ALPHA values keep their wire bytes too
+		mf.setKeepWireData(true);
+		p = mf.parseMessage(data, mf.getIsoHeader(0x200).length());
+		int f41 = new String(data, "ISO-8859-1").indexOf("TERM01");
+		data[f41] = 'X';
+		Assert.assertEquals("TERM01          ", p.getObjectValue(41));
+		Assert.assertTrue(new String(p.writeData(), "ISO-8859-1").contains("XERM01"));
+		mf.setKeepWireData(false);
+		mf.setUseBinaryMessages(true);
+		m.setBinary(true);
+		data = m.writeData();
+		p = mf.parseMessage(data, mf.getIsoHeader(0x200).length());
+		Assert.assertTrue(p.<Number>getField(11) instanceof LongValue);
+		Assert.assertEquals(123, ((LongValue)p.<Number>getField(11)).getLong());
+		Assert.assertEquals(Long.valueOf(123), p.getObjectValue(11));
+		Assert.assertEquals(50125, ((AmountValue)p.<BigDecimal>getField(4)).getLong());
+		Assert.assertArrayEquals(data, p.writeData());
+	}
+
 }
@@ -0,0 +1,70 @@
+package j8583.bench;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.solab.iso8583.MessageFactory;
+import com.solab.iso8583.ParseBatch;
+
+/** Parses a batch of 10000 messages with parseAll, using pools of different sizes.
+ * The time per batch should go down as threads are added, up to the number of processors.
+ *
+ * @author Enrique Zamudio
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchParseBenchmark {
+
+	@Param({ "1", "2", "4", "8" })
+	public int threads;
+
+	private MessageFactory mf;
+	private List<byte[]> frames;
+	private int headerLength;
+	private ExecutorService exec;
+
+	@Setup
+	public void setup() throws IOException, ParseException {
+		mf = Fixtures.frozenFactory();
+		headerLength = Fixtures.headerLength(mf);
+		byte[] msg = Fixtures.parse1(mf);
+		frames = new ArrayList<byte[]>(10000);
+		for (int i = 0; i < 10000; i++) {
+			frames.add(msg);
+		}
+		exec = Executors.newFixedThreadPool(threads);
+	}
+
+	@TearDown
+	public void shutdown() {
+		exec.shutdown();
+	}
+
+	@Benchmark
+	public ParseBatch parseAll() throws InterruptedException {
+		return mf.parseAll(frames, headerLength, exec);
+	}
+
+}
@@ -0,0 +1,86 @@
+package j8583.bench;
+
+import java.text.ParseException;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.solab.iso8583.util.Bitmap;
+
+/** Decoding and iterating a primary plus secondary bitmap with a Bitmap, compared with
+ * the BitSet expansion that parseMessage used to do.
+ *
+ * @author Enrique Zamudio
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BitmapBenchmark {
+
+	private final byte[] ascii = "F23C46D129E09220000000000400000C".getBytes();
+	private final byte[] binary = new byte[]{ (byte)0xf2, 0x3c, 0x46, (byte)0xd1, 0x29, (byte)0xe0, (byte)0x92, 0x20,
+			0, 0, 0, 0, 0x04, 0, 0, 0x0c };
+	private final Bitmap bitmap = new Bitmap();
+
+	@Benchmark
+	public void bitmapAscii(Blackhole bh) throws ParseException {
+		bitmap.readAscii(ascii, 0, ascii.length);
+		for (int f = bitmap.nextField(1); f > 0; f = bitmap.nextField(f)) {
+			bh.consume(f);
+		}
+	}
+
+	@Benchmark
+	public void bitmapBinary(Blackhole bh) throws ParseException {
+		bitmap.readBinary(binary, 0, binary.length);
+		for (int f = bitmap.nextField(1); f > 0; f = bitmap.nextField(f)) {
+			bh.consume(f);
+		}
+	}
+
+	@Benchmark
+	public void bitSetAscii(Blackhole bh) {
+		BitSet bs = new BitSet(64);
+		int pos = 0;
+		for (int i = 0; i < ascii.length; i++) {
+			int n = ascii[i] <= '9' ? ascii[i] - 48 : ascii[i] - 55;
+			bs.set(pos++, (n & 8) > 0);
+			bs.set(pos++, (n & 4) > 0);
+			bs.set(pos++, (n & 2) > 0);
+			bs.set(pos++, (n & 1) > 0);
+		}
+		for (int i = bs.nextSetBit(1); i >= 0; i = bs.nextSetBit(i + 1)) {
+			bh.consume(i + 1);
+		}
+	}
+
+	@Benchmark
+	public void bitSetBinary(Blackhole bh) {
+		BitSet bs = new BitSet(64);
+		int pos = 0;
+		for (int i = 0; i < binary.length; i++) {
+			int bit = 128;
+			for (int b = 0; b < 8; b++) {
+				bs.set(pos++, (binary[i] & bit) != 0);
+				bit >>= 1;
+			}
+		}
+		for (int i = bs.nextSetBit(1); i >= 0; i = bs.nextSetBit(i + 1)) {
+			bh.consume(i + 1);
+		}
+	}
+
+}
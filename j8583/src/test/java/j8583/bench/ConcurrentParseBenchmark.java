@@ -0,0 +1,67 @@
+package j8583.bench;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.solab.iso8583.IsoMessage;
+import com.solab.iso8583.MessageFactory;
+
+/** Parse throughput of a single frozen MessageFactory shared by all the benchmark threads.
+ * Running the main method measures it with 1, 2, 4, ... threads up to the number of processors;
+ * the throughput should grow with the number of threads, since parsing doesn't contend on
+ * any shared state.
+ *
+ * @author Enrique Zamudio
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentParseBenchmark {
+
+	private MessageFactory mf;
+	private byte[] msg;
+	private int headerLength;
+
+	@Setup
+	public void setup() throws IOException, ParseException {
+		mf = Fixtures.frozenFactory();
+		headerLength = Fixtures.headerLength(mf);
+		msg = Fixtures.parse1(mf);
+	}
+
+	@Benchmark
+	public IsoMessage sharedFactory() throws ParseException, IOException {
+		return mf.parseMessage(msg, headerLength);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		final int cpus = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; threads <= cpus; threads *= 2) {
+			Options opts = new OptionsBuilder()
+				.include(ConcurrentParseBenchmark.class.getSimpleName())
+				.threads(threads)
+				.build();
+			new Runner(opts).run();
+		}
+	}
+
+}
@@ -0,0 +1,66 @@
+package j8583.bench;
+
+import java.text.ParseException;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.solab.iso8583.IsoType;
+import com.solab.iso8583.parse.Date10ParseInfo;
+
+/** Parsing and formatting a DATE10 field, compared with the Calendar and String.format
+ * code that was used before.
+ *
+ * @author Enrique Zamudio
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateBenchmark {
+
+	private final byte[] buf = "0613154503".getBytes();
+	private final Date10ParseInfo parser = new Date10ParseInfo();
+	private final Date date = new Date(96867296000l);
+
+	@Benchmark
+	public Object parse() throws ParseException {
+		return parser.parse(buf, 0, buf.length, null).getValue();
+	}
+
+	@Benchmark
+	public Object parseCalendar() {
+		Calendar cal = Calendar.getInstance();
+		cal.set(Calendar.MONTH, ((buf[0] - 48) * 10) + buf[1] - 49);
+		cal.set(Calendar.DATE, ((buf[2] - 48) * 10) + buf[3] - 48);
+		cal.set(Calendar.HOUR_OF_DAY, ((buf[4] - 48) * 10) + buf[5] - 48);
+		cal.set(Calendar.MINUTE, ((buf[6] - 48) * 10) + buf[7] - 48);
+		cal.set(Calendar.SECOND, ((buf[8] - 48) * 10) + buf[9] - 48);
+		cal.set(Calendar.MILLISECOND, 0);
+		Date10ParseInfo.adjustWithFutureTolerance(cal);
+		return cal.getTime();
+	}
+
+	@Benchmark
+	public String format() {
+		return IsoType.DATE10.format(date);
+	}
+
+	@Benchmark
+	public String formatString() {
+		return String.format("%Tm%<Td%<TH%<TM%<TS", date);
+	}
+
+}
@@ -0,0 +1,91 @@
+package j8583.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.solab.iso8583.IsoMessage;
+import com.solab.iso8583.IsoType;
+import com.solab.iso8583.MessageFactory;
+
+/** Encoding a typical 0200 message, with the length header and ETX, into new arrays and
+ * into a direct buffer that is reused; and the numeric fields of a binary message.
+ *
+ * @author Enrique Zamudio
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodeBenchmark {
+
+	private IsoMessage msg;
+	private IsoMessage bin;
+	private final ByteArrayOutputStream bout = new ByteArrayOutputStream(1024);
+	private final ByteBuffer direct = ByteBuffer.allocateDirect(1024);
+
+	@Setup
+	public void setup() throws IOException {
+		MessageFactory mf = new MessageFactory();
+		mf.setCharacterEncoding("ISO-8859-1");
+		mf.setConfigPath("config.xml");
+		msg = mf.newMessage(0x200);
+		msg.setValue(4, new BigDecimal("501.25"), IsoType.AMOUNT, 0);
+		msg.setValue(7, new Date(), IsoType.DATE10, 0);
+		msg.setValue(11, 123, IsoType.NUMERIC, 6);
+		msg.setValue(41, "TERM01", IsoType.ALPHA, 16);
+		msg.setValue(52, new byte[]{ 1, 2, 3, 4, 5, 6, 7, 8 }, IsoType.BINARY, 8);
+		msg.setEtx(3);
+		bin = mf.newMessage(0x200);
+		bin.setBinary(true);
+		bin.setValue(3, 650000, IsoType.NUMERIC, 6);
+		bin.setValue(4, new BigDecimal("501.25"), IsoType.AMOUNT, 0);
+		bin.setValue(7, new Date(), IsoType.DATE10, 0);
+		bin.setValue(11, 123, IsoType.NUMERIC, 6);
+	}
+
+	@Benchmark
+	public byte[] writeData() {
+		return msg.writeData();
+	}
+
+	@Benchmark
+	public byte[] writeDataBinary() {
+		return bin.writeData();
+	}
+
+	@Benchmark
+	public ByteBuffer writeToBuffer() {
+		return msg.writeToBuffer(2);
+	}
+
+	@Benchmark
+	public int writeStream() throws IOException {
+		bout.reset();
+		msg.write(bout, 2);
+		return bout.size();
+	}
+
+	@Benchmark
+	public int writeToDirect() {
+		direct.clear();
+		return msg.writeTo(direct, 2);
+	}
+
+}
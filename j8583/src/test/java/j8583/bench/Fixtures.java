@@ -0,0 +1,59 @@
+package j8583.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+
+import com.solab.iso8583.MessageFactory;
+
+/** The factory and messages shared by the benchmarks.
+ *
+ * @author Enrique Zamudio
+ */
+final class Fixtures {
+
+	private Fixtures() {
+	}
+
+	/** Returns a frozen factory configured from config.xml, using UTF-8. */
+	static MessageFactory frozenFactory() throws IOException {
+		MessageFactory mf = new MessageFactory();
+		mf.setCharacterEncoding("UTF-8");
+		mf.setConfigPath("config.xml");
+		mf.freeze();
+		return mf;
+	}
+
+	/** Returns the length of the ISO header of the 0210 message in parse1.txt. */
+	static int headerLength(MessageFactory mf) {
+		return mf.getIsoHeader(0x210).length();
+	}
+
+	/** Parses the 0210 message in parse1.txt and returns it as written by the factory,
+	 * without the trailing data of the file. */
+	static byte[] parse1(MessageFactory mf) throws IOException, ParseException {
+		return mf.parseMessage(readResource("/parse1.txt"), headerLength(mf)).writeData();
+	}
+
+	/** Reads the whole contents of a classpath resource. */
+	static byte[] readResource(String name) throws IOException {
+		InputStream ins = Fixtures.class.getResourceAsStream(name);
+		if (ins == null) {
+			throw new FileNotFoundException(name);
+		}
+		try {
+			ByteArrayOutputStream bout = new ByteArrayOutputStream(512);
+			byte[] buf = new byte[512];
+			int n;
+			while ((n = ins.read(buf)) != -1) {
+				bout.write(buf, 0, n);
+			}
+			return bout.toByteArray();
+		} finally {
+			ins.close();
+		}
+	}
+
+}
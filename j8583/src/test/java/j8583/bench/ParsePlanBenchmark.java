@@ -0,0 +1,143 @@
+package j8583.bench;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.solab.iso8583.IsoMessage;
+import com.solab.iso8583.IsoType;
+import com.solab.iso8583.MessageFactory;
+import com.solab.iso8583.parse.FieldParseInfo;
+import com.solab.iso8583.parse.ParsePlan;
+import com.solab.iso8583.util.Bitmap;
+
+/** Compares the field dispatch of a compiled ParsePlan against the map-based lookups
+ * that parseMessage used before (a map of parse guides plus a sorted list of boxed field
+ * numbers per type, with a linear search for every field in the bitmap).
+ * Run with <code>java -cp &lt;test classpath&gt; org.openjdk.jmh.Main ParsePlanBenchmark</code>.
+ *
+ * @author Enrique Zamudio
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParsePlanBenchmark {
+
+	private static final int TYPE = 0x210;
+
+	private Map<Integer, Map<Integer, FieldParseInfo>> parseMap;
+	private Map<Integer, List<Integer>> parseOrder;
+	private Map<Integer, ParsePlan> parsePlans;
+	private BitSet bitmap;
+	private Bitmap fields;
+	private MessageFactory mf;
+	private byte[] msg;
+	private int headerLength;
+
+	@Setup
+	public void setup() throws IOException, ParseException {
+		Map<Integer, FieldParseInfo> guide = new HashMap<Integer, FieldParseInfo>();
+		guide.put(3, FieldParseInfo.getInstance(IsoType.NUMERIC, 6, "UTF-8"));
+		guide.put(4, FieldParseInfo.getInstance(IsoType.AMOUNT, 0, "UTF-8"));
+		guide.put(7, FieldParseInfo.getInstance(IsoType.DATE10, 0, "UTF-8"));
+		guide.put(11, FieldParseInfo.getInstance(IsoType.NUMERIC, 6, "UTF-8"));
+		guide.put(12, FieldParseInfo.getInstance(IsoType.TIME, 0, "UTF-8"));
+		guide.put(13, FieldParseInfo.getInstance(IsoType.DATE4, 0, "UTF-8"));
+		guide.put(15, FieldParseInfo.getInstance(IsoType.DATE4, 0, "UTF-8"));
+		guide.put(17, FieldParseInfo.getInstance(IsoType.DATE_EXP, 0, "UTF-8"));
+		guide.put(32, FieldParseInfo.getInstance(IsoType.LLVAR, 0, "UTF-8"));
+		guide.put(35, FieldParseInfo.getInstance(IsoType.LLVAR, 0, "UTF-8"));
+		guide.put(37, FieldParseInfo.getInstance(IsoType.NUMERIC, 12, "UTF-8"));
+		guide.put(38, FieldParseInfo.getInstance(IsoType.NUMERIC, 6, "UTF-8"));
+		guide.put(39, FieldParseInfo.getInstance(IsoType.NUMERIC, 2, "UTF-8"));
+		guide.put(41, FieldParseInfo.getInstance(IsoType.ALPHA, 16, "UTF-8"));
+		guide.put(43, FieldParseInfo.getInstance(IsoType.ALPHA, 40, "UTF-8"));
+		guide.put(48, FieldParseInfo.getInstance(IsoType.LLLVAR, 0, "UTF-8"));
+		guide.put(49, FieldParseInfo.getInstance(IsoType.ALPHA, 3, "UTF-8"));
+		guide.put(60, FieldParseInfo.getInstance(IsoType.LLLVAR, 0, "UTF-8"));
+		guide.put(61, FieldParseInfo.getInstance(IsoType.LLLVAR, 0, "UTF-8"));
+		guide.put(70, FieldParseInfo.getInstance(IsoType.ALPHA, 3, "UTF-8"));
+		guide.put(90, FieldParseInfo.getInstance(IsoType.ALPHA, 42, "UTF-8"));
+		guide.put(100, FieldParseInfo.getInstance(IsoType.LLVAR, 0, "UTF-8"));
+		guide.put(102, FieldParseInfo.getInstance(IsoType.LLVAR, 0, "UTF-8"));
+		guide.put(126, FieldParseInfo.getInstance(IsoType.LLLVAR, 0, "UTF-8"));
+		parseMap = new HashMap<Integer, Map<Integer, FieldParseInfo>>();
+		parseMap.put(TYPE, guide);
+		List<Integer> index = new ArrayList<Integer>(guide.keySet());
+		Collections.sort(index);
+		parseOrder = new HashMap<Integer, List<Integer>>();
+		parseOrder.put(TYPE, index);
+		parsePlans = new HashMap<Integer, ParsePlan>();
+		parsePlans.put(TYPE, new ParsePlan(guide));
+
+		//The fields present in parse1.txt
+		bitmap = new BitSet(128);
+		fields = new Bitmap();
+		for (int f : new int[]{ 3, 4, 7, 11, 12, 13, 15, 17, 32, 35, 37, 38, 39, 41, 43, 48, 49, 60, 61, 70, 90, 100, 102, 126 }) {
+			bitmap.set(f - 1);
+			fields.set(f);
+		}
+
+		mf = Fixtures.frozenFactory();
+		headerLength = Fixtures.headerLength(mf);
+		msg = Fixtures.parse1(mf);
+	}
+
+	/** The lookups done before the parse guides were compiled. */
+	@Benchmark
+	public void mapLookups(Blackhole bh) {
+		Map<Integer, FieldParseInfo> parseGuide = parseMap.get(TYPE);
+		List<Integer> index = parseOrder.get(TYPE);
+		boolean abandon = false;
+		for (int i = 1; i < bitmap.length(); i++) {
+			if (bitmap.get(i) && !index.contains(i+1)) {
+				abandon = true;
+			}
+		}
+		bh.consume(abandon);
+		for (Integer i : index) {
+			FieldParseInfo fpi = parseGuide.get(i);
+			if (bitmap.get(i - 1)) {
+				bh.consume(fpi);
+			}
+		}
+	}
+
+	/** The same work using a compiled ParsePlan and a Bitmap. */
+	@Benchmark
+	public void compiledPlan(Blackhole bh) {
+		ParsePlan plan = parsePlans.get(TYPE);
+		bh.consume(plan.allows(fields.getPrimary(), fields.getSecondary()));
+		for (int i = fields.nextField(1); i > 0; i = fields.nextField(i)) {
+			bh.consume(plan.get(i));
+		}
+	}
+
+	/** A full parse, for reference. */
+	@Benchmark
+	public IsoMessage parseMessage() throws ParseException, IOException {
+		return mf.parseMessage(msg, headerLength);
+	}
+
+}
@@ -0,0 +1,63 @@
+package j8583.bench;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.solab.iso8583.IsoMessage;
+import com.solab.iso8583.MessageFactory;
+import com.solab.iso8583.MessagePeek;
+import com.solab.iso8583.util.Bitmap;
+
+/** Finding the message type and fields 3 and 41 of a message with a MessagePeek, compared
+ * with a full parse.
+ *
+ * @author Enrique Zamudio
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PeekBenchmark {
+
+	private MessageFactory mf;
+	private MessagePeek peek;
+	private byte[] msg;
+	private int headerLength;
+
+	@Setup
+	public void setup() throws IOException, ParseException {
+		mf = Fixtures.frozenFactory();
+		headerLength = Fixtures.headerLength(mf);
+		msg = Fixtures.parse1(mf);
+		Bitmap fields = new Bitmap();
+		fields.set(3);
+		fields.set(41);
+		peek = new MessagePeek(fields);
+	}
+
+	@Benchmark
+	public int peek() throws ParseException {
+		peek.peek(mf, msg, 0, msg.length, headerLength);
+		return peek.getType() + peek.getOffset(3) + peek.getOffset(41);
+	}
+
+	@Benchmark
+	public IsoMessage parseMessage() throws ParseException, IOException {
+		return mf.parseMessage(msg, headerLength);
+	}
+
+}
@@ -0,0 +1,67 @@
+package j8583.bench;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.solab.iso8583.IsoMessage;
+import com.solab.iso8583.IsoType;
+import com.solab.iso8583.MessageFactory;
+
+/** Parsing a 0200 message into new instances, and into instances that are released to the pool of
+ * the factory and reused. Run it with -prof gc to compare the allocation rate.
+ *
+ * @author Enrique Zamudio
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PoolBenchmark {
+
+	private MessageFactory plain;
+	private MessageFactory pooled;
+	private byte[] data;
+	private int hlen;
+
+	@Setup
+	public void setup() throws IOException {
+		plain = new MessageFactory();
+		plain.setCharacterEncoding("ISO-8859-1");
+		plain.setConfigPath("config.xml");
+		pooled = new MessageFactory();
+		pooled.setCharacterEncoding("ISO-8859-1");
+		pooled.setConfigPath("config.xml");
+		pooled.setMessagePoolSize(4);
+		data = plain.newMessage(0x200).setValue(11, 123, IsoType.NUMERIC, 6).writeData();
+		hlen = plain.getIsoHeader(0x200).length();
+	}
+
+	@Benchmark
+	public int parseNew() throws ParseException, UnsupportedEncodingException {
+		return plain.parseMessage(data, hlen).getType();
+	}
+
+	@Benchmark
+	public int parsePooled() throws ParseException, UnsupportedEncodingException {
+		IsoMessage m = pooled.parseMessage(data, hlen);
+		int type = m.getType();
+		pooled.release(m);
+		return type;
+	}
+
+}
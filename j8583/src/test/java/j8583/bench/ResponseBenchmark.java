@@ -0,0 +1,59 @@
+package j8583.bench;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.solab.iso8583.IsoMessage;
+import com.solab.iso8583.IsoType;
+import com.solab.iso8583.MessageFactory;
+
+/** Creating a 0210 response to a parsed 0200, setting the response code and writing it, with a copy
+ * of the request fields and with an overlay of the request.
+ *
+ * @author Enrique Zamudio
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseBenchmark {
+
+	private MessageFactory mf;
+	private IsoMessage request;
+
+	@Setup
+	public void setup() throws IOException, ParseException {
+		mf = new MessageFactory();
+		mf.setCharacterEncoding("ISO-8859-1");
+		mf.setConfigPath("config.xml");
+		mf.setKeepWireData(true);
+		mf.freeze();
+		byte[] data = mf.newMessage(0x200).setValue(11, 123, IsoType.NUMERIC, 6).writeData();
+		request = mf.parseMessage(data, mf.getIsoHeader(0x200).length());
+	}
+
+	@Benchmark
+	public byte[] copy() {
+		return mf.createResponse(request).setValue(39, "00", IsoType.NUMERIC, 2).writeData();
+	}
+
+	@Benchmark
+	public byte[] overlay() {
+		return mf.createResponseOverlay(request).setValue(39, "00", IsoType.NUMERIC, 2).writeData();
+	}
+
+}
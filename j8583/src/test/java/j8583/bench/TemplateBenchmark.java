@@ -0,0 +1,61 @@
+package j8583.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.solab.iso8583.IsoType;
+import com.solab.iso8583.MessageFactory;
+
+/** Creating a 0200 message from the template and writing it, with a factory that is frozen
+ * (so the template values are pre-encoded) and with one that isn't.
+ *
+ * @author Enrique Zamudio
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TemplateBenchmark {
+
+	private MessageFactory plain;
+	private MessageFactory frozen;
+
+	@Setup
+	public void setup() throws IOException {
+		plain = new MessageFactory();
+		plain.setCharacterEncoding("ISO-8859-1");
+		plain.setConfigPath("config.xml");
+		frozen = new MessageFactory();
+		frozen.setCharacterEncoding("ISO-8859-1");
+		frozen.setConfigPath("config.xml");
+		frozen.freeze();
+	}
+
+	private static byte[] write(MessageFactory mf) {
+		return mf.newMessage(0x200).setValue(11, 123, IsoType.NUMERIC, 6).writeData();
+	}
+
+	@Benchmark
+	public byte[] fromTemplate() {
+		return write(plain);
+	}
+
+	@Benchmark
+	public byte[] fromFrozenTemplate() {
+		return write(frozen);
+	}
+
+}
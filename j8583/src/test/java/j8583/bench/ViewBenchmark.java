@@ -0,0 +1,64 @@
+package j8583.bench;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.solab.iso8583.IsoMessage;
+import com.solab.iso8583.MessageFactory;
+import com.solab.iso8583.IsoMessageView;
+
+/** Reading the processing code, amount and terminal id of a message with an IsoMessageView,
+ * compared with a full parse and reading them from the IsoMessage.
+ *
+ * @author Enrique Zamudio
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ViewBenchmark {
+
+	private MessageFactory mf;
+	private IsoMessageView view;
+	private final char[] terminal = new char[40];
+	private byte[] msg;
+	private int headerLength;
+
+	@Setup
+	public void setup() throws IOException, ParseException {
+		mf = Fixtures.frozenFactory();
+		headerLength = Fixtures.headerLength(mf);
+		msg = Fixtures.parse1(mf);
+		view = new IsoMessageView(mf, headerLength);
+	}
+
+	@Benchmark
+	public long view() throws ParseException {
+		view.wrap(msg, 0, msg.length);
+		return view.getLong(3) + view.getAmountCents(4) + view.getAsciiInto(41, terminal, 0);
+	}
+
+	@Benchmark
+	public long parseMessage() throws ParseException, IOException {
+		IsoMessage m = mf.parseMessage(msg, headerLength);
+		return Long.parseLong(m.getField(3).toString())
+			+ ((BigDecimal)m.getObjectValue(4)).movePointRight(2).longValue()
+			+ m.getField(41).toString().length();
+	}
+
+}